@@ -0,0 +1,200 @@
+package com.omo.tools.ant.main;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.PrivateKey;
+import java.security.PublicKey;
+import java.security.Signature;
+import java.security.cert.CertificateFactory;
+import java.security.cert.X509Certificate;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.TimeZone;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * This class creates X.509 certificates for the benchmarks and test harnesses so they can run without the network or the {@code keytool}. The certificates are DER encoded by hand (the JDK has no public API for creating them) and signed with
+ * SHA256withRSA.
+ *
+ * @author Richard Salas JCCC
+ */
+public final class CertificateGenerator {
+
+    private static final int[] SHA256_WITH_RSA = {1, 2, 840, 113549, 1, 1, 11};
+    private static final int[] COMMON_NAME = {2, 5, 4, 3};
+    private static final int[] BASIC_CONSTRAINTS = {2, 5, 29, 19};
+    private static final int[] SUBJECT_ALT_NAME = {2, 5, 29, 17};
+
+    private static final AtomicLong SERIAL = new AtomicLong(System.currentTimeMillis());
+
+    /**
+     * Utility class, no instances.
+     */
+    private CertificateGenerator() {
+    }//end constructor
+
+    /**
+     * @return a new 2048 bit RSA key pair
+     * @throws GeneralSecurityException if RSA is not supported
+     */
+    public static KeyPair newKeyPair() throws GeneralSecurityException {
+        KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+        generator.initialize(2048);
+        return generator.generateKeyPair();
+    }//end method
+
+    /**
+     * Creates a self signed certificate authority.
+     *
+     * @param commonName the common name of the subject and issuer
+     * @param keys the key pair of the certificate authority
+     * @param notBefore the start of the validity in milliseconds since the epoch
+     * @param notAfter the end of the validity in milliseconds since the epoch
+     * @return the certificate
+     * @throws GeneralSecurityException if the certificate cannot be signed
+     */
+    public static X509Certificate createRoot(String commonName, KeyPair keys, long notBefore, long notAfter) throws GeneralSecurityException {
+        return create(commonName, keys.getPublic(), commonName, keys.getPrivate(), notBefore, notAfter, true, null);
+    }//end method
+
+    /**
+     * Creates a certificate signed by the issuer.
+     *
+     * @param commonName the common name of the subject
+     * @param subjectKey the public key of the subject
+     * @param issuerName the common name of the issuer
+     * @param issuerKey the private key of the issuer
+     * @param notBefore the start of the validity in milliseconds since the epoch
+     * @param notAfter the end of the validity in milliseconds since the epoch
+     * @param ca true if the certificate may sign other certificates
+     * @param dnsName the host name put in the subject alternative name, null for none
+     * @return the certificate
+     * @throws GeneralSecurityException if the certificate cannot be signed
+     */
+    public static X509Certificate create(String commonName, PublicKey subjectKey, String issuerName, PrivateKey issuerKey, long notBefore, long notAfter, boolean ca, String dnsName) throws GeneralSecurityException {
+        byte[] algorithm = sequence(oid(SHA256_WITH_RSA), new byte[]{0x05, 0x00});
+
+        byte[] basicConstraints = ca ? sequence(new byte[]{0x01, 0x01, (byte) 0xFF}) : sequence();
+        byte[] extensions = sequence(oid(BASIC_CONSTRAINTS), new byte[]{0x01, 0x01, (byte) 0xFF}, tlv(0x04, basicConstraints));
+        if(dnsName != null){
+            byte[] altName = sequence(tlv(0x82, dnsName.getBytes(StandardCharsets.US_ASCII)));
+            extensions = concat(extensions, sequence(oid(SUBJECT_ALT_NAME), tlv(0x04, altName)));
+        }//end if
+
+        byte[] tbs = sequence(
+                tlv(0xA0, integer(BigInteger.valueOf(2))),
+                integer(BigInteger.valueOf(SERIAL.incrementAndGet())),
+                algorithm,
+                name(issuerName),
+                sequence(time(notBefore), time(notAfter)),
+                name(commonName),
+                subjectKey.getEncoded(),
+                tlv(0xA3, sequence(extensions)));
+
+        Signature signature = Signature.getInstance("SHA256withRSA");
+        signature.initSign(issuerKey);
+        signature.update(tbs);
+        byte[] signed = signature.sign();
+        byte[] bitString = new byte[signed.length + 1];
+        System.arraycopy(signed, 0, bitString, 1, signed.length);
+
+        byte[] encoded = sequence(tbs, algorithm, tlv(0x03, bitString));
+        return (X509Certificate) CertificateFactory.getInstance("X.509").generateCertificate(new ByteArrayInputStream(encoded));
+    }//end method
+
+    /**
+     * @param commonName the common name
+     * @return the DER encoded distinguished name holding only the common name
+     */
+    private static byte[] name(String commonName) {
+        return sequence(tlv(0x31, sequence(oid(COMMON_NAME), tlv(0x0C, commonName.getBytes(StandardCharsets.UTF_8)))));
+    }//end method
+
+    /**
+     * @param millis the time in milliseconds since the epoch
+     * @return the DER encoded UTCTime, or GeneralizedTime from the year 2050 on
+     */
+    private static byte[] time(long millis) {
+        boolean utc = new Date(millis).before(new Date(2524608000000L));// 2050-01-01
+        SimpleDateFormat format = new SimpleDateFormat(utc ? "yyMMddHHmmss'Z'" : "yyyyMMddHHmmss'Z'");
+        format.setTimeZone(TimeZone.getTimeZone("UTC"));
+        return tlv(utc ? 0x17 : 0x18, format.format(new Date(millis)).getBytes(StandardCharsets.US_ASCII));
+    }//end method
+
+    /**
+     * @param value the value
+     * @return the DER encoded integer
+     */
+    private static byte[] integer(BigInteger value) {
+        return tlv(0x02, value.toByteArray());
+    }//end method
+
+    /**
+     * @param arcs the arcs of the object identifier
+     * @return the DER encoded object identifier
+     */
+    private static byte[] oid(int[] arcs) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write(arcs[0] * 40 + arcs[1]);
+        for(int i = 2; i < arcs.length; i++){
+            int arc = arcs[i];
+            int shift = 28;
+            while(shift > 0 && (arc >>> shift) == 0){
+                shift -= 7;
+            }//end while
+            for(; shift > 0; shift -= 7){
+                out.write(0x80 | ((arc >>> shift) & 0x7F));
+            }//end for
+            out.write(arc & 0x7F);
+        }//end for
+        return tlv(0x06, out.toByteArray());
+    }//end method
+
+    /**
+     * @param parts the DER encoded parts
+     * @return the DER encoded sequence of the parts
+     */
+    private static byte[] sequence(byte[]... parts) {
+        return tlv(0x30, concat(parts));
+    }//end method
+
+    /**
+     * @param parts the byte arrays
+     * @return the byte arrays joined
+     */
+    private static byte[] concat(byte[]... parts) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for(byte[] part : parts){
+            out.write(part, 0, part.length);
+        }//end for
+        return out.toByteArray();
+    }//end method
+
+    /**
+     * @param tag the tag
+     * @param value the value
+     * @return the DER encoded tag, length and value
+     */
+    private static byte[] tlv(int tag, byte[] value) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(value.length + 6);
+        out.write(tag);
+        int length = value.length;
+        if(length < 0x80){
+            out.write(length);
+        }else{
+            int bytes = length > 0xFFFF ? 3 : length > 0xFF ? 2 : 1;
+            out.write(0x80 | bytes);
+            for(int i = bytes - 1; i >= 0; i--){
+                out.write((length >>> (i * 8)) & 0xFF);
+            }//end for
+        }//end if
+        out.write(value, 0, value.length);
+        return out.toByteArray();
+    }//end method
+
+}//end class
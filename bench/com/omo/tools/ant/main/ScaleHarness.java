@@ -0,0 +1,328 @@
+package com.omo.tools.ant.main;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.KeyPair;
+import java.security.KeyStore;
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.tools.ant.BuildException;
+import org.apache.tools.ant.DefaultLogger;
+import org.apache.tools.ant.IntrospectionHelper;
+import org.apache.tools.ant.Project;
+
+import com.omo.free.security.ssl.FileKeyStoreLoader;
+import com.omo.free.security.ssl.KeyStoreLoader;
+import com.omo.free.security.ssl.TrustMetrics;
+import com.omo.free.security.ssl.TrustStoreBootstrap;
+import com.omo.free.trustcert.TrustCertTask;
+
+/**
+ * This class is a load test of the Ant Trust Cert task that needs no network. It starts a fleet of {@link StubTlsServer}s on the loopback interface, runs the task against every one of them through a real Ant {@link Project} (the same way
+ * {@link Application} runs {@code projectTestFile.xml}) and reports the wall time, the peak heap, the peak number of threads and the size of the keystore.
+ * <p>
+ * The fleet is made of servers whose chain is issued by a root already in the local keystore, servers whose chain is issued by an unknown root, servers sending an unknown self signed certificate, servers sending an expired certificate, servers that are
+ * slow to answer and servers that never answer. Every server listens on its own loopback address (127.0.x.y) so each one gets its own alias in the keystore, which works on Linux where the whole 127.0.0.0/8 network is bound to the loopback interface.
+ * </p>
+ * <p>
+ * Run it with {@code java -cp <classes>:lib/* com.omo.tools.ant.main.ScaleHarness [servers] [attribute=value ...]}, the attributes are set on the task (for example {@code engine=nio threads=32}). The heap and threads of the stub servers live in the
+ * same JVM, the threads of the servers are left out of the thread count.
+ * </p>
+ *
+ * @author Richard Salas JCCC
+ */
+public class ScaleHarness {
+
+    private static final char[] PASSWORD = "changeit".toCharArray();
+    private static final long DAY_MILLIS = 24L * 60L * 60L * 1000L;
+    private static final long SLOW_DELAY = 2000L;
+    private static final String TRUSTED_ROOT_ALIAS = "scale-harness-trusted-root";
+
+    private final List<Closeable> fleet = new ArrayList<Closeable>();
+    private final List<String> urls = new ArrayList<String>();
+    private final int[] kinds = new int[Kind.values().length];
+
+    /**
+     * The kinds of servers in the fleet, the fleet is built by cycling through {@link #CYCLE}.
+     */
+    private enum Kind {
+        /** the chain is issued by a root already in the local keystore */
+        TRUSTED,
+        /** the chain is issued by a root unknown to the local keystore */
+        UNTRUSTED_CA,
+        /** an unknown self signed certificate */
+        SELF_SIGNED,
+        /** an expired certificate issued by the root already in the local keystore */
+        EXPIRED,
+        /** an unknown self signed certificate sent after a delay */
+        SLOW,
+        /** accepts the connection but never answers */
+        SILENT
+    }// end enum
+
+    private static final Kind[] CYCLE = {Kind.TRUSTED, Kind.UNTRUSTED_CA, Kind.SELF_SIGNED, Kind.TRUSTED, Kind.UNTRUSTED_CA, Kind.SELF_SIGNED, Kind.TRUSTED, Kind.EXPIRED, Kind.SLOW, Kind.SILENT};
+
+    /**
+     * This main method will start the fleet, run the task and print the report.
+     *
+     * @param args - the number of servers (default 200) followed by any number of task attributes given as name=value
+     * @throws Exception if the fleet cannot be started
+     */
+    public static void main(final String[] args) throws Exception {
+        int servers = args.length > 0 ? Integer.parseInt(args[0]) : 200;
+        List<String> attributes = new ArrayList<String>();
+        for(int i = 1; i < args.length; i++){
+            attributes.add(args[i]);
+        }//end for
+
+        ScaleHarness harness = new ScaleHarness();
+        Path keystoreDir = Files.createTempDirectory("trustcert-scale");
+        try{
+            harness.run(servers, keystoreDir, attributes);
+        }finally{
+            harness.stopFleet();
+        }//end try...finally
+    }//end method
+
+    /**
+     * Starts the fleet, seeds the local keystore with the trusted root, runs the task and prints the report.
+     *
+     * @param servers the number of servers
+     * @param keystoreDir the directory of the local keystore
+     * @param attributes the task attributes given as name=value
+     * @throws Exception if the fleet or the keystore cannot be created
+     */
+    private void run(int servers, Path keystoreDir, List<String> attributes) throws Exception {
+        System.out.println("Starting " + servers + " stub TLS servers...");
+        KeyPair rootKeys = CertificateGenerator.newKeyPair();
+        KeyPair serverKeys = CertificateGenerator.newKeyPair();
+        long now = System.currentTimeMillis();
+        X509Certificate trustedRoot = CertificateGenerator.createRoot("Scale Harness Trusted Root", rootKeys, now - DAY_MILLIS, now + 365L * DAY_MILLIS);
+        X509Certificate untrustedRoot = CertificateGenerator.createRoot("Scale Harness Untrusted Root", rootKeys, now - DAY_MILLIS, now + 365L * DAY_MILLIS);
+        startFleet(servers, rootKeys, serverKeys, trustedRoot, untrustedRoot);
+        seedKeyStore(keystoreDir, trustedRoot);
+
+        Project project = new Project();
+        DefaultLogger logger = new DefaultLogger();
+        logger.setErrorPrintStream(System.err);
+        logger.setOutputPrintStream(System.out);
+        logger.setMessageOutputLevel(Project.MSG_WARN);
+        project.addBuildListener(logger);
+
+        System.gc();
+        long baselineThreads = countThreads();
+        List<MemoryPoolMXBean> heapPools = new ArrayList<MemoryPoolMXBean>();
+        for(MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()){
+            if(pool.getType() == MemoryType.HEAP){
+                pool.resetPeakUsage();
+                heapPools.add(pool);
+            }//end if
+        }//end for
+        ThreadSampler sampler = new ThreadSampler();
+        sampler.start();
+
+        long start = System.nanoTime();
+        BuildException failure = null;
+        try{
+            project.fireBuildStarted();
+            project.init();
+            project.addTaskDefinition("trustcertificate", TrustCertTask.class);
+            TrustCertTask task = (TrustCertTask) project.createTask("trustcertificate");
+            task.setKeystoreDir(keystoreDir.toString());
+            task.setFailOnError(false);
+            for(String attribute : attributes){
+                int split = attribute.indexOf('=');
+                IntrospectionHelper.getHelper(project, TrustCertTask.class).setAttribute(project, task, attribute.substring(0, split), attribute.substring(split + 1));
+            }//end for
+            for(String url : this.urls){
+                task.createUrl().setUrl(url);
+            }//end for
+            task.perform();
+        }catch(BuildException e){
+            failure = e;
+        }finally{
+            project.fireBuildFinished(failure);
+        }//end try...catch...finally
+        long wallMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        sampler.halt();
+
+        long peakHeap = 0;
+        for(MemoryPoolMXBean pool : heapPools){
+            peakHeap += pool.getPeakUsage().getUsed();
+        }//end for
+        Path truststoreFile = keystoreDir.resolve("cacerts");
+        KeyStore keystore = new FileKeyStoreLoader().load(truststoreFile, PASSWORD);
+
+        StringBuilder fleetMix = new StringBuilder();
+        for(Kind kind : Kind.values()){
+            fleetMix.append(fleetMix.length() == 0 ? "" : ", ").append(this.kinds[kind.ordinal()]).append(' ').append(kind.name().toLowerCase(Locale.ROOT));
+        }//end for
+        StringBuilder outcomes = new StringBuilder();
+        for(TrustMetrics.Outcome outcome : TrustMetrics.Outcome.values()){
+            outcomes.append(outcomes.length() == 0 ? "" : ", ").append(outcome.getName()).append('=').append(project.getProperty("trustcert." + outcome.getName() + ".count"));
+        }//end for
+
+        System.out.println();
+        System.out.println("servers      : " + servers + " (" + fleetMix + ")");
+        System.out.println("attributes   : " + attributes);
+        System.out.println("wall time    : " + wallMillis + " ms" + (failure == null ? "" : " (failed: " + failure.getMessage() + ")"));
+        System.out.println("peak heap    : " + peakHeap / (1024 * 1024) + " MB (includes the stub servers)");
+        System.out.println("peak threads : " + sampler.peak + " (" + baselineThreads + " before the run, stub server threads excluded)");
+        System.out.println("keystore     : " + Files.size(truststoreFile) / 1024 + " KB, " + keystore.size() + " entries (" + truststoreFile + ")");
+        System.out.println("outcomes     : " + outcomes);
+        for(TrustMetrics.Phase phase : TrustMetrics.Phase.values()){
+            System.out.println(String.format("%-13s: %s ms", phase.getName(), project.getProperty("trustcert." + phase.getName() + ".ms")));
+        }//end for
+    }//end method
+
+    /**
+     * Starts the servers, cycling through the kinds of servers.
+     *
+     * @param servers the number of servers
+     * @param rootKeys the key pair of both roots
+     * @param serverKeys the key pair of every server certificate
+     * @param trustedRoot the root seeded into the local keystore
+     * @param untrustedRoot the root unknown to the local keystore
+     * @throws Exception if a server cannot be started
+     */
+    private void startFleet(int servers, KeyPair rootKeys, KeyPair serverKeys, X509Certificate trustedRoot, X509Certificate untrustedRoot) throws Exception {
+        long now = System.currentTimeMillis();
+        long notBefore = now - DAY_MILLIS;
+        long notAfter = now + 90L * DAY_MILLIS;
+        for(int i = 0; i < servers; i++){
+            String host = "127.0." + (i / 250) + "." + (i % 250 + 2);
+            Kind kind = CYCLE[i % CYCLE.length];
+            this.kinds[kind.ordinal()]++;
+
+            X509Certificate leaf;
+            X509Certificate[] chain;
+            switch(kind){
+            case TRUSTED:
+                leaf = CertificateGenerator.create(host, serverKeys.getPublic(), "Scale Harness Trusted Root", rootKeys.getPrivate(), notBefore, notAfter, false, host);
+                chain = new X509Certificate[]{leaf, trustedRoot};
+                break;
+            case UNTRUSTED_CA:
+                leaf = CertificateGenerator.create(host, serverKeys.getPublic(), "Scale Harness Untrusted Root", rootKeys.getPrivate(), notBefore, notAfter, false, host);
+                chain = new X509Certificate[]{leaf, untrustedRoot};
+                break;
+            case EXPIRED:
+                leaf = CertificateGenerator.create(host, serverKeys.getPublic(), "Scale Harness Trusted Root", rootKeys.getPrivate(), now - 90L * DAY_MILLIS, now - DAY_MILLIS, false, host);
+                chain = new X509Certificate[]{leaf, trustedRoot};
+                break;
+            case SILENT:
+                // the connection is queued by the operating system but never accepted, so the handshake never starts
+                ServerSocket silent = new ServerSocket(0, 50, InetAddress.getByName(host));
+                this.fleet.add(silent);
+                this.urls.add("https://" + host + ":" + silent.getLocalPort());
+                continue;
+            default:
+                leaf = CertificateGenerator.create(host, serverKeys.getPublic(), host, serverKeys.getPrivate(), notBefore, notAfter, false, host);
+                chain = new X509Certificate[]{leaf};
+                break;
+            }//end switch
+
+            StubTlsServer server = new StubTlsServer(host, chain, serverKeys.getPrivate(), kind == Kind.SLOW ? SLOW_DELAY : 0L);
+            this.fleet.add(server);
+            this.urls.add(server.getUrl());
+        }//end for
+    }//end method
+
+    /**
+     * Creates the local keystore and adds the trusted root to it.
+     *
+     * @param keystoreDir the directory of the local keystore
+     * @param trustedRoot the root to add
+     * @throws Exception if the keystore cannot be created
+     */
+    private static void seedKeyStore(Path keystoreDir, X509Certificate trustedRoot) throws Exception {
+        Path truststoreFile = keystoreDir.resolve("cacerts");
+        TrustStoreBootstrap.create(truststoreFile, PASSWORD);
+        KeyStoreLoader loader = new FileKeyStoreLoader();
+        KeyStore keystore = loader.load(truststoreFile, PASSWORD);
+        keystore.setCertificateEntry(TRUSTED_ROOT_ALIAS, trustedRoot);
+        loader.store(truststoreFile, keystore, PASSWORD);
+    }//end method
+
+    /**
+     * Stops every server of the fleet.
+     */
+    private void stopFleet() {
+        for(Closeable server : this.fleet){
+            try{
+                server.close();
+            }catch(IOException e){
+                // the server is already closed
+            }//end try...catch
+        }//end for
+    }//end method
+
+    /**
+     * @return the number of live threads that do not belong to the stub servers or to this harness
+     */
+    private static int countThreads() {
+        int count = 0;
+        for(Thread thread : Thread.getAllStackTraces().keySet()){
+            if(!thread.getName().startsWith("stub-tls") && !thread.getName().equals(ThreadSampler.NAME)){
+                count++;
+            }//end if
+        }//end for
+        return count;
+    }//end method
+
+    /**
+     * This class samples the number of threads while the task is running and keeps the peak.
+     */
+    private static class ThreadSampler extends Thread {
+
+        private static final String NAME = "scale-harness-sampler";
+
+        private volatile boolean running = true;
+        private volatile int peak;
+
+        /**
+         * Creates the sampler as a daemon thread.
+         */
+        ThreadSampler() {
+            super(NAME);
+            setDaemon(true);
+        }//end constructor
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public void run() {
+            while(this.running){
+                this.peak = Math.max(this.peak, countThreads());
+                try{
+                    Thread.sleep(10L);
+                }catch(InterruptedException e){
+                    return;
+                }//end try...catch
+            }//end while
+        }//end method
+
+        /**
+         * Stops sampling and waits for the last sample.
+         *
+         * @throws InterruptedException if the thread is interrupted while waiting
+         */
+        void halt() throws InterruptedException {
+            this.running = false;
+            join();
+        }//end method
+
+    }//end class
+
+}//end class
@@ -0,0 +1,136 @@
+package com.omo.tools.ant.main;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.SocketException;
+import java.security.GeneralSecurityException;
+import java.security.KeyStore;
+import java.security.PrivateKey;
+import java.security.cert.X509Certificate;
+
+import javax.net.ssl.KeyManagerFactory;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLServerSocket;
+import javax.net.ssl.SSLSocket;
+
+/**
+ * This class is a TLS server on the loopback interface that completes the handshake with every client and then closes the connection. It is used by the benchmarks and test harnesses in place of real web servers.
+ *
+ * @author Richard Salas JCCC
+ */
+public class StubTlsServer implements Closeable {
+
+    private static final char[] PASSWORD = "changeit".toCharArray();
+
+    private final SSLServerSocket serverSocket;
+    private final String host;
+    private final long handshakeDelay;
+
+    /**
+     * Starts the server on an ephemeral port.
+     *
+     * @param host the loopback address the server listens on, for example 127.0.0.1 or 127.0.0.2
+     * @param chain the certificate chain sent to the clients, the server certificate first
+     * @param key the private key of the server certificate
+     * @param handshakeDelay the time in milliseconds the server waits before answering a client, used to simulate slow servers
+     * @throws GeneralSecurityException if the TLS context cannot be created
+     * @throws IOException if the server socket cannot be opened
+     */
+    public StubTlsServer(String host, X509Certificate[] chain, PrivateKey key, long handshakeDelay) throws GeneralSecurityException, IOException {
+        this.host = host;
+        this.handshakeDelay = handshakeDelay;
+
+        KeyStore keystore = KeyStore.getInstance("PKCS12");
+        keystore.load(null, null);
+        keystore.setKeyEntry("server", key, PASSWORD, chain);
+        KeyManagerFactory keyManagerFactory = KeyManagerFactory.getInstance(KeyManagerFactory.getDefaultAlgorithm());
+        keyManagerFactory.init(keystore, PASSWORD);
+        SSLContext context = SSLContext.getInstance("TLS");
+        context.init(keyManagerFactory.getKeyManagers(), null, null);
+
+        this.serverSocket = (SSLServerSocket) context.getServerSocketFactory().createServerSocket(0, 200, InetAddress.getByName(host));
+        Thread acceptor = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                accept();
+            }//end method
+        }, "stub-tls-" + host + ":" + getPort());
+        acceptor.setDaemon(true);
+        acceptor.start();
+    }//end constructor
+
+    /**
+     * Accepts clients until the server is closed, each client is served on its own daemon thread.
+     */
+    private void accept() {
+        while(!this.serverSocket.isClosed()){
+            try{
+                final SSLSocket socket = (SSLSocket) this.serverSocket.accept();
+                Thread handler = new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        serve(socket);
+                    }//end method
+                }, "stub-tls-client");
+                handler.setDaemon(true);
+                handler.start();
+            }catch(SocketException e){
+                return;// the server was closed
+            }catch(IOException e){
+                // the client went away before it was accepted, keep serving
+            }//end try...catch
+        }//end while
+    }//end method
+
+    /**
+     * Completes the handshake with a client, a client that does not trust the chain simply fails the handshake.
+     *
+     * @param socket the client socket
+     */
+    private void serve(SSLSocket socket) {
+        try{
+            if(this.handshakeDelay > 0){
+                Thread.sleep(this.handshakeDelay);
+            }//end if
+            socket.setSoTimeout(30000);
+            socket.startHandshake();
+            socket.getInputStream().read();
+        }catch(IOException e){
+            // the client rejected the chain or closed the connection
+        }catch(InterruptedException e){
+            Thread.currentThread().interrupt();
+        }finally{
+            try{
+                socket.close();
+            }catch(IOException e){
+                // nothing left to clean up
+            }//end try...catch
+        }//end try...catch...finally
+    }//end method
+
+    /**
+     * @return the port the server listens on
+     */
+    public int getPort() {
+        return this.serverSocket.getLocalPort();
+    }//end method
+
+    /**
+     * @return the url of the server as expected by the task
+     */
+    public String getUrl() {
+        return "https://" + this.host + ":" + getPort();
+    }//end method
+
+    /**
+     * Stops accepting clients.
+     *
+     * {@inheritDoc}
+     */
+    @Override
+    public void close() throws IOException {
+        this.serverSocket.close();
+    }//end method
+
+}//end class
@@ -0,0 +1,351 @@
+package com.omo.tools.ant.main;
+
+import java.io.IOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.KeyPair;
+import java.security.KeyStore;
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.omo.free.security.ssl.FileKeyStoreLoader;
+import com.omo.free.security.ssl.KeyStoreLoader;
+import com.omo.free.security.ssl.TrustStoreBootstrap;
+import com.omo.free.security.ssl.TrustStoreOptions;
+import com.omo.free.security.ssl.TrustedCertficatesStore;
+
+/**
+ * This class benchmarks the hot paths of the Ant Trust Cert task without the network: loading and storing the local keystore at different sizes and types, creating the local keystore from the java Runtime's cacerts and full runs of the
+ * {@link TrustedCertficatesStore} against {@link StubTlsServer}s on the loopback interface.
+ * <p>
+ * Every benchmark is ran for a number of warm up iterations that are thrown away followed by the measured iterations, the average, minimum, median and maximum time of an iteration is printed. Run it with
+ * {@code java -cp <classes>:lib/* com.omo.tools.ant.main.TrustCertBenchmark [iterations] [warmupIterations] [nameFilter]}.
+ * </p>
+ *
+ * @author Richard Salas JCCC
+ */
+public class TrustCertBenchmark {
+
+    private static final char[] PASSWORD = "changeit".toCharArray();
+    private static final int[] ADDED_ENTRIES = {0, 100, 1000};
+    private static final String[] KEYSTORE_TYPES = {"JKS", "PKCS12"};
+    private static final int SERVERS = 20;
+    private static final long DAY_MILLIS = 24L * 60L * 60L * 1000L;
+
+    // held so the level is not lost when the logger is garbage collected
+    private static final Logger SSL_LOGGER = Logger.getLogger("com.omo.free.security.ssl");
+
+    private final int iterations;
+    private final int warmups;
+    private final String filter;
+    private final Path workDir;
+    private int dirCount;
+
+    /**
+     * @param iterations the number of measured iterations
+     * @param warmups the number of warm up iterations
+     * @param filter only the benchmarks whose name contains the filter are ran
+     * @param workDir the directory the keystores are written to
+     */
+    TrustCertBenchmark(int iterations, int warmups, String filter, Path workDir) {
+        this.iterations = iterations;
+        this.warmups = warmups;
+        this.filter = filter;
+        this.workDir = workDir;
+    }//end constructor
+
+    /**
+     * This main method will run every benchmark.
+     *
+     * @param args - the number of measured iterations (default 10), the number of warm up iterations (default 5) and a filter on the benchmark names
+     * @throws Exception if a benchmark cannot be set up
+     */
+    public static void main(final String[] args) throws Exception {
+        int iterations = args.length > 0 ? Integer.parseInt(args[0]) : 10;
+        int warmups = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+        String filter = args.length > 2 ? args[2] : "";
+        SSL_LOGGER.setLevel(Level.WARNING);
+
+        Path workDir = Files.createTempDirectory("trustcert-benchmark");
+        try{
+            TrustCertBenchmark benchmark = new TrustCertBenchmark(iterations, warmups, filter, workDir);
+            benchmark.benchmarkKeyStores();
+            benchmark.benchmarkBootstrap();
+            benchmark.benchmarkRuns();
+        }finally{
+            delete(workDir);
+        }//end try...finally
+    }//end method
+
+    /**
+     * Benchmarks loading and storing the local keystore holding the java Runtime's cacerts plus 0, 100 and 1,000 added entries.
+     *
+     * @throws Exception if a keystore cannot be created
+     */
+    private void benchmarkKeyStores() throws Exception {
+        final KeyStoreLoader loader = new FileKeyStoreLoader();
+        KeyStore jdkStore = loader.load(TrustStoreBootstrap.getJdkTrustStore(), PASSWORD);
+
+        KeyPair keys = CertificateGenerator.newKeyPair();
+        long now = System.currentTimeMillis();
+        List<X509Certificate> added = new ArrayList<X509Certificate>();
+        for(int i = 0; i < ADDED_ENTRIES[ADDED_ENTRIES.length - 1]; i++){
+            added.add(CertificateGenerator.create("host" + i + ".benchmark", keys.getPublic(), "Benchmark Root", keys.getPrivate(), now - DAY_MILLIS, now + 365L * DAY_MILLIS, false, "host" + i + ".benchmark"));
+        }//end for
+
+        for(String type : KEYSTORE_TYPES){
+            for(int count : ADDED_ENTRIES){
+                KeyStore keystore = KeyStore.getInstance(type);
+                keystore.load(null, PASSWORD);
+                for(String alias : Collections.list(jdkStore.aliases())){
+                    keystore.setCertificateEntry(alias, jdkStore.getCertificate(alias));
+                }//end for
+                for(int i = 0; i < count; i++){
+                    keystore.setCertificateEntry("host" + i + ".benchmark" + TrustedCertficatesStore.ALIAS_SUFFIX, added.get(i));
+                }//end for
+
+                final Path file = newDir().resolve("cacerts");
+                loader.store(file, keystore, PASSWORD);
+                String suffix = type + " +" + count + " (" + keystore.size() + " entries, " + Files.size(file) / 1024 + " KB)";
+
+                measure("keystore.load " + suffix, new Case() {
+                    @Override
+                    void run() throws Exception {
+                        loader.load(file, PASSWORD);
+                    }//end method
+                });
+
+                final KeyStore loaded = loader.load(file, PASSWORD);
+                measure("keystore.store " + suffix, new Case() {
+                    @Override
+                    void run() throws Exception {
+                        loader.store(file, loaded, PASSWORD);
+                    }//end method
+                });
+            }//end for
+        }//end for
+    }//end method
+
+    /**
+     * Benchmarks creating the local keystore from the java Runtime's cacerts.
+     *
+     * @throws Exception if the benchmark fails
+     */
+    private void benchmarkBootstrap() throws Exception {
+        measure("bootstrap.create", new Case() {
+            private Path dir;
+
+            @Override
+            void setUp() throws IOException {
+                this.dir = newDir();
+            }//end method
+
+            @Override
+            void run() throws Exception {
+                TrustStoreBootstrap.create(this.dir.resolve("cacerts"), PASSWORD);
+            }//end method
+
+            @Override
+            void tearDown() throws IOException {
+                delete(this.dir);
+            }//end method
+        });
+    }//end method
+
+    /**
+     * Benchmarks full runs of the {@link TrustedCertficatesStore} against servers whose chains are issued by a root the java Runtime does not trust.
+     *
+     * @throws Exception if the servers cannot be started
+     */
+    private void benchmarkRuns() throws Exception {
+        KeyPair rootKeys = CertificateGenerator.newKeyPair();
+        KeyPair serverKeys = CertificateGenerator.newKeyPair();
+        long now = System.currentTimeMillis();
+        X509Certificate root = CertificateGenerator.createRoot("Benchmark Root", rootKeys, now - DAY_MILLIS, now + 365L * DAY_MILLIS);
+        X509Certificate leaf = CertificateGenerator.create("127.0.0.1", serverKeys.getPublic(), "Benchmark Root", rootKeys.getPrivate(), now - DAY_MILLIS, now + 365L * DAY_MILLIS, false, "127.0.0.1");
+
+        List<StubTlsServer> servers = new ArrayList<StubTlsServer>();
+        final List<String> urls = new ArrayList<String>();
+        try{
+            for(int i = 0; i < SERVERS; i++){
+                StubTlsServer server = new StubTlsServer("127.0.0.1", new X509Certificate[]{leaf, root}, serverKeys.getPrivate(), 0L);
+                servers.add(server);
+                urls.add(server.getUrl());
+            }//end for
+
+            for(final String engine : new String[]{TrustStoreOptions.ENGINE_SOCKET, TrustStoreOptions.ENGINE_NIO}){
+                measure("run.cold " + engine + " (" + SERVERS + " servers)", new Case() {
+                    private Path dir;
+
+                    @Override
+                    void setUp() throws IOException {
+                        this.dir = newDir();
+                    }//end method
+
+                    @Override
+                    void run() throws Exception {
+                        new TrustedCertficatesStore(options(this.dir, urls, engine, 0L));
+                    }//end method
+
+                    @Override
+                    void tearDown() throws IOException {
+                        delete(this.dir);
+                    }//end method
+                });
+
+                final Path warmDir = newDir();
+                new TrustedCertficatesStore(options(warmDir, urls, engine, 0L));
+                measure("run.warm " + engine + " (" + SERVERS + " servers)", new Case() {
+                    @Override
+                    void run() throws Exception {
+                        new TrustedCertficatesStore(options(warmDir, urls, engine, 0L));
+                    }//end method
+                });
+            }//end for
+
+            final Path cachedDir = newDir();
+            new TrustedCertficatesStore(options(cachedDir, urls, TrustStoreOptions.ENGINE_SOCKET, TrustStoreOptions.DEFAULT_PROBE_CACHE_TTL));
+            measure("run.cached (" + SERVERS + " servers)", new Case() {
+                @Override
+                void run() throws Exception {
+                    new TrustedCertficatesStore(options(cachedDir, urls, TrustStoreOptions.ENGINE_SOCKET, TrustStoreOptions.DEFAULT_PROBE_CACHE_TTL));
+                }//end method
+            });
+        }finally{
+            for(StubTlsServer server : servers){
+                server.close();
+            }//end for
+        }//end try...finally
+    }//end method
+
+    /**
+     * @param dir the keystore directory
+     * @param urls the urls to trust
+     * @param engine the handshake engine
+     * @param probeCacheTtl the time a verified handshake is remembered, zero makes every run handshake with every server
+     * @return the options of a run
+     */
+    private static TrustStoreOptions options(Path dir, List<String> urls, String engine, long probeCacheTtl) {
+        TrustStoreOptions options = new TrustStoreOptions();
+        options.setKeystoreDir(dir.toString());
+        options.setEngine(engine);
+        options.setProbeCacheTtl(probeCacheTtl);
+        for(String url : urls){
+            options.addUrl(url);
+        }//end for
+        return options;
+    }//end method
+
+    /**
+     * Runs the warm up and measured iterations of a benchmark and prints the result.
+     *
+     * @param name the name of the benchmark
+     * @param benchmark the benchmark
+     * @throws Exception if the benchmark fails
+     */
+    private void measure(String name, Case benchmark) throws Exception {
+        if(!name.contains(this.filter)){
+            return;
+        }//end if
+
+        long[] nanos = new long[this.iterations];
+        for(int i = 0; i < this.warmups + this.iterations; i++){
+            benchmark.setUp();
+            long start = System.nanoTime();
+            benchmark.run();
+            long elapsed = System.nanoTime() - start;
+            benchmark.tearDown();
+            if(i >= this.warmups){
+                nanos[i - this.warmups] = elapsed;
+            }//end if
+        }//end for
+
+        Arrays.sort(nanos);
+        long total = 0;
+        for(long elapsed : nanos){
+            total += elapsed;
+        }//end for
+        System.out.println(String.format("%-60s avg %9.3f ms  min %9.3f  p50 %9.3f  max %9.3f  (n=%d)", name, millis(total / nanos.length), millis(nanos[0]), millis(nanos[nanos.length / 2]), millis(nanos[nanos.length - 1]), nanos.length));
+    }//end method
+
+    /**
+     * @param nanos the time in nanoseconds
+     * @return the time in milliseconds
+     */
+    private static double millis(long nanos) {
+        return nanos / (double) TimeUnit.MILLISECONDS.toNanos(1);
+    }//end method
+
+    /**
+     * @return a new empty directory within the work directory
+     * @throws IOException if the directory cannot be created
+     */
+    private Path newDir() throws IOException {
+        return Files.createDirectories(this.workDir.resolve("run-" + this.dirCount++));
+    }//end method
+
+    /**
+     * Deletes the directory and everything within it.
+     *
+     * @param dir the directory
+     * @throws IOException if a file cannot be deleted
+     */
+    private static void delete(Path dir) throws IOException {
+        if(!Files.exists(dir)){
+            return;
+        }//end if
+        Files.walkFileTree(dir, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                Files.delete(file);
+                return FileVisitResult.CONTINUE;
+            }//end method
+
+            @Override
+            public FileVisitResult postVisitDirectory(Path dir, IOException e) throws IOException {
+                Files.delete(dir);
+                return FileVisitResult.CONTINUE;
+            }//end method
+        });
+    }//end method
+
+    /**
+     * A single benchmark, only {@link #run()} is timed.
+     */
+    private abstract static class Case {
+
+        /**
+         * Prepares an iteration.
+         *
+         * @throws Exception if the iteration cannot be prepared
+         */
+        void setUp() throws Exception {
+        }//end method
+
+        /**
+         * Runs the timed part of an iteration.
+         *
+         * @throws Exception if the iteration fails
+         */
+        abstract void run() throws Exception;
+
+        /**
+         * Cleans up after an iteration.
+         *
+         * @throws Exception if the iteration cannot be cleaned up
+         */
+        void tearDown() throws Exception {
+        }//end method
+
+    }//end class
+
+}//end class
@@ -0,0 +1,97 @@
+/**
+ *
+ */
+package com.omo.free.security.ssl;
+
+import java.util.concurrent.TimeUnit;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+/**
+ * This class commits the phases and outcomes recorded by {@link TrustMetrics} as JDK Flight Recorder events. It is only loaded by name when the running JVM has the {@code jdk.jfr} API (java 8u262 and later), so it must not be referenced directly. It lives in its own source root since the {@code jdk.jfr} API is not part of
+ * the Java 8 platform the rest of the task is compiled against. The listener is only created once a recording has been started, the event classes register themselves when they are first loaded and every event checks whether it
+ * should be committed at the time it is recorded.
+ *
+ * @author Richard Salas
+ */
+class JfrTrustEvents implements TrustMetrics.Listener {
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void phaseEnded(TrustMetrics.Phase phase, String host, int port, long nanos) {
+        PhaseEvent event = new PhaseEvent();
+        if(event.shouldCommit()){
+            event.phase = phase.getName();
+            event.host = host;
+            event.port = port;
+            event.elapsed = TimeUnit.NANOSECONDS.toMillis(nanos);
+            event.commit();
+        }// end if
+    }// end phaseEnded
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void outcome(TrustMetrics.Outcome outcome, String host, int port) {
+        OutcomeEvent event = new OutcomeEvent();
+        if(event.shouldCommit()){
+            event.outcome = outcome.getName();
+            event.host = host;
+            event.port = port;
+            event.commit();
+        }// end if
+    }// end outcome
+
+    /**
+     * A phase of trusting the web servers has ended.
+     */
+    @Name("com.omo.free.trustcert.Phase")
+    @Label("Trust Certificate Phase")
+    @Category({"Ant", "Trust Certificate"})
+    @Description("A phase of trusting the web servers has ended")
+    static class PhaseEvent extends Event {
+
+        @Label("Phase")
+        String phase;
+
+        @Label("Host")
+        String host;
+
+        @Label("Port")
+        int port;
+
+        @Label("Elapsed")
+        @Timespan(Timespan.MILLISECONDS)
+        long elapsed;
+
+    }// end class
+
+    /**
+     * The check of a web server has finished.
+     */
+    @Name("com.omo.free.trustcert.Outcome")
+    @Label("Trust Certificate Outcome")
+    @Category({"Ant", "Trust Certificate"})
+    @Description("The check of a web server has finished")
+    static class OutcomeEvent extends Event {
+
+        @Label("Outcome")
+        String outcome;
+
+        @Label("Host")
+        String host;
+
+        @Label("Port")
+        int port;
+
+    }// end class
+
+}// end class
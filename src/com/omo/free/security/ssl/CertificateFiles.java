@@ -0,0 +1,158 @@
+/**
+ *
+ */
+package com.omo.free.security.ssl;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.cert.Certificate;
+import java.security.cert.CertificateException;
+import java.security.cert.CertificateFactory;
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+
+/**
+ * This class is used for reading certificates from files: PEM files holding one or more certificates, DER encoded certificates and PKCS#7 bundles in either encoding.
+ *
+ * @author Richard Salas
+ */
+public final class CertificateFiles {
+
+    private static final String MY_CLASS_NAME = "com.omo.free.security.ssl.CertificateFiles";
+    private static Logger myLogger = Logger.getLogger(MY_CLASS_NAME);
+
+    /** the extensions of the files certificates are read from */
+    public static final List<String> EXTENSIONS = Collections.unmodifiableList(Arrays.asList(".pem", ".crt", ".cer", ".der", ".p7b"));
+
+    /**
+     * Utility class, no instances.
+     */
+    private CertificateFiles() {
+    }// end constructor
+
+    /**
+     * @param file
+     *        the file
+     * @return true if the extension of the file is one of the {@link #EXTENSIONS}
+     */
+    public static boolean isCertificateFile(Path file) {
+        String name = file.getFileName().toString().toLowerCase(Locale.ROOT);
+        for(String extension : EXTENSIONS){
+            if(name.endsWith(extension)){
+                return true;
+            }// end if
+        }// end for
+        return false;
+    }// end isCertificateFile
+
+    /**
+     * Reads the X.509 certificates of a file.
+     *
+     * @param file
+     *        the file
+     * @return the certificates in the order of the file
+     * @throws CertificateException
+     *         if the file holds no certificate or cannot be parsed
+     * @throws IOException
+     *         if the file cannot be read
+     */
+    static X509Certificate[] read(Path file) throws CertificateException, IOException {
+        List<X509Certificate> certificates = new ArrayList<X509Certificate>();
+        InputStream in = new BufferedInputStream(Files.newInputStream(file));
+        try{
+            // a new factory for every file, factories are not safe to share between threads
+            for(Certificate certificate : CertificateFactory.getInstance("X.509").generateCertificates(in)){
+                if(certificate instanceof X509Certificate){
+                    certificates.add((X509Certificate) certificate);
+                }// end if
+            }// end for
+        }catch(CertificateException e){
+            throw new CertificateException("The file " + file + " could not be parsed: " + e.getMessage(), e);
+        }finally{
+            in.close();
+        }// end try...finally
+
+        if(certificates.isEmpty()){
+            throw new CertificateException("The file " + file + " holds no certificate");
+        }// end if
+        myLogger.fine("Read " + certificates.size() + " certificate(s) from " + file + ".");
+        return certificates.toArray(new X509Certificate[certificates.size()]);
+    }// end read
+
+    /**
+     * Reads the X.509 certificates of the files, the files are spread over a fixed pool of threads when there is more than one thread.
+     *
+     * @param files
+     *        the files
+     * @param threads
+     *        the maximum number of files read at the same time
+     * @return the certificates of every file, in the order of the files
+     * @throws CertificateException
+     *         if a file holds no certificate or cannot be parsed
+     * @throws IOException
+     *         if a file cannot be read
+     * @throws InterruptedException
+     *         if the thread is interrupted while waiting on the files
+     */
+    static List<X509Certificate[]> readAll(List<Path> files, int threads) throws CertificateException, IOException, InterruptedException {
+        List<X509Certificate[]> certificates = new ArrayList<X509Certificate[]>(files.size());
+        if(threads <= 1 || files.size() < 2){
+            for(Path file : files){
+                certificates.add(read(file));
+            }// end for
+            return certificates;
+        }// end if
+
+        final AtomicInteger count = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(threads, files.size()), new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "trustcert-import-" + count.getAndIncrement());
+                thread.setDaemon(true);
+                return thread;
+            }// end newThread
+        });
+        try{
+            List<Future<X509Certificate[]>> futures = new ArrayList<Future<X509Certificate[]>>(files.size());
+            for(final Path file : files){
+                futures.add(executor.submit(new Callable<X509Certificate[]>() {
+                    @Override
+                    public X509Certificate[] call() throws Exception {
+                        return read(file);
+                    }// end call
+                }));
+            }// end for
+            for(int i = 0; i < futures.size(); i++){
+                try{
+                    certificates.add(futures.get(i).get());
+                }catch(ExecutionException e){
+                    if(e.getCause() instanceof CertificateException){
+                        throw (CertificateException) e.getCause();
+                    }else if(e.getCause() instanceof IOException){
+                        throw (IOException) e.getCause();
+                    }// end if
+                    throw new IllegalStateException("The file " + files.get(i) + " could not be read", e.getCause());
+                }// end try...catch
+            }// end for
+        }finally{
+            executor.shutdownNow();
+        }// end try...finally
+        return certificates;
+    }// end readAll
+
+}// end class
@@ -0,0 +1,71 @@
+/**
+ *
+ */
+package com.omo.free.security.ssl;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.cert.Certificate;
+import java.security.cert.CertificateEncodingException;
+
+/**
+ * This class is used for calculating the fingerprints of certificates.
+ *
+ * @author Richard Salas
+ */
+public final class CertificateFingerprints {
+
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    /**
+     * Utility class, no instances.
+     */
+    private CertificateFingerprints() {
+    }// end constructor
+
+    /**
+     * Calculates the SHA-256 fingerprint of the certificate.
+     *
+     * @param certificate
+     *        the certificate
+     * @return the lower case hex encoded SHA-256 digest of the encoded certificate
+     * @throws CertificateEncodingException
+     *         if the certificate cannot be encoded
+     */
+    public static String sha256(Certificate certificate) throws CertificateEncodingException {
+        return sha256(certificate.getEncoded());
+    }// end sha256
+
+    /**
+     * Calculates the SHA-256 fingerprint of the bytes.
+     *
+     * @param bytes
+     *        the bytes to digest
+     * @return the lower case hex encoded SHA-256 digest
+     */
+    public static String sha256(byte[] bytes) {
+        try{
+            return toHex(MessageDigest.getInstance("SHA-256").digest(bytes));
+        }catch(NoSuchAlgorithmException e){
+            // every java platform is required to support SHA-256
+            throw new IllegalStateException("SHA-256 is not supported by this JVM", e);
+        }// end try...catch
+    }// end sha256
+
+    /**
+     * Encodes the bytes as lower case hex.
+     *
+     * @param bytes
+     *        the bytes to encode
+     * @return the hex string
+     */
+    public static String toHex(byte[] bytes) {
+        char[] chars = new char[bytes.length * 2];
+        for(int i = 0; i < bytes.length; i++){
+            chars[i * 2] = HEX[(bytes[i] >> 4) & 0xf];
+            chars[i * 2 + 1] = HEX[bytes[i] & 0xf];
+        }// end for
+        return new String(chars);
+    }// end toHex
+
+}// end class
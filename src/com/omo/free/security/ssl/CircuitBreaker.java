@@ -0,0 +1,117 @@
+/**
+ *
+ */
+package com.omo.free.security.ssl;
+
+import java.nio.file.Path;
+import java.util.logging.Logger;
+
+/**
+ * This class is a per host circuit breaker whose state is kept in a file next to the local truststore. A host whose last handshake failed is skipped until the cool-down has passed, so one dead endpoint does not cost every build a full set of timeouts.
+ * Each entry maps {@code host:port} to the time of the last failure and the number of failures in a row, the cool-down doubles with every failure in a row up to sixteen times the configured one so a host that stays down is tried less often.
+ *
+ * @author Richard Salas
+ */
+public class CircuitBreaker {
+
+    private static final String MY_CLASS_NAME = "com.omo.free.security.ssl.CircuitBreaker";
+    private static Logger myLogger = Logger.getLogger(MY_CLASS_NAME);
+
+    /** the name of the state file created next to the truststore */
+    public static final String STATE_FILE_NM = "cacerts.breaker";
+
+    private static final String SEPARATOR = "|";
+    private static final int MAX_COOL_DOWN_SHIFT = 4;
+
+    private final LockedPropertiesFile entries;
+
+    /**
+     * Constructor used to create an instance of the CircuitBreaker. The state file is read if it exists.
+     *
+     * @param trustStoreDir
+     *        the directory of the local truststore
+     */
+    public CircuitBreaker(Path trustStoreDir) {
+        this.entries = new LockedPropertiesFile(trustStoreDir.resolve(STATE_FILE_NM), "TrustCertTask failed hosts: host:port=lastFailure|failures in a row");
+    }// end constructor
+
+    /**
+     * Checks whether the host failed within the cool-down, which doubles with every failure in a row after the first.
+     *
+     * @param host
+     *        the host name
+     * @param port
+     *        the port
+     * @param coolDownMillis
+     *        how long a host that failed once is skipped
+     * @return true if the host should be skipped
+     */
+    public boolean isOpen(String host, int port, long coolDownMillis) {
+        String value = this.entries.get(key(host, port));
+        if(value == null){
+            return false;
+        }// end if
+
+        try{
+            String[] parts = value.split("\\" + SEPARATOR);
+            long lastFailure = Long.parseLong(parts[0]);
+            int failures = (parts.length > 1) ? Math.max(1, Integer.parseInt(parts[1])) : 1;
+            return System.currentTimeMillis() - lastFailure < (coolDownMillis << Math.min(failures - 1, MAX_COOL_DOWN_SHIFT));
+        }catch(RuntimeException e){
+            myLogger.fine("Ignoring the malformed circuit breaker entry for " + key(host, port) + ": " + value);
+            return false;
+        }// end try...catch
+    }// end isOpen
+
+    /**
+     * Records a failed handshake.
+     *
+     * @param host
+     *        the host name
+     * @param port
+     *        the port
+     */
+    public void failed(String host, int port) {
+        int failures = 1;
+        String value = this.entries.get(key(host, port));
+        if(value != null){
+            try{
+                failures = Integer.parseInt(value.split("\\" + SEPARATOR)[1]) + 1;
+            }catch(RuntimeException e){
+                failures = 1;
+            }// end try...catch
+        }// end if
+        this.entries.put(key(host, port), System.currentTimeMillis() + SEPARATOR + failures);
+    }// end failed
+
+    /**
+     * Records a successful handshake, closing the breaker of the host.
+     *
+     * @param host
+     *        the host name
+     * @param port
+     *        the port
+     */
+    public void succeeded(String host, int port) {
+        this.entries.put(key(host, port), null);
+    }// end succeeded
+
+    /**
+     * Writes the state file when an entry has changed, keeping the entries other builds saved in the meantime.
+     */
+    public void save() {
+        this.entries.save();
+    }// end save
+
+    /**
+     * @param host
+     *        the host name
+     * @param port
+     *        the port
+     * @return the key of the state entry
+     */
+    private static String key(String host, int port) {
+        return host + ":" + port;
+    }// end key
+
+}// end class
@@ -0,0 +1,120 @@
+/**
+ *
+ */
+package com.omo.free.security.ssl;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.Socket;
+
+import javax.net.ssl.HandshakeCompletedEvent;
+import javax.net.ssl.HandshakeCompletedListener;
+import javax.net.ssl.SSLSocket;
+import javax.net.ssl.SSLSocketFactory;
+
+/**
+ * This class is the socket factory installed by the {@link ReloadableTrustManager}. It creates the sockets of the default {@link javax.net.ssl.SSLContext} and reports every completed handshake to the trust manager, which tells full handshakes from
+ * resumed ones.
+ *
+ * @author Richard Salas
+ */
+class CountingSSLSocketFactory extends SSLSocketFactory {
+
+    private final SSLSocketFactory factory;
+    private final HandshakeCompletedListener listener;
+
+    /**
+     * Constructor used to create an instance of the CountingSSLSocketFactory.
+     *
+     * @param factory
+     *        the socket factory of the default SSLContext
+     * @param trustManager
+     *        the trust manager of the default SSLContext
+     */
+    CountingSSLSocketFactory(SSLSocketFactory factory, final ReloadableTrustManager trustManager) {
+        this.factory = factory;
+        this.listener = new HandshakeCompletedListener() {
+            @Override
+            public void handshakeCompleted(HandshakeCompletedEvent event) {
+                trustManager.handshakeCompleted(event.getSocket());
+            }// end handshakeCompleted
+        };
+    }// end constructor
+
+    /**
+     * @param socket
+     *        the socket created by the socket factory of the default SSLContext
+     * @return the socket, listened to when it is an SSL socket
+     */
+    private Socket listen(Socket socket) {
+        if(socket instanceof SSLSocket){
+            ((SSLSocket) socket).addHandshakeCompletedListener(this.listener);
+        }// end if
+        return socket;
+    }// end listen
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String[] getDefaultCipherSuites() {
+        return this.factory.getDefaultCipherSuites();
+    }// end getDefaultCipherSuites
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String[] getSupportedCipherSuites() {
+        return this.factory.getSupportedCipherSuites();
+    }// end getSupportedCipherSuites
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Socket createSocket() throws IOException {
+        return listen(this.factory.createSocket());
+    }// end createSocket
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Socket createSocket(Socket socket, String host, int port, boolean autoClose) throws IOException {
+        return listen(this.factory.createSocket(socket, host, port, autoClose));
+    }// end createSocket
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Socket createSocket(String host, int port) throws IOException {
+        return listen(this.factory.createSocket(host, port));
+    }// end createSocket
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Socket createSocket(String host, int port, InetAddress localHost, int localPort) throws IOException {
+        return listen(this.factory.createSocket(host, port, localHost, localPort));
+    }// end createSocket
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Socket createSocket(InetAddress host, int port) throws IOException {
+        return listen(this.factory.createSocket(host, port));
+    }// end createSocket
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Socket createSocket(InetAddress address, int port, InetAddress localAddress, int localPort) throws IOException {
+        return listen(this.factory.createSocket(address, port, localAddress, localPort));
+    }// end createSocket
+
+}// end class
@@ -0,0 +1,243 @@
+/**
+ *
+ */
+package com.omo.free.security.ssl;
+
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.GeneralSecurityException;
+import java.security.KeyStore;
+import java.security.KeyStoreException;
+import java.security.cert.Certificate;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * This class loads and stores the local truststore directly from and to the file system on every call.
+ * <p>
+ * Stores are safe when several threads or processes share the same truststore. While holding the {@link TrustStoreLock} of the truststore the file is read again, the certificate entries other writers added, changed or removed since the keystore was
+ * loaded are merged into the keystore, and the result is written to a temporary file that then replaces the truststore with an atomic move. Loads never wait on the lock.
+ * </p>
+ *
+ * @author Richard Salas
+ */
+public class FileKeyStoreLoader implements KeyStoreLoader {
+
+    private static final String MY_CLASS_NAME = "com.omo.free.security.ssl.FileKeyStoreLoader";
+    private static Logger myLogger = Logger.getLogger(MY_CLASS_NAME);
+
+    private static final int JKS_MAGIC = 0xFEEDFEED;
+    private static final int JCEKS_MAGIC = 0xCECECECE;
+    private static final int DER_SEQUENCE = 0x30;
+
+    /** the certificate entries of every keystore as they were when it was last loaded or stored by this loader */
+    private final Map<KeyStore, Map<String, Certificate>> snapshots = new WeakHashMap<KeyStore, Map<String, Certificate>>();
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public KeyStore load(Path truststoreFile, char[] password) throws IOException, GeneralSecurityException {
+        KeyStore ks = read(truststoreFile, password);
+        Map<String, Certificate> snapshot = certificateEntries(ks);
+        synchronized(this.snapshots){
+            this.snapshots.put(ks, snapshot);
+        }// end synchronized
+        return ks;
+    }// end load
+
+    /**
+     * Reads the keystore from the file.
+     *
+     * @param truststoreFile
+     *        the truststore file to read
+     * @param password
+     *        the password of the truststore
+     * @return the keystore
+     * @throws IOException
+     *         if the truststore file cannot be read
+     * @throws GeneralSecurityException
+     *         if the keystore cannot be loaded
+     */
+    private static KeyStore read(Path truststoreFile, char[] password) throws IOException, GeneralSecurityException {
+        myLogger.entering(MY_CLASS_NAME, "read", truststoreFile);
+
+        InputStream in = null;
+        KeyStore ks = null;
+        try{
+            myLogger.info("Starting to load the cacerts file: " + truststoreFile.toString());
+            String type = detectType(truststoreFile);
+            in = new FileInputStream(truststoreFile.toFile());
+            ks = KeyStore.getInstance(type != null ? type : KeyStore.getDefaultType());
+            ks.load(in, password);
+        }finally{
+            try{
+                if(in != null){
+                    in.close();
+                }// end if
+            }catch(IOException e){
+                myLogger.log(Level.SEVERE, "IOException occurred while trying to close the inputstream used in the load process.  Error message is: " + e.getMessage(), e);
+            }// end try...catch
+        }// end try...finally
+
+        myLogger.exiting(MY_CLASS_NAME, "read");
+        return ks;
+    }// end read
+
+    /**
+     * Detects the type of the keystore file from its first bytes so that a keystore is always loaded and stored with the type it was written with.
+     *
+     * @param keystoreFile
+     *        the keystore file
+     * @return JKS, JCEKS or PKCS12, or null if the type is not known
+     * @throws IOException
+     *         if the file cannot be read
+     */
+    public static String detectType(Path keystoreFile) throws IOException {
+        DataInputStream in = new DataInputStream(Files.newInputStream(keystoreFile));
+        try{
+            int magic = in.readInt();
+            if(magic == JKS_MAGIC){
+                return "JKS";
+            }else if(magic == JCEKS_MAGIC){
+                return "JCEKS";
+            }else if((magic >>> 24) == DER_SEQUENCE){
+                return "PKCS12";
+            }// end if
+            return null;
+        }catch(EOFException e){
+            return null;
+        }finally{
+            in.close();
+        }// end try...catch...finally
+    }// end detectType
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void store(Path truststoreFile, KeyStore keystore, char[] password) throws IOException, GeneralSecurityException {
+        myLogger.entering(MY_CLASS_NAME, "store", truststoreFile);
+
+        TrustStoreLock lock = TrustStoreLock.acquire(truststoreFile);
+        try{
+            Map<String, Certificate> snapshot = null;
+            synchronized(this.snapshots){
+                snapshot = this.snapshots.get(keystore);
+            }// end synchronized
+
+            if(snapshot != null && Files.exists(truststoreFile)){
+                mergeConcurrentChanges(keystore, snapshot, read(truststoreFile, password));
+            }// end if
+
+            Path tempFile = TrustStoreFiles.newTempFile(truststoreFile);
+            OutputStream out = null;
+            try{
+                out = Files.newOutputStream(tempFile);
+                keystore.store(out, password);
+                out.close();
+                out = null;
+                TrustStoreFiles.replace(tempFile, truststoreFile);
+            }finally{
+                try{
+                    if(out != null){
+                        out.close();
+                    }// end if
+                }catch(IOException e){
+                    myLogger.log(Level.SEVERE, "IOException occurred while trying to close the outputstream used in the store process.  Error message is: " + e.getMessage(), e);
+                }// end try...catch
+                Files.deleteIfExists(tempFile);
+            }// end try...finally
+
+            Map<String, Certificate> stored = certificateEntries(keystore);
+            synchronized(this.snapshots){
+                this.snapshots.put(keystore, stored);
+            }// end synchronized
+        }finally{
+            lock.release();
+        }// end try...finally
+
+        myLogger.exiting(MY_CLASS_NAME, "store");
+    }// end store
+
+    /**
+     * Merges the certificate entries that other writers added, changed or removed since the keystore was loaded into the keystore. Entries that were also changed in the keystore keep the value of the keystore.
+     *
+     * @param keystore
+     *        the keystore about to be stored
+     * @param snapshot
+     *        the certificate entries of the keystore when it was loaded
+     * @param current
+     *        the keystore currently on disk
+     * @throws KeyStoreException
+     *         if an entry cannot be read or written
+     */
+    private static void mergeConcurrentChanges(KeyStore keystore, Map<String, Certificate> snapshot, KeyStore current) throws KeyStoreException {
+        Map<String, Certificate> onDisk = certificateEntries(current);
+        Map<String, Certificate> ours = certificateEntries(keystore);
+        int merged = 0;
+
+        for(Map.Entry<String, Certificate> entry : onDisk.entrySet()){
+            String alias = entry.getKey();
+            boolean changedByOthers = !entry.getValue().equals(snapshot.get(alias));
+            boolean changedByUs = !equal(ours.get(alias), snapshot.get(alias));
+            if(changedByOthers && !changedByUs){
+                keystore.setCertificateEntry(alias, entry.getValue());
+                merged++;
+            }// end if
+        }// end for
+
+        for(Map.Entry<String, Certificate> entry : snapshot.entrySet()){
+            String alias = entry.getKey();
+            boolean removedByOthers = !onDisk.containsKey(alias);
+            boolean changedByUs = !equal(ours.get(alias), entry.getValue());
+            if(removedByOthers && !changedByUs){
+                keystore.deleteEntry(alias);
+                merged++;
+            }// end if
+        }// end for
+
+        if(merged > 0){
+            myLogger.info("Merged " + merged + " certificate change(s) made by other writers since the truststore was loaded.");
+        }// end if
+    }// end mergeConcurrentChanges
+
+    /**
+     * @param keystore
+     *        the keystore
+     * @return the certificate entries of the keystore by alias
+     * @throws KeyStoreException
+     *         if an entry cannot be read
+     */
+    private static Map<String, Certificate> certificateEntries(KeyStore keystore) throws KeyStoreException {
+        Map<String, Certificate> entries = new HashMap<String, Certificate>();
+        for(String alias : Collections.list(keystore.aliases())){
+            if(keystore.isCertificateEntry(alias)){
+                entries.put(alias, keystore.getCertificate(alias));
+            }// end if
+        }// end for
+        return entries;
+    }// end certificateEntries
+
+    /**
+     * @param a
+     *        the first certificate, may be null
+     * @param b
+     *        the second certificate, may be null
+     * @return true if both are null or equal
+     */
+    private static boolean equal(Certificate a, Certificate b) {
+        return a == null ? b == null : a.equals(b);
+    }// end equal
+
+}// end class
@@ -0,0 +1,187 @@
+/**
+ *
+ */
+package com.omo.free.security.ssl;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.GeneralSecurityException;
+import java.security.KeyStore;
+import java.security.cert.Certificate;
+import java.security.cert.X509Certificate;
+import java.util.Collections;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.logging.Logger;
+
+/**
+ * This class is an index from the SHA-256 fingerprint of every certificate entry of the local truststore to its alias, so the {@link TrustedCertficatesStore} can tell in constant time whether a certificate is already stored. The index is built once per
+ * loaded keystore and persisted in a sidecar file next to the truststore, together with the size and modification time of the truststore it was built from. A later build that loads the same truststore file reads the sidecar instead of fingerprinting
+ * every entry again; a truststore changed in any other way is indexed again.
+ * <p>
+ * Every hit is checked against the keystore before it is trusted, so an index that is ahead of or behind the file on disk (a deferred write, a build sharing the directory) only costs a duplicate entry, never a missing one.
+ * </p>
+ *
+ * @author Richard Salas
+ */
+class FingerprintIndex {
+
+    private static final String MY_CLASS_NAME = "com.omo.free.security.ssl.FingerprintIndex";
+    private static Logger myLogger = Logger.getLogger(MY_CLASS_NAME);
+
+    /** the name of the index file created next to the truststore */
+    static final String INDEX_FILE_NM = "cacerts.fingerprints";
+
+    private static final String STAMP_KEY = "keystore";
+
+    private static final Map<KeyStore, FingerprintIndex> INDEXES = Collections.synchronizedMap(new WeakHashMap<KeyStore, FingerprintIndex>());
+
+    private final Path truststoreFile;
+    private final LockedPropertiesFile entries;
+
+    /**
+     * Constructor used to create an instance of the FingerprintIndex. The sidecar file is read and, when it does not belong to the truststore file, rebuilt from the keystore.
+     *
+     * @param keystore
+     *        the keystore loaded from the truststore file
+     * @param truststoreFile
+     *        the local truststore file
+     * @throws GeneralSecurityException
+     *         if the keystore cannot be read
+     */
+    private FingerprintIndex(KeyStore keystore, Path truststoreFile) throws GeneralSecurityException {
+        this.truststoreFile = truststoreFile;
+        this.entries = new LockedPropertiesFile(truststoreFile.resolveSibling(INDEX_FILE_NM), "TrustCertTask truststore index: sha256 fingerprint=alias");
+
+        String stamp = stamp(truststoreFile);
+        if(stamp == null || !stamp.equals(this.entries.get(STAMP_KEY))){
+            myLogger.fine("Indexing the certificates of " + truststoreFile);
+            this.entries.clear();
+            for(String alias : Collections.list(keystore.aliases())){
+                Certificate certificate = keystore.getCertificate(alias);
+                if(keystore.isCertificateEntry(alias) && certificate instanceof X509Certificate){
+                    this.entries.put(CertificateFingerprints.sha256((X509Certificate) certificate), alias);
+                }// end if
+            }// end for
+            this.entries.put(STAMP_KEY, stamp);
+            this.entries.save();
+        }// end if
+    }// end constructor
+
+    /**
+     * Gets the index of the keystore, the index is created the first time a keystore instance is seen. The caller must hold the lock of the keystore when the keystore is shared.
+     *
+     * @param keystore
+     *        the keystore loaded from the truststore file
+     * @param truststoreFile
+     *        the local truststore file
+     * @return the index of the keystore
+     * @throws GeneralSecurityException
+     *         if the keystore cannot be read
+     */
+    static FingerprintIndex of(KeyStore keystore, Path truststoreFile) throws GeneralSecurityException {
+        FingerprintIndex index = INDEXES.get(keystore);
+        if(index == null){
+            index = new FingerprintIndex(keystore, truststoreFile);
+            INDEXES.put(keystore, index);
+        }// end if
+        return index;
+    }// end of
+
+    /**
+     * Finds the alias the certificate is stored under.
+     *
+     * @param keystore
+     *        the keystore of this index
+     * @param certificate
+     *        the certificate to look for
+     * @return the alias of the certificate or null if the keystore does not hold it
+     * @throws GeneralSecurityException
+     *         if the certificate cannot be encoded or the keystore cannot be read
+     */
+    String find(KeyStore keystore, X509Certificate certificate) throws GeneralSecurityException {
+        String fingerprint = CertificateFingerprints.sha256(certificate);
+        String alias = this.entries.get(fingerprint);
+        if(alias != null && !certificate.equals(keystore.getCertificate(alias))){
+            // the alias was overwritten or removed since it was indexed
+            this.entries.put(fingerprint, null);
+            alias = null;
+        }// end if
+        return alias;
+    }// end find
+
+    /**
+     * Checks whether the keystore holds the certificate with the fingerprint.
+     *
+     * @param keystore
+     *        the keystore of this index
+     * @param fingerprint
+     *        the SHA-256 fingerprint of the certificate
+     * @return true if the alias the fingerprint is indexed under still holds the certificate
+     * @throws GeneralSecurityException
+     *         if the certificate cannot be encoded or the keystore cannot be read
+     */
+    boolean contains(KeyStore keystore, String fingerprint) throws GeneralSecurityException {
+        String alias = this.entries.get(fingerprint);
+        if(alias == null){
+            return false;
+        }// end if
+        Certificate certificate = keystore.getCertificate(alias);
+        if(!(certificate instanceof X509Certificate) || !fingerprint.equals(CertificateFingerprints.sha256((X509Certificate) certificate))){
+            // the alias was overwritten or removed since it was indexed
+            this.entries.put(fingerprint, null);
+            return false;
+        }// end if
+        return true;
+    }// end contains
+
+    /**
+     * Records a certificate added to the keystore.
+     *
+     * @param alias
+     *        the alias the certificate was stored under
+     * @param certificate
+     *        the certificate
+     * @throws GeneralSecurityException
+     *         if the certificate cannot be encoded
+     */
+    void added(String alias, X509Certificate certificate) throws GeneralSecurityException {
+        this.entries.put(CertificateFingerprints.sha256(certificate), alias);
+    }// end added
+
+    /**
+     * Records a certificate removed from the keystore.
+     *
+     * @param certificate
+     *        the certificate
+     * @throws GeneralSecurityException
+     *         if the certificate cannot be encoded
+     */
+    void removed(X509Certificate certificate) throws GeneralSecurityException {
+        this.entries.put(CertificateFingerprints.sha256(certificate), null);
+    }// end removed
+
+    /**
+     * Writes the sidecar file stamped with the truststore file as it is now, call it after the keystore was stored.
+     */
+    void save() {
+        this.entries.put(STAMP_KEY, stamp(this.truststoreFile));
+        this.entries.save();
+    }// end save
+
+    /**
+     * @param truststoreFile
+     *        the local truststore file
+     * @return the size and modification time of the file or null if they cannot be read
+     */
+    static String stamp(Path truststoreFile) {
+        try{
+            return Files.size(truststoreFile) + "|" + Files.getLastModifiedTime(truststoreFile).toMillis();
+        }catch(IOException e){
+            myLogger.fine("The truststore " + truststoreFile + " cannot be stamped: " + e.getMessage());
+            return null;
+        }// end try...catch
+    }// end stamp
+
+}// end class
@@ -0,0 +1,233 @@
+/**
+ *
+ */
+package com.omo.free.security.ssl;
+
+import java.nio.file.Path;
+import java.security.cert.CertificateEncodingException;
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.logging.Logger;
+
+/**
+ * This class is an on disk cache of the handshake results stored next to the local truststore. Each entry maps {@code host:port} to the fingerprints of the certificate chain the server sent, the earliest {@code notAfter} date of the chain, the last time the
+ * chain was verified and, when known, the fingerprint of the trust anchor the chain was validated with. A host whose addresses send different chains keeps the fingerprints of every chain and every anchor.
+ * <p>
+ * While an entry is still valid (verified within the time to live and not within the renew window of its expiry) the {@link TrustedCertficatesStore} skips the handshake for that host.
+ * </p>
+ *
+ * @author Richard Salas
+ */
+public class HandshakeCache {
+
+    private static final String MY_CLASS_NAME = "com.omo.free.security.ssl.HandshakeCache";
+    private static Logger myLogger = Logger.getLogger(MY_CLASS_NAME);
+
+    /** the name of the cache file created next to the truststore */
+    public static final String CACHE_FILE_NM = "cacerts.probes";
+
+    private static final String SEPARATOR = "|";
+
+    private final LockedPropertiesFile entries;
+
+    /**
+     * Constructor used to create an instance of the HandshakeCache. The cache file is read if it exists.
+     *
+     * @param trustStoreDir
+     *        the directory of the local truststore
+     */
+    public HandshakeCache(Path trustStoreDir) {
+        this.entries = new LockedPropertiesFile(trustStoreDir.resolve(CACHE_FILE_NM), "TrustCertTask handshake results: host:port=notAfter|lastVerified|sha256 fingerprints|anchor sha256 fingerprints");
+    }// end constructor
+
+    /**
+     * Checks whether the handshake for the host can be skipped.
+     *
+     * @param host
+     *        the host name
+     * @param port
+     *        the port
+     * @param ttlMillis
+     *        how long a verified chain is trusted without a new handshake
+     * @param renewBeforeMillis
+     *        how long before the chain expires a new handshake is forced
+     * @return true if the entry was verified within the time to live and the chain does not expire within the renew window
+     */
+    public boolean isValid(String host, int port, long ttlMillis, long renewBeforeMillis) {
+        String value = this.entries.get(key(host, port));
+        if(value == null){
+            return false;
+        }// end if
+
+        try{
+            String[] parts = value.split("\\" + SEPARATOR);
+            long notAfter = Long.parseLong(parts[0]);
+            long lastVerified = Long.parseLong(parts[1]);
+            long now = System.currentTimeMillis();
+            return now - lastVerified < ttlMillis && now < notAfter - renewBeforeMillis;
+        }catch(RuntimeException e){
+            myLogger.fine("Ignoring the malformed handshake cache entry for " + key(host, port) + ": " + value);
+            return false;
+        }// end try...catch
+    }// end isValid
+
+    /**
+     * @param host
+     *        the host name
+     * @param port
+     *        the port
+     * @return the SHA-256 fingerprint of the trust anchor the chain of the host was validated with, the first one when the host has several addresses, null if it is not known
+     */
+    public String getAnchor(String host, int port) {
+        List<String> anchors = getAnchors(host, port);
+        return anchors.isEmpty() ? null : anchors.get(0);
+    }// end getAnchor
+
+    /**
+     * @param host
+     *        the host name
+     * @param port
+     *        the port
+     * @return the SHA-256 fingerprints of the trust anchors the chains of the host were validated with, one for every distinct chain of its addresses, empty if they are not known
+     */
+    public List<String> getAnchors(String host, int port) {
+        String value = this.entries.get(key(host, port));
+        if(value == null){
+            return Collections.emptyList();
+        }// end if
+
+        String[] parts = value.split("\\" + SEPARATOR);
+        return parts.length > 3 && parts[3].length() > 0 ? Arrays.asList(parts[3].split(",")) : Collections.<String> emptyList();
+    }// end getAnchors
+
+    /**
+     * Records a successfully verified certificate chain.
+     *
+     * @param host
+     *        the host name
+     * @param port
+     *        the port
+     * @param chain
+     *        the certificate chain sent by the server
+     * @param anchorFingerprint
+     *        the SHA-256 fingerprint of the trust anchor the chain was validated with, null if it is not known
+     * @throws CertificateEncodingException
+     *         if a certificate cannot be encoded
+     */
+    public void verified(String host, int port, X509Certificate[] chain, String anchorFingerprint) throws CertificateEncodingException {
+        verified(host, port, Collections.singletonList(chain), (anchorFingerprint == null) ? Collections.<String> emptyList() : Collections.singletonList(anchorFingerprint));
+    }// end verified
+
+    /**
+     * Records the successfully verified certificate chains of a host whose addresses sent different chains, the entry expires with the first certificate of any chain that does.
+     *
+     * @param host
+     *        the host name
+     * @param port
+     *        the port
+     * @param chains
+     *        the distinct certificate chains sent by the addresses of the host
+     * @param anchorFingerprints
+     *        the SHA-256 fingerprints of the trust anchors the chains were validated with, empty if they are not known
+     * @throws CertificateEncodingException
+     *         if a certificate cannot be encoded
+     */
+    public void verified(String host, int port, List<X509Certificate[]> chains, Collection<String> anchorFingerprints) throws CertificateEncodingException {
+        long notAfter = Long.MAX_VALUE;
+        Set<String> fingerprints = new LinkedHashSet<String>();
+        for(X509Certificate[] chain : chains){
+            for(X509Certificate certificate : chain){
+                notAfter = Math.min(notAfter, certificate.getNotAfter().getTime());
+                fingerprints.add(CertificateFingerprints.sha256(certificate));
+            }// end for
+        }// end for
+        this.entries.put(key(host, port), notAfter + SEPARATOR + System.currentTimeMillis() + SEPARATOR + join(fingerprints) + SEPARATOR + join(new LinkedHashSet<String>(anchorFingerprints)));
+    }// end verified
+
+    /**
+     * @param values
+     *        the values
+     * @return the values separated by commas
+     */
+    private static String join(Collection<String> values) {
+        StringBuilder joined = new StringBuilder();
+        for(String value : values){
+            if(joined.length() > 0){
+                joined.append(',');
+            }// end if
+            joined.append(value);
+        }// end for
+        return joined.toString();
+    }// end join
+
+    /**
+     * Removes the entry of the host so the next run performs a handshake.
+     *
+     * @param host
+     *        the host name
+     * @param port
+     *        the port
+     */
+    public void invalidate(String host, int port) {
+        this.entries.put(key(host, port), null);
+    }// end invalidate
+
+    /**
+     * Removes the entries whose chain or trust anchor holds one of the certificates, used when certificates are removed from the local truststore so only the hosts that relied on them perform a handshake again.
+     *
+     * @param fingerprints
+     *        the SHA-256 fingerprints of the removed certificates
+     */
+    public void invalidateCertificates(Collection<String> fingerprints) {
+        for(String key : this.entries.keys()){
+            String value = this.entries.get(key);
+            if(value == null){
+                continue;
+            }// end if
+            String[] parts = value.split("\\" + SEPARATOR);
+            List<String> used = new ArrayList<String>();
+            if(parts.length > 2){
+                used.addAll(Arrays.asList(parts[2].split(",")));
+            }// end if
+            if(parts.length > 3){
+                used.addAll(Arrays.asList(parts[3].split(",")));
+            }// end if
+            if(!Collections.disjoint(used, fingerprints)){
+                myLogger.fine("Invalidating the handshake cache entry for " + key + ", a certificate it relies on was removed.");
+                this.entries.put(key, null);
+            }// end if
+        }// end for
+    }// end invalidateCertificates
+
+    /**
+     * Removes every entry, used when the local truststore is recreated.
+     */
+    public void clear() {
+        this.entries.clear();
+    }// end clear
+
+    /**
+     * Writes the cache file when an entry has changed, keeping the entries other builds saved in the meantime.
+     */
+    public void save() {
+        this.entries.save();
+    }// end save
+
+    /**
+     * @param host
+     *        the host name
+     * @param port
+     *        the port
+     * @return the key of the cache entry
+     */
+    private static String key(String host, int port) {
+        return host + ":" + port;
+    }// end key
+
+}// end class
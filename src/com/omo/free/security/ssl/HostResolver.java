@@ -0,0 +1,59 @@
+/**
+ *
+ */
+package com.omo.free.security.ssl;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.logging.Logger;
+
+/**
+ * This class resolves every address of a host name and remembers them, so a host probed by several invocations of the task is only looked up once. One instance is meant to live as long as a build, a later build resolves the names again. Failed
+ * lookups are not remembered.
+ *
+ * @author Richard Salas
+ */
+public class HostResolver {
+
+    private static final String MY_CLASS_NAME = "com.omo.free.security.ssl.HostResolver";
+    private static Logger myLogger = Logger.getLogger(MY_CLASS_NAME);
+
+    private final ConcurrentMap<String, List<InetAddress>> addresses = new ConcurrentHashMap<String, List<InetAddress>>();
+
+    /**
+     * Resolves every A and AAAA record of the host, the first call for a host name looks the name up and later calls return the same addresses.
+     *
+     * @param host
+     *        the host name
+     * @return the distinct addresses of the host in the order the name service returned them, each keeps the host name so handshakes with it send the host name
+     * @throws UnknownHostException
+     *         if the host name cannot be resolved
+     */
+    public List<InetAddress> resolve(String host) throws UnknownHostException {
+        List<InetAddress> resolved = this.addresses.get(host);
+        if(resolved == null){
+            resolved = new ArrayList<InetAddress>(new LinkedHashSet<InetAddress>(Arrays.asList(InetAddress.getAllByName(host))));
+            List<InetAddress> previous = this.addresses.putIfAbsent(host, resolved);
+            if(previous != null){
+                resolved = previous;
+            }else{
+                myLogger.info("Resolved " + host + " to " + resolved.size() + " address(es): " + resolved);
+            }// end if
+        }// end if
+        return new ArrayList<InetAddress>(resolved);
+    }// end resolve
+
+    /**
+     * Forgets every resolved host name.
+     */
+    public void clear() {
+        this.addresses.clear();
+    }// end clear
+
+}// end class
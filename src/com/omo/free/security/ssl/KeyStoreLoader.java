@@ -0,0 +1,49 @@
+/**
+ *
+ */
+package com.omo.free.security.ssl;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.security.GeneralSecurityException;
+import java.security.KeyStore;
+
+/**
+ * This interface is used by the {@link TrustedCertficatesStore} for loading and storing the local truststore. Implementations may keep the keystore in memory between calls.
+ *
+ * @author Richard Salas
+ */
+public interface KeyStoreLoader {
+
+    /**
+     * Loads the keystore from the truststore file.
+     *
+     * @param truststoreFile
+     *        the truststore file to load
+     * @param password
+     *        the password of the truststore
+     * @return the loaded keystore
+     * @throws IOException
+     *         if the truststore file cannot be read
+     * @throws GeneralSecurityException
+     *         if the keystore cannot be loaded
+     */
+    KeyStore load(Path truststoreFile, char[] password) throws IOException, GeneralSecurityException;
+
+    /**
+     * Stores the keystore to the truststore file.
+     *
+     * @param truststoreFile
+     *        the truststore file to store to
+     * @param keystore
+     *        the keystore to store
+     * @param password
+     *        the password of the truststore
+     * @throws IOException
+     *         if the truststore file cannot be written
+     * @throws GeneralSecurityException
+     *         if the keystore cannot be stored
+     */
+    void store(Path truststoreFile, KeyStore keystore, char[] password) throws IOException, GeneralSecurityException;
+
+}// end interface
@@ -0,0 +1,172 @@
+/**
+ *
+ */
+package com.omo.free.security.ssl;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashSet;
+import java.util.Properties;
+import java.util.Set;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * This class is a properties file kept next to the local truststore that may be shared by several builds. The file is read once, changes are held in memory, and {@link #save()} applies only the keys changed by this instance to the file as it is on disk
+ * while holding the {@link TrustStoreLock} of the file, so builds sharing the truststore directory do not lose each other's entries. The file is written to a temporary file first and then moved into place so readers never see a partially written file.
+ *
+ * @author Richard Salas
+ */
+class LockedPropertiesFile {
+
+    private static final String MY_CLASS_NAME = "com.omo.free.security.ssl.LockedPropertiesFile";
+    private static Logger myLogger = Logger.getLogger(MY_CLASS_NAME);
+
+    private final Path file;
+    private final String comment;
+    private final Properties entries = new Properties();
+    private final Set<String> changedKeys = new HashSet<String>();
+
+    /**
+     * Constructor used to create an instance of the LockedPropertiesFile. The file is read if it exists.
+     *
+     * @param file
+     *        the properties file
+     * @param comment
+     *        the comment written at the top of the file
+     */
+    LockedPropertiesFile(Path file, String comment) {
+        this.file = file;
+        this.comment = comment;
+        read(this.file, this.entries);
+    }// end constructor
+
+    /**
+     * @param key
+     *        the key
+     * @return the value of the key or null if there is none
+     */
+    synchronized String get(String key) {
+        return this.entries.getProperty(key);
+    }// end get
+
+    /**
+     * @return a copy of the keys
+     */
+    synchronized Set<String> keys() {
+        return this.entries.stringPropertyNames();
+    }// end keys
+
+    /**
+     * Sets or removes the value of a key.
+     *
+     * @param key
+     *        the key
+     * @param value
+     *        the value, null removes the key
+     */
+    synchronized void put(String key, String value) {
+        if(value == null){
+            if(this.entries.remove(key) != null){
+                this.changedKeys.add(key);
+            }// end if
+        }else{
+            this.entries.setProperty(key, value);
+            this.changedKeys.add(key);
+        }// end if
+    }// end put
+
+    /**
+     * Removes every key.
+     */
+    synchronized void clear() {
+        for(String key : this.entries.stringPropertyNames()){
+            this.changedKeys.add(key);
+        }// end for
+        this.entries.clear();
+    }// end clear
+
+    /**
+     * Writes the changed keys to the file, nothing is written when no key has changed. Failures are logged, a lost write only costs extra work on the next build.
+     */
+    synchronized void save() {
+        if(this.changedKeys.isEmpty()){
+            return;
+        }// end if
+
+        OutputStream out = null;
+        Path tempFile = null;
+        TrustStoreLock lock = null;
+        try{
+            lock = TrustStoreLock.acquire(this.file);
+            Properties merged = new Properties();
+            read(this.file, merged);
+            for(String key : this.changedKeys){
+                String value = this.entries.getProperty(key);
+                if(value == null){
+                    merged.remove(key);
+                }else{
+                    merged.setProperty(key, value);
+                }// end if
+            }// end for
+
+            tempFile = TrustStoreFiles.newTempFile(this.file);
+            out = Files.newOutputStream(tempFile);
+            merged.store(out, this.comment);
+            out.close();
+            out = null;
+            TrustStoreFiles.replace(tempFile, this.file);
+            tempFile = null;
+            this.changedKeys.clear();
+        }catch(IOException e){
+            myLogger.log(Level.WARNING, "IOException occurred while trying to save " + this.file + ".  Error message is: " + e.getMessage(), e);
+        }finally{
+            try{
+                if(out != null){
+                    out.close();
+                }// end if
+                if(tempFile != null){
+                    Files.deleteIfExists(tempFile);
+                }// end if
+                if(lock != null){
+                    lock.release();
+                }// end if
+            }catch(IOException e){
+                myLogger.log(Level.SEVERE, "IOException occurred while trying to clean up after the save process.  Error message is: " + e.getMessage(), e);
+            }// end try...catch
+        }// end try...catch...finally
+    }// end save
+
+    /**
+     * Reads the file into the properties, a missing or unreadable file leaves the properties empty.
+     *
+     * @param file
+     *        the properties file
+     * @param properties
+     *        the properties to read into
+     */
+    private static void read(Path file, Properties properties) {
+        if(Files.exists(file)){
+            InputStream in = null;
+            try{
+                in = Files.newInputStream(file);
+                properties.load(in);
+            }catch(IOException e){
+                myLogger.log(Level.WARNING, "IOException occurred while trying to read " + file + ", it will be ignored.  Error message is: " + e.getMessage(), e);
+                properties.clear();
+            }finally{
+                try{
+                    if(in != null){
+                        in.close();
+                    }// end if
+                }catch(IOException e){
+                    myLogger.log(Level.SEVERE, "IOException occurred while trying to close the inputstream used in the read process.  Error message is: " + e.getMessage(), e);
+                }// end try...catch
+            }// end try...catch...finally
+        }// end if
+    }// end read
+
+}// end class
@@ -0,0 +1,254 @@
+/**
+ *
+ */
+package com.omo.free.security.ssl;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.GeneralSecurityException;
+import java.security.KeyStore;
+import java.security.cert.Certificate;
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.logging.Logger;
+
+import javax.security.auth.x500.X500Principal;
+
+/**
+ * This class builds the pruned truststore written in minimal mode. The full local truststore is indexed once so the trust anchor that validates a server's chain can be found, the pruned truststore then holds only those anchors plus an optional allowlist of
+ * entries of the full truststore.
+ * <p>
+ * A TLS client pointed at a truststore of a handful of entries parses and indexes far less than one pointed at a copy of the java Runtime's cacerts, and trusts only what the build needs.
+ * </p>
+ *
+ * @author Richard Salas
+ */
+public class MinimalTrustStore {
+
+    private static final String MY_CLASS_NAME = "com.omo.free.security.ssl.MinimalTrustStore";
+    private static Logger myLogger = Logger.getLogger(MY_CLASS_NAME);
+
+    /** the name of the pruned truststore created next to the local truststore */
+    public static final String MINIMAL_TRUST_STORE_NM = "cacerts.minimal";
+
+    private final Map<String, String> aliases = new HashMap<String, String>();
+    private final Map<String, X509Certificate> certificates = new HashMap<String, X509Certificate>();
+    private final Map<X500Principal, List<X509Certificate>> subjects = new HashMap<X500Principal, List<X509Certificate>>();
+
+    /**
+     * Constructor used to create an instance of the MinimalTrustStore indexing every certificate of the full truststore. The caller must hold the lock of the keystore when the keystore is shared.
+     *
+     * @param keystore
+     *        the full local truststore
+     * @throws GeneralSecurityException
+     *         if the keystore cannot be read
+     */
+    public MinimalTrustStore(KeyStore keystore) throws GeneralSecurityException {
+        for(String alias : Collections.list(keystore.aliases())){
+            Certificate certificate = keystore.getCertificate(alias);
+            if(keystore.isCertificateEntry(alias) && certificate instanceof X509Certificate){
+                X509Certificate x509 = (X509Certificate) certificate;
+                String fingerprint = CertificateFingerprints.sha256(x509);
+                this.aliases.put(fingerprint, alias);
+                this.certificates.put(fingerprint, x509);
+                List<X509Certificate> sameSubject = this.subjects.get(x509.getSubjectX500Principal());
+                if(sameSubject == null){
+                    sameSubject = new ArrayList<X509Certificate>(1);
+                    this.subjects.put(x509.getSubjectX500Principal(), sameSubject);
+                }// end if
+                sameSubject.add(x509);
+            }// end if
+        }// end for
+    }// end constructor
+
+    /**
+     * Finds the trust anchor that validates the chain. The chain is walked from the server certificate up, the first certificate that is itself an entry of the truststore or whose issuer is an entry of the truststore (and verifies its signature) ends the
+     * path.
+     *
+     * @param chain
+     *        the certificate chain sent by the server
+     * @return the SHA-256 fingerprint of the trust anchor or null if no entry of the truststore validates the chain
+     * @throws GeneralSecurityException
+     *         if a certificate cannot be encoded
+     */
+    public String findAnchor(X509Certificate[] chain) throws GeneralSecurityException {
+        for(X509Certificate certificate : chain){
+            String fingerprint = CertificateFingerprints.sha256(certificate);
+            if(this.certificates.containsKey(fingerprint)){
+                return fingerprint;
+            }// end if
+
+            List<X509Certificate> issuers = this.subjects.get(certificate.getIssuerX500Principal());
+            if(issuers != null){
+                for(X509Certificate issuer : issuers){
+                    try{
+                        certificate.verify(issuer.getPublicKey());
+                        return CertificateFingerprints.sha256(issuer);
+                    }catch(GeneralSecurityException e){
+                        // another certificate with the same subject, keep looking
+                    }// end try...catch
+                }// end for
+            }// end if
+        }// end for
+        return null;
+    }// end findAnchor
+
+    /**
+     * Builds the pruned truststore holding the anchors and the allowed entries under the aliases they have in the full truststore.
+     *
+     * @param anchorFingerprints
+     *        the SHA-256 fingerprints of the anchors the configured hosts need
+     * @param allow
+     *        aliases or SHA-256 fingerprints (colons are ignored) of further entries of the full truststore to keep
+     * @param type
+     *        the keystore type of the pruned truststore, PKCS12 or JKS
+     * @return the pruned truststore
+     * @throws GeneralSecurityException
+     *         if the keystore cannot be created
+     * @throws IOException
+     *         if the keystore cannot be initialized
+     */
+    public KeyStore build(Collection<String> anchorFingerprints, Collection<String> allow, String type) throws GeneralSecurityException, IOException {
+        myLogger.entering(MY_CLASS_NAME, "build", anchorFingerprints);
+
+        Set<String> selected = new HashSet<String>();
+        for(String fingerprint : anchorFingerprints){
+            if(this.certificates.containsKey(fingerprint)){
+                selected.add(fingerprint);
+            }// end if
+        }// end for
+
+        for(String entry : allow){
+            String wanted = entry.trim().toLowerCase(Locale.ROOT);
+            String fingerprint = wanted.replace(":", "");
+            boolean found = this.certificates.containsKey(fingerprint);
+            if(found){
+                selected.add(fingerprint);
+            }else{
+                for(Map.Entry<String, String> alias : this.aliases.entrySet()){
+                    if(alias.getValue().toLowerCase(Locale.ROOT).equals(wanted)){
+                        selected.add(alias.getKey());
+                        found = true;
+                    }// end if
+                }// end for
+            }// end if
+            if(!found){
+                myLogger.warning("The allowed entry " + entry + " is not in the local truststore, it will not be in the minimal truststore.");
+            }// end if
+        }// end for
+
+        KeyStore minimal = KeyStore.getInstance(type);
+        minimal.load(null, null);
+        for(String fingerprint : selected){
+            minimal.setCertificateEntry(this.aliases.get(fingerprint), this.certificates.get(fingerprint));
+        }// end for
+
+        myLogger.exiting(MY_CLASS_NAME, "build", selected.size());
+        return minimal;
+    }// end build
+
+    /**
+     * Writes the pruned truststore unless the file already holds the same entries with the same type. The file is written to a temporary file and moved into place while holding its {@link TrustStoreLock}.
+     *
+     * @param file
+     *        the pruned truststore file
+     * @param minimal
+     *        the pruned truststore
+     * @param password
+     *        the password of the truststore
+     * @return true if the file was written
+     * @throws IOException
+     *         if the file cannot be written
+     * @throws GeneralSecurityException
+     *         if the keystore cannot be stored
+     */
+    public static boolean write(Path file, KeyStore minimal, char[] password) throws IOException, GeneralSecurityException {
+        myLogger.entering(MY_CLASS_NAME, "write", file);
+
+        TrustStoreLock lock = TrustStoreLock.acquire(file);
+        Path tempFile = null;
+        try{
+            if(isCurrent(file, minimal, password)){
+                myLogger.exiting(MY_CLASS_NAME, "write", false);
+                return false;
+            }// end if
+
+            tempFile = TrustStoreFiles.newTempFile(file);
+            OutputStream out = Files.newOutputStream(tempFile);
+            try{
+                minimal.store(out, password);
+            }finally{
+                out.close();
+            }// end try...finally
+            TrustStoreFiles.replace(tempFile, file);
+            tempFile = null;
+        }finally{
+            try{
+                if(tempFile != null){
+                    Files.deleteIfExists(tempFile);
+                }// end if
+            }finally{
+                lock.release();
+            }// end try...finally
+        }// end try...finally
+
+        myLogger.exiting(MY_CLASS_NAME, "write", true);
+        return true;
+    }// end write
+
+    /**
+     * @param file
+     *        the pruned truststore file
+     * @param minimal
+     *        the pruned truststore
+     * @param password
+     *        the password of the truststore
+     * @return true if the file exists, has the type of the pruned truststore and holds the same entries
+     */
+    private static boolean isCurrent(Path file, KeyStore minimal, char[] password) {
+        if(!Files.exists(file)){
+            return false;
+        }// end if
+
+        try{
+            if(!minimal.getType().equalsIgnoreCase(String.valueOf(FileKeyStoreLoader.detectType(file)))){
+                return false;
+            }// end if
+
+            KeyStore existing = KeyStore.getInstance(minimal.getType());
+            InputStream in = Files.newInputStream(file);
+            try{
+                existing.load(in, password);
+            }finally{
+                in.close();
+            }// end try...finally
+            if(existing.size() != minimal.size()){
+                return false;
+            }// end if
+            for(String alias : Collections.list(minimal.aliases())){
+                if(!minimal.getCertificate(alias).equals(existing.getCertificate(alias))){
+                    return false;
+                }// end if
+            }// end for
+            return true;
+        }catch(GeneralSecurityException e){
+            myLogger.fine("The minimal truststore " + file + " cannot be read, it will be written again: " + e.getMessage());
+            return false;
+        }catch(IOException e){
+            myLogger.fine("The minimal truststore " + file + " cannot be read, it will be written again: " + e.getMessage());
+            return false;
+        }// end try...catch
+    }// end isCurrent
+
+}// end class
@@ -0,0 +1,767 @@
+/**
+ *
+ */
+package com.omo.free.security.ssl;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.net.UnknownHostException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.security.GeneralSecurityException;
+import java.security.cert.CertificateException;
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLEngineResult;
+import javax.net.ssl.SSLEngineResult.HandshakeStatus;
+import javax.net.ssl.SSLException;
+import javax.net.ssl.TrustManager;
+import javax.net.ssl.X509ExtendedTrustManager;
+import javax.net.ssl.X509TrustManager;
+
+/**
+ * This class runs TLS handshakes with many servers at once using {@link SSLEngine}s over non-blocking {@link SocketChannel}s that are multiplexed on a small, fixed number of {@link Selector}s (one thread per selector).
+ * <p>
+ * The certificate chain each server sends is captured the same way the {@code SavingTrustManager} of the {@link TrustedCertficatesStore} captures it, and a {@link HandshakeResult} is returned per server. Unresolved host names are looked up
+ * concurrently before the selectors start, so a slow or unreachable name server only delays the handshakes of its own hosts, and are sent as the SNI server name.
+ * </p>
+ *
+ * @author Richard Salas
+ */
+public class NioHandshakeEngine {
+
+    private static final String MY_CLASS_NAME = "com.omo.free.security.ssl.NioHandshakeEngine";
+    private static Logger myLogger = Logger.getLogger(MY_CLASS_NAME);
+
+    private static final ByteBuffer EMPTY = ByteBuffer.allocate(0);
+
+    /** the most host names looked up at the same time */
+    private static final int MAX_LOOKUP_THREADS = 32;
+
+    private final X509TrustManager trustManager;
+    private final int selectors;
+    private final long connectTimeout;
+    private final long handshakeTimeout;
+
+    /**
+     * Constructor used to create an instance of the NioHandshakeEngine.
+     *
+     * @param trustManager
+     *        the trust manager backed by the local keystore
+     * @param selectors
+     *        the number of selectors (and threads) used to drive the handshakes
+     * @param connectTimeout
+     *        the time in milliseconds a connect may take
+     * @param handshakeTimeout
+     *        the time in milliseconds a handshake may take once connected
+     */
+    public NioHandshakeEngine(X509TrustManager trustManager, int selectors, long connectTimeout, long handshakeTimeout) {
+        if(selectors < 1){
+            throw new IllegalArgumentException("The number of selectors must be greater than zero but was " + selectors);
+        }// end if
+        this.trustManager = trustManager;
+        this.selectors = selectors;
+        this.connectTimeout = connectTimeout;
+        this.handshakeTimeout = handshakeTimeout;
+    }// end constructor
+
+    /**
+     * Runs the handshakes with every server.
+     *
+     * @param targets
+     *        the servers to handshake with
+     * @param deadlineAt
+     *        the time (as in {@link System#currentTimeMillis()}) every handshake must have finished by, handshakes still running are failed
+     * @return the results in the same order as the targets
+     * @throws GeneralSecurityException
+     *         if the TLS context cannot be created
+     * @throws InterruptedException
+     *         if the thread is interrupted while waiting on the handshakes
+     */
+    public List<HandshakeResult> handshake(List<InetSocketAddress> targets, final long deadlineAt) throws GeneralSecurityException, InterruptedException {
+        myLogger.entering(MY_CLASS_NAME, "handshake", targets);
+
+        CapturingTrustManager capturingTrustManager = new CapturingTrustManager(this.trustManager);
+        SSLContext context = SSLContext.getInstance("TLS");
+        context.init(null, new TrustManager[]{capturingTrustManager}, null);
+
+        // spread the servers over the selectors
+        int threadCount = Math.min(this.selectors, targets.size());
+        List<List<Connection>> partitions = new ArrayList<List<Connection>>(threadCount);
+        for(int i = 0; i < threadCount; i++){
+            partitions.add(new ArrayList<Connection>());
+        }// end for
+
+        List<Connection> connections = new ArrayList<Connection>(targets.size());
+        for(int i = 0; i < targets.size(); i++){
+            InetSocketAddress target = targets.get(i);
+            SSLEngine engine = context.createSSLEngine(target.getHostString(), target.getPort());
+            engine.setUseClientMode(true);
+            Connection connection = new Connection(target, engine, capturingTrustManager);
+            connections.add(connection);
+            partitions.get(i % threadCount).add(connection);
+        }// end for
+
+        // the lookups block, they are done before the selectors start so no selector waits on a name server
+        lookUp(connections, deadlineAt);
+
+        List<Thread> threads = new ArrayList<Thread>(threadCount);
+        for(int i = 0; i < threadCount; i++){
+            final List<Connection> partition = partitions.get(i);
+            Thread thread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    runSelector(partition, deadlineAt);
+                }// end run
+            }, "trustcert-selector-" + i);
+            thread.setDaemon(true);
+            thread.start();
+            threads.add(thread);
+        }// end for
+
+        try{
+            for(Thread thread : threads){
+                thread.join();
+            }// end for
+        }finally{
+            for(Thread thread : threads){
+                thread.interrupt();
+            }// end for
+        }// end try...finally
+
+        List<HandshakeResult> results = new ArrayList<HandshakeResult>(connections.size());
+        for(Connection connection : connections){
+            results.add(connection.result);
+        }// end for
+
+        myLogger.exiting(MY_CLASS_NAME, "handshake");
+        return results;
+    }// end handshake
+
+    /**
+     * Looks up the addresses of the unresolved servers concurrently on a bounded pool of daemon threads. A lookup counts against the connect timeout of its server, one that has not finished within it (or before the deadline) fails that server only.
+     *
+     * @param connections
+     *        the connections whose servers may need a lookup
+     * @param deadlineAt
+     *        the time every handshake must have finished by
+     * @throws InterruptedException
+     *         if the thread is interrupted while waiting on the lookups
+     */
+    private void lookUp(List<Connection> connections, long deadlineAt) throws InterruptedException {
+        List<Connection> unresolved = new ArrayList<Connection>();
+        for(Connection connection : connections){
+            if(connection.target.isUnresolved()){
+                unresolved.add(connection);
+            }// end if
+        }// end for
+        if(unresolved.isEmpty()){
+            return;
+        }// end if
+
+        final AtomicInteger count = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(unresolved.size(), MAX_LOOKUP_THREADS), new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "trustcert-lookup-" + count.getAndIncrement());
+                thread.setDaemon(true);
+                return thread;
+            }// end newThread
+        });
+        try{
+            long startedAt = System.currentTimeMillis();
+            long startedNanos = System.nanoTime();
+            long waitUntil = Math.min(startedAt + this.connectTimeout, deadlineAt);
+            List<Future<InetSocketAddress>> futures = new ArrayList<Future<InetSocketAddress>>(unresolved.size());
+            for(final Connection connection : unresolved){
+                connection.startedAt = startedAt;
+                connection.startedNanos = startedNanos;
+                futures.add(executor.submit(new Callable<InetSocketAddress>() {
+                    @Override
+                    public InetSocketAddress call() throws Exception {
+                        InetSocketAddress address = new InetSocketAddress(connection.target.getHostString(), connection.target.getPort());
+                        if(address.isUnresolved()){
+                            throw new UnknownHostException("Unable to resolve host " + connection.target.getHostString());
+                        }// end if
+                        return address;
+                    }// end call
+                }));
+            }// end for
+
+            for(int i = 0; i < futures.size(); i++){
+                Connection connection = unresolved.get(i);
+                try{
+                    connection.address = futures.get(i).get(Math.max(waitUntil - System.currentTimeMillis(), 0L), TimeUnit.MILLISECONDS);
+                }catch(ExecutionException e){
+                    connection.lookupFailure = (e.getCause() instanceof Exception) ? (Exception) e.getCause() : e;
+                }catch(TimeoutException e){
+                    connection.lookupFailure = new SocketTimeoutException("The name lookup of " + connection.describe() + " timed out");
+                }// end try...catch
+            }// end for
+        }finally{
+            // lookups still blocked in the name service are left to finish on their daemon threads
+            executor.shutdownNow();
+        }// end try...finally
+    }// end lookUp
+
+    /**
+     * Drives every connection of the partition on one selector until they have all finished.
+     *
+     * @param partition
+     *        the connections owned by this selector
+     * @param deadlineAt
+     *        the time every handshake must have finished by
+     */
+    private void runSelector(List<Connection> partition, long deadlineAt) {
+        Selector selector = null;
+        try{
+            selector = Selector.open();
+            int open = 0;
+            for(Connection connection : partition){
+                if(connection.open(selector, this.connectTimeout, this.handshakeTimeout, deadlineAt)){
+                    open++;
+                }// end if
+            }// end for
+
+            while(open > 0 && !Thread.currentThread().isInterrupted()){
+                selector.select(Math.max(1L, nextDeadline(partition) - System.currentTimeMillis()));
+
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while(keys.hasNext()){
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    Connection connection = (Connection) key.attachment();
+                    if(key.isValid() && connection.result == null){
+                        connection.onReady(key);
+                        if(connection.result != null){
+                            open--;
+                        }// end if
+                    }// end if
+                }// end while
+
+                long now = System.currentTimeMillis();
+                for(Connection connection : partition){
+                    if(connection.result == null && now >= connection.deadline){
+                        connection.fail(new SocketTimeoutException(connection.connected ? "The handshake with " + connection.describe() + " timed out" : "The connect to " + connection.describe() + " timed out"));
+                        open--;
+                    }// end if
+                }// end for
+            }// end while
+        }catch(IOException e){
+            myLogger.log(Level.SEVERE, "IOException occurred during the runSelector process.  Error message is: " + e.getMessage(), e);
+        }finally{
+            for(Connection connection : partition){
+                if(connection.result == null){
+                    connection.fail(new IOException("The handshake with " + connection.describe() + " was interrupted"));
+                }// end if
+            }// end for
+            try{
+                if(selector != null){
+                    selector.close();
+                }// end if
+            }catch(IOException e){
+                myLogger.log(Level.SEVERE, "IOException occurred while trying to close the selector used in the runSelector process.  Error message is: " + e.getMessage(), e);
+            }// end try...catch
+        }// end try...catch...finally
+    }// end runSelector
+
+    /**
+     * @param partition
+     *        the connections owned by a selector
+     * @return the earliest deadline of the connections that have not finished
+     */
+    private static long nextDeadline(List<Connection> partition) {
+        long deadline = Long.MAX_VALUE;
+        for(Connection connection : partition){
+            if(connection.result == null){
+                deadline = Math.min(deadline, connection.deadline);
+            }// end if
+        }// end for
+        return deadline;
+    }// end nextDeadline
+
+    /**
+     * This class holds the outcome of a handshake with a single server.
+     */
+    public static class HandshakeResult {
+
+        private final InetSocketAddress target;
+        private final X509Certificate[] chain;
+        private final CertificateException trustFailure;
+        private final Exception error;
+        private final long connectNanos;
+        private final long handshakeNanos;
+
+        /**
+         * @param target
+         *        the server
+         * @param chain
+         *        the certificate chain the server sent, null if none was received
+         * @param trustFailure
+         *        the reason the chain was not trusted, null if it was trusted
+         * @param error
+         *        the reason the handshake failed, null if it completed
+         * @param connectNanos
+         *        the time the connect took, including the name lookup
+         * @param handshakeNanos
+         *        the time the handshake took once connected, zero if the connect failed
+         */
+        HandshakeResult(InetSocketAddress target, X509Certificate[] chain, CertificateException trustFailure, Exception error, long connectNanos, long handshakeNanos) {
+            this.target = target;
+            this.chain = chain;
+            this.trustFailure = trustFailure;
+            this.error = error;
+            this.connectNanos = connectNanos;
+            this.handshakeNanos = handshakeNanos;
+        }// end constructor
+
+        /**
+         * @return the server
+         */
+        public InetSocketAddress getTarget() {
+            return target;
+        }// end getTarget
+
+        /**
+         * @return the certificate chain the server sent, null if none was received
+         */
+        public X509Certificate[] getChain() {
+            return chain;
+        }// end getChain
+
+        /**
+         * @return true if the handshake completed, meaning the chain is already trusted
+         */
+        public boolean isTrusted() {
+            return error == null;
+        }// end isTrusted
+
+        /**
+         * @return the reason the chain was not trusted, null if it was trusted or was never received
+         */
+        public CertificateException getTrustFailure() {
+            return trustFailure;
+        }// end getTrustFailure
+
+        /**
+         * @return the reason the handshake failed, null if it completed
+         */
+        public Exception getError() {
+            return error;
+        }// end getError
+
+        /**
+         * @return the time in nanoseconds the connect took, including the name lookup
+         */
+        public long getConnectNanos() {
+            return connectNanos;
+        }// end getConnectNanos
+
+        /**
+         * @return the time in nanoseconds the handshake took once connected, zero if the connect failed
+         */
+        public long getHandshakeNanos() {
+            return handshakeNanos;
+        }// end getHandshakeNanos
+
+    }// end class
+
+    /**
+     * This class is the state of one non-blocking handshake.
+     */
+    private static class Connection {
+
+        private final InetSocketAddress target;
+        private final SSLEngine engine;
+        private final CapturingTrustManager trustManager;
+        private InetSocketAddress address;
+        private Exception lookupFailure;
+        private long startedAt;
+        private long startedNanos;
+        private SocketChannel channel;
+        private ByteBuffer netIn;
+        private ByteBuffer netOut;
+        private ByteBuffer appIn;
+        private long deadline;
+        private long handshakeTimeout;
+        private long deadlineAt;
+        private boolean connected;
+        private long openedAt;
+        private long connectedAt;
+        private volatile HandshakeResult result;
+
+        /**
+         * @param target
+         *        the server
+         * @param engine
+         *        the client mode engine for the server
+         * @param trustManager
+         *        the trust manager capturing the chains
+         */
+        Connection(InetSocketAddress target, SSLEngine engine, CapturingTrustManager trustManager) {
+            this.target = target;
+            this.address = target;
+            this.engine = engine;
+            this.trustManager = trustManager;
+        }// end constructor
+
+        /**
+         * Starts connecting to the server. The connect timeout counts from the start of the lookup when the host name had to be looked up.
+         *
+         * @param selector
+         *        the selector the channel is registered with
+         * @param connectTimeout
+         *        the time the connect may take
+         * @param handshakeTimeout
+         *        the time the handshake may take once connected
+         * @param deadlineAt
+         *        the time the handshake must have finished by
+         * @return true if the connection is in progress, false if it has already failed
+         */
+        boolean open(Selector selector, long connectTimeout, long handshakeTimeout, long deadlineAt) {
+            this.handshakeTimeout = handshakeTimeout;
+            this.deadlineAt = deadlineAt;
+            this.deadline = Math.min(((this.startedAt > 0) ? this.startedAt : System.currentTimeMillis()) + connectTimeout, deadlineAt);
+            this.openedAt = (this.startedAt > 0) ? this.startedNanos : System.nanoTime();
+            try{
+                if(this.lookupFailure != null){
+                    fail(this.lookupFailure);
+                    return false;
+                }// end if
+
+                int packetSize = this.engine.getSession().getPacketBufferSize();
+                this.netIn = ByteBuffer.allocate(packetSize);
+                this.netOut = ByteBuffer.allocate(packetSize);
+                this.appIn = ByteBuffer.allocate(this.engine.getSession().getApplicationBufferSize());
+
+                this.channel = SocketChannel.open();
+                this.channel.configureBlocking(false);
+                myLogger.info("Attempting to open a connection to " + describe());
+                if(this.channel.connect(this.address)){
+                    this.channel.register(selector, 0, this);
+                    connected();
+                    step(this.channel.keyFor(selector));
+                }else{
+                    this.channel.register(selector, SelectionKey.OP_CONNECT, this);
+                }// end if
+            }catch(IOException e){
+                fail(e);
+            }// end try...catch
+            return this.result == null;
+        }// end open
+
+        /**
+         * Handles a ready event of the channel.
+         *
+         * @param key
+         *        the selection key of the channel
+         */
+        void onReady(SelectionKey key) {
+            try{
+                if(key.isConnectable()){
+                    if(!this.channel.finishConnect()){
+                        return;
+                    }// end if
+                    connected();
+                }else if(key.isReadable()){
+                    if(this.channel.read(this.netIn) < 0){
+                        throw new EOFException("The server " + describe() + " closed the connection during the handshake");
+                    }// end if
+                }else if(key.isWritable()){
+                    if(!flush()){
+                        return;
+                    }// end if
+                }// end if
+                step(key);
+            }catch(IOException e){
+                fail(e);
+            }// end try...catch
+        }// end onReady
+
+        /**
+         * Starts the handshake once the connect has finished, the handshake timeout starts now.
+         *
+         * @throws SSLException
+         *         if the handshake cannot be started
+         */
+        private void connected() throws SSLException {
+            this.connected = true;
+            this.connectedAt = System.nanoTime();
+            this.deadline = Math.min(System.currentTimeMillis() + this.handshakeTimeout, this.deadlineAt);
+            this.engine.beginHandshake();
+        }// end connected
+
+        /**
+         * Advances the handshake as far as possible without blocking and registers the interest needed to continue.
+         *
+         * @param key
+         *        the selection key of the channel
+         * @throws IOException
+         *         if the handshake fails
+         */
+        private void step(SelectionKey key) throws IOException {
+            while(true){
+                HandshakeStatus status = this.engine.getHandshakeStatus();
+                if(status == HandshakeStatus.NEED_TASK){
+                    Runnable task = null;
+                    while((task = this.engine.getDelegatedTask()) != null){
+                        task.run();
+                    }// end while
+                }else if(status == HandshakeStatus.NEED_WRAP){
+                    SSLEngineResult result = this.engine.wrap(EMPTY, this.netOut);
+                    if(result.getStatus() == SSLEngineResult.Status.BUFFER_OVERFLOW){
+                        this.netOut = enlarge(this.netOut, this.engine.getSession().getPacketBufferSize());
+                        continue;
+                    }else if(result.getStatus() == SSLEngineResult.Status.CLOSED){
+                        throw new SSLException("The handshake with " + describe() + " was closed");
+                    }// end if
+                    if(!flush()){
+                        key.interestOps(SelectionKey.OP_WRITE);
+                        return;
+                    }// end if
+                    if(result.getHandshakeStatus() == HandshakeStatus.FINISHED){
+                        succeed();
+                        return;
+                    }// end if
+                }else if(status == HandshakeStatus.FINISHED || status == HandshakeStatus.NOT_HANDSHAKING){
+                    succeed();
+                    return;
+                }else{
+                    // NEED_UNWRAP (and NEED_UNWRAP_AGAIN on newer JVMs)
+                    this.netIn.flip();
+                    SSLEngineResult result = null;
+                    try{
+                        result = this.engine.unwrap(this.netIn, this.appIn);
+                    }finally{
+                        this.netIn.compact();
+                    }// end try...finally
+                    if(result.getStatus() == SSLEngineResult.Status.BUFFER_UNDERFLOW){
+                        if(this.netIn.position() == this.netIn.capacity()){
+                            this.netIn = enlarge(this.netIn, this.engine.getSession().getPacketBufferSize());
+                        }// end if
+                        key.interestOps(SelectionKey.OP_READ);
+                        return;
+                    }else if(result.getStatus() == SSLEngineResult.Status.BUFFER_OVERFLOW){
+                        this.appIn = enlarge(this.appIn, this.engine.getSession().getApplicationBufferSize());
+                    }else if(result.getStatus() == SSLEngineResult.Status.CLOSED){
+                        throw new SSLException("The handshake with " + describe() + " was closed");
+                    }else if(result.getHandshakeStatus() == HandshakeStatus.FINISHED){
+                        succeed();
+                        return;
+                    }// end if
+                }// end if
+            }// end while
+        }// end step
+
+        /**
+         * Writes the pending outbound bytes.
+         *
+         * @return true if every pending byte was written
+         * @throws IOException
+         *         if the write fails
+         */
+        private boolean flush() throws IOException {
+            this.netOut.flip();
+            try{
+                this.channel.write(this.netOut);
+                return !this.netOut.hasRemaining();
+            }finally{
+                this.netOut.compact();
+            }// end try...finally
+        }// end flush
+
+        /**
+         * Records a completed handshake.
+         */
+        private void succeed() {
+            myLogger.info("Host certificate " + describe() + " is already trusted.");
+            long now = System.nanoTime();
+            this.result = new HandshakeResult(this.target, this.trustManager.chainOf(this.engine), null, null, this.connectedAt - this.openedAt, now - this.connectedAt);
+            close();
+        }// end succeed
+
+        /**
+         * Records a failed handshake.
+         *
+         * @param error
+         *        the reason the handshake failed
+         */
+        void fail(Exception error) {
+            myLogger.fine("The handshake with " + describe() + " failed: " + error);
+            long now = System.nanoTime();
+            long connectNanos = this.connected ? this.connectedAt - this.openedAt : now - this.openedAt;
+            long handshakeNanos = this.connected ? now - this.connectedAt : 0L;
+            this.result = new HandshakeResult(this.target, this.trustManager.chainOf(this.engine), this.trustManager.failureOf(this.engine), error, connectNanos, handshakeNanos);
+            close();
+        }// end fail
+
+        /**
+         * Closes the channel without waiting for the server.
+         */
+        private void close() {
+            this.trustManager.forget(this.engine);
+            this.engine.closeOutbound();
+            try{
+                if(this.channel != null){
+                    this.channel.close();
+                }// end if
+            }catch(IOException e){
+                myLogger.log(Level.SEVERE, "IOException occurred while trying to close the channel used in the handshake process.  Error message is: " + e.getMessage(), e);
+            }// end try...catch
+        }// end close
+
+        /**
+         * @return the host and port of the server
+         */
+        String describe() {
+            return this.target.getHostString() + ":" + this.target.getPort();
+        }// end describe
+
+        /**
+         * @param buffer
+         *        the buffer to enlarge, in write mode
+         * @param minimum
+         *        the minimum capacity
+         * @return a larger buffer holding the bytes of the buffer
+         */
+        private static ByteBuffer enlarge(ByteBuffer buffer, int minimum) {
+            ByteBuffer larger = ByteBuffer.allocate(Math.max(minimum, buffer.capacity() * 2));
+            buffer.flip();
+            larger.put(buffer);
+            return larger;
+        }// end enlarge
+
+    }// end class
+
+    /**
+     * This class records the certificate chain (and the reason it was not trusted) of every engine before delegating to the trust manager backed by the local keystore.
+     */
+    private static class CapturingTrustManager extends X509ExtendedTrustManager {
+
+        private final X509TrustManager tm;
+        private final Map<SSLEngine, X509Certificate[]> chains = new ConcurrentHashMap<SSLEngine, X509Certificate[]>();
+        private final Map<SSLEngine, CertificateException> failures = new ConcurrentHashMap<SSLEngine, CertificateException>();
+
+        /**
+         * @param tm
+         *        the trust manager backed by the local keystore
+         */
+        CapturingTrustManager(X509TrustManager tm) {
+            this.tm = tm;
+        }// end constructor
+
+        /**
+         * @param engine
+         *        the engine
+         * @return the chain the server of the engine sent, null if none was received
+         */
+        X509Certificate[] chainOf(SSLEngine engine) {
+            return this.chains.get(engine);
+        }// end chainOf
+
+        /**
+         * @param engine
+         *        the engine
+         * @return the reason the chain of the engine was not trusted, null if it was trusted
+         */
+        CertificateException failureOf(SSLEngine engine) {
+            return this.failures.get(engine);
+        }// end failureOf
+
+        /**
+         * @param engine
+         *        the engine that has finished
+         */
+        void forget(SSLEngine engine) {
+            this.chains.remove(engine);
+            this.failures.remove(engine);
+        }// end forget
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public void checkServerTrusted(X509Certificate[] chain, String authType, SSLEngine engine) throws CertificateException {
+            this.chains.put(engine, chain);
+            try{
+                this.tm.checkServerTrusted(chain, authType);
+            }catch(CertificateException e){
+                this.failures.put(engine, e);
+                throw e;
+            }// end try...catch
+        }// end checkServerTrusted
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public void checkServerTrusted(X509Certificate[] chain, String authType, Socket socket) throws CertificateException {
+            this.tm.checkServerTrusted(chain, authType);
+        }// end checkServerTrusted
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public void checkServerTrusted(X509Certificate[] chain, String authType) throws CertificateException {
+            this.tm.checkServerTrusted(chain, authType);
+        }// end checkServerTrusted
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public void checkClientTrusted(X509Certificate[] chain, String authType, SSLEngine engine) throws CertificateException {
+            throw new UnsupportedOperationException();
+        }// end checkClientTrusted
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public void checkClientTrusted(X509Certificate[] chain, String authType, Socket socket) throws CertificateException {
+            throw new UnsupportedOperationException();
+        }// end checkClientTrusted
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public void checkClientTrusted(X509Certificate[] chain, String authType) throws CertificateException {
+            throw new UnsupportedOperationException();
+        }// end checkClientTrusted
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public X509Certificate[] getAcceptedIssuers() {
+            return this.tm.getAcceptedIssuers();
+        }// end getAcceptedIssuers
+
+    }// end class
+
+}// end class
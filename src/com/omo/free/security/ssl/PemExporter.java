@@ -0,0 +1,306 @@
+/**
+ *
+ */
+package com.omo.free.security.ssl;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.GeneralSecurityException;
+import java.security.KeyStore;
+import java.security.cert.Certificate;
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+
+/**
+ * This class exports the certificate entries of a truststore to a directory of PEM files for tools that do not read java keystores (curl, nginx, Python). Every certificate is written to its own {@code <alias>.pem} file and all of them to the
+ * {@code ca-bundle.pem} bundle. An alias whose file name is already taken, by another alias or by the bundle or the manifest, gets the start of the SHA-256 fingerprint of its certificate appended. The aliases are handled in sorted order so the
+ * same keystore always gets the same file names.
+ * <p>
+ * A manifest of the SHA-256 fingerprint of every exported certificate and the file it was written to is kept in the directory, so a later export only writes the certificates that were added, deletes the files of the ones that were removed and
+ * renames the files of the ones whose alias changed. Files that did not change are never touched, which keeps their modification times (and the layers of container images built from the directory) stable.
+ * </p>
+ *
+ * @author Richard Salas
+ */
+public class PemExporter {
+
+    private static final String MY_CLASS_NAME = "com.omo.free.security.ssl.PemExporter";
+    private static Logger myLogger = Logger.getLogger(MY_CLASS_NAME);
+
+    /** the name of the file holding every exported certificate */
+    public static final String BUNDLE_FILE_NM = "ca-bundle.pem";
+
+    /** the name of the manifest of the exported certificates */
+    public static final String MANIFEST_FILE_NM = ".manifest";
+
+    private static final String PEM_SUFFIX = ".pem";
+    private static final Set<String> RESERVED_FILE_NMS = new HashSet<String>(Arrays.asList(BUNDLE_FILE_NM, MANIFEST_FILE_NM));
+    private static final byte[] LINE_SEPARATOR = "\n".getBytes(StandardCharsets.US_ASCII);
+
+    private final Path exportDir;
+    private final int threads;
+
+    /**
+     * Constructor used to create an instance of the PemExporter.
+     *
+     * @param exportDir
+     *        the directory the PEM files are written to, created if it does not exist
+     * @param threads
+     *        the maximum number of certificates encoded at the same time
+     */
+    public PemExporter(Path exportDir, int threads) {
+        this.exportDir = exportDir;
+        this.threads = Math.max(1, threads);
+    }// end constructor
+
+    /**
+     * Exports the certificate entries of the keystore. The caller must hold the lock of the keystore when the keystore is shared.
+     *
+     * @param keystore
+     *        the truststore to export
+     * @return the number of files written, renamed or deleted, zero when the directory already held the certificates of the keystore
+     * @throws GeneralSecurityException
+     *         if the keystore cannot be read or a certificate cannot be encoded
+     * @throws IOException
+     *         if a file cannot be written
+     * @throws InterruptedException
+     *         if the thread is interrupted while the certificates are encoded
+     */
+    public int export(KeyStore keystore) throws GeneralSecurityException, IOException, InterruptedException {
+        myLogger.entering(MY_CLASS_NAME, "export", this.exportDir);
+
+        // the file name of every certificate, sorted so the bundle is written in the same order by every export
+        Map<String, X509Certificate> certificates = new TreeMap<String, X509Certificate>();
+        Map<String, String> fingerprints = new HashMap<String, String>();
+        Set<String> exported = new HashSet<String>();
+        // a keystore returns its aliases in hash order, sorting them gives a name shared by two aliases to the same one on every export
+        List<String> aliases = Collections.list(keystore.aliases());
+        Collections.sort(aliases);
+        for(String alias : aliases){
+            Certificate certificate = keystore.getCertificate(alias);
+            if(keystore.isCertificateEntry(alias) && certificate instanceof X509Certificate){
+                String fingerprint = CertificateFingerprints.sha256(certificate);
+                if(exported.add(fingerprint)){
+                    String fileName = toFileName(alias);
+                    if(certificates.containsKey(fileName) || RESERVED_FILE_NMS.contains(fileName)){
+                        // two aliases that only differ by case or by characters not allowed in file names, or an alias named like the bundle
+                        String baseName = fileName.substring(0, fileName.length() - PEM_SUFFIX.length());
+                        fileName = baseName + "-" + fingerprint.substring(0, 8) + PEM_SUFFIX;
+                        if(certificates.containsKey(fileName)){
+                            fileName = baseName + "-" + fingerprint + PEM_SUFFIX;
+                        }// end if
+                    }// end if
+                    certificates.put(fileName, (X509Certificate) certificate);
+                    fingerprints.put(fileName, fingerprint);
+                }// end if
+            }// end if
+        }// end for
+
+        Map<String, byte[]> encoded = encode(certificates);
+
+        Files.createDirectories(this.exportDir);
+        Path manifestFile = this.exportDir.resolve(MANIFEST_FILE_NM);
+        int changes = 0;
+        TrustStoreLock lock = TrustStoreLock.acquire(manifestFile);
+        try{
+            LockedPropertiesFile manifest = new LockedPropertiesFile(manifestFile, "TrustCertTask PEM export: sha256 fingerprint=file");
+            Map<String, String> previous = new HashMap<String, String>();
+            for(String fingerprint : manifest.keys()){
+                previous.put(fingerprint, manifest.get(fingerprint));
+            }// end for
+
+            // files no longer wanted are deleted first, unless another certificate takes the name over
+            for(Map.Entry<String, String> entry : previous.entrySet()){
+                if(!exported.contains(entry.getKey()) && !certificates.containsKey(entry.getValue())){
+                    // a manifest written before the bundle name was reserved may name it, the bundle is rewritten below
+                    if(!RESERVED_FILE_NMS.contains(entry.getValue()) && Files.deleteIfExists(this.exportDir.resolve(entry.getValue()))){
+                        myLogger.info("Deleted " + entry.getValue() + " from " + this.exportDir + ".");
+                        changes++;
+                    }// end if
+                    manifest.put(entry.getKey(), null);
+                }// end if
+            }// end for
+
+            for(Map.Entry<String, byte[]> entry : encoded.entrySet()){
+                String fileName = entry.getKey();
+                String fingerprint = fingerprints.get(fileName);
+                String previousName = previous.get(fingerprint);
+                Path file = this.exportDir.resolve(fileName);
+                boolean previousFree = previousName != null && !previousName.equals(fileName) && !certificates.containsKey(previousName) && !RESERVED_FILE_NMS.contains(previousName);
+                if(fileName.equals(previousName) && Files.exists(file)){
+                    continue;
+                }else if(previousFree && Files.exists(this.exportDir.resolve(previousName)) && !Files.exists(file)){
+                    // the alias of the certificate changed
+                    Files.move(this.exportDir.resolve(previousName), file);
+                    myLogger.info("Renamed " + previousName + " to " + fileName + " in " + this.exportDir + ".");
+                }else{
+                    write(file, entry.getValue());
+                    if(previousFree){
+                        Files.deleteIfExists(this.exportDir.resolve(previousName));
+                    }// end if
+                    myLogger.info("Wrote " + fileName + " to " + this.exportDir + ".");
+                }// end if
+                manifest.put(fingerprint, fileName);
+                changes++;
+            }// end for
+
+            // the bundle is only written when its content changed
+            byte[] bundle = bundle(encoded);
+            Path bundleFile = this.exportDir.resolve(BUNDLE_FILE_NM);
+            if(!Files.exists(bundleFile) || !Arrays.equals(bundle, Files.readAllBytes(bundleFile))){
+                write(bundleFile, bundle);
+                myLogger.info("Wrote " + BUNDLE_FILE_NM + " holding " + encoded.size() + " certificate(s) to " + this.exportDir + ".");
+                changes++;
+            }// end if
+            manifest.save();
+        }finally{
+            lock.release();
+        }// end try...finally
+
+        myLogger.exiting(MY_CLASS_NAME, "export", changes);
+        return changes;
+    }// end export
+
+    /**
+     * Encodes the certificates as PEM, the certificates are spread over a fixed pool of threads when there is more than one thread.
+     *
+     * @param certificates
+     *        the certificates by file name
+     * @return the PEM encoded certificates by file name, in the order of the file names
+     * @throws GeneralSecurityException
+     *         if a certificate cannot be encoded
+     * @throws InterruptedException
+     *         if the thread is interrupted while waiting on the encoding
+     */
+    private Map<String, byte[]> encode(Map<String, X509Certificate> certificates) throws GeneralSecurityException, InterruptedException {
+        Map<String, byte[]> encoded = new TreeMap<String, byte[]>();
+        if(this.threads == 1 || certificates.size() < 2){
+            for(Map.Entry<String, X509Certificate> entry : certificates.entrySet()){
+                encoded.put(entry.getKey(), toPem(entry.getValue()));
+            }// end for
+            return encoded;
+        }// end if
+
+        final AtomicInteger count = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(this.threads, certificates.size()), new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "trustcert-export-" + count.getAndIncrement());
+                thread.setDaemon(true);
+                return thread;
+            }// end newThread
+        });
+        try{
+            List<String> fileNames = new ArrayList<String>(certificates.keySet());
+            List<Future<byte[]>> futures = new ArrayList<Future<byte[]>>(fileNames.size());
+            for(final X509Certificate certificate : certificates.values()){
+                futures.add(executor.submit(new Callable<byte[]>() {
+                    @Override
+                    public byte[] call() throws Exception {
+                        return toPem(certificate);
+                    }// end call
+                }));
+            }// end for
+            for(int i = 0; i < futures.size(); i++){
+                try{
+                    encoded.put(fileNames.get(i), futures.get(i).get());
+                }catch(ExecutionException e){
+                    if(e.getCause() instanceof GeneralSecurityException){
+                        throw (GeneralSecurityException) e.getCause();
+                    }// end if
+                    throw new IllegalStateException("The certificate " + fileNames.get(i) + " could not be encoded", e.getCause());
+                }// end try...catch
+            }// end for
+        }finally{
+            executor.shutdownNow();
+        }// end try...finally
+        return encoded;
+    }// end encode
+
+    /**
+     * @param certificate
+     *        the certificate
+     * @return the certificate as a PEM block with lines of 64 characters
+     * @throws GeneralSecurityException
+     *         if the certificate cannot be encoded
+     */
+    static byte[] toPem(X509Certificate certificate) throws GeneralSecurityException {
+        String base64 = Base64.getMimeEncoder(64, LINE_SEPARATOR).encodeToString(certificate.getEncoded());
+        return ("-----BEGIN CERTIFICATE-----\n" + base64 + "\n-----END CERTIFICATE-----\n").getBytes(StandardCharsets.US_ASCII);
+    }// end toPem
+
+    /**
+     * @param encoded
+     *        the PEM encoded certificates in the order of their file names
+     * @return every certificate preceded by a comment naming its file
+     */
+    private static byte[] bundle(Map<String, byte[]> encoded) {
+        ByteArrayOutputStream bundle = new ByteArrayOutputStream();
+        for(Map.Entry<String, byte[]> entry : encoded.entrySet()){
+            byte[] comment = ("# " + entry.getKey() + "\n").getBytes(StandardCharsets.US_ASCII);
+            bundle.write(comment, 0, comment.length);
+            bundle.write(entry.getValue(), 0, entry.getValue().length);
+        }// end for
+        return bundle.toByteArray();
+    }// end bundle
+
+    /**
+     * @param alias
+     *        the alias of the certificate
+     * @return the name of the PEM file of the certificate, lower case with every character other than letters, digits, dots, dashes and underscores replaced by an underscore
+     */
+    private static String toFileName(String alias) {
+        return alias.toLowerCase(Locale.ROOT).replaceAll("[^a-z0-9._-]", "_") + PEM_SUFFIX;
+    }// end toFileName
+
+    /**
+     * Writes the file through a temporary file so readers never see a partially written file.
+     *
+     * @param file
+     *        the file
+     * @param content
+     *        the content of the file
+     * @throws IOException
+     *         if the file cannot be written
+     */
+    private static void write(Path file, byte[] content) throws IOException {
+        Path tempFile = TrustStoreFiles.newTempFile(file);
+        try{
+            OutputStream out = Files.newOutputStream(tempFile);
+            try{
+                out.write(content);
+            }finally{
+                out.close();
+            }// end try...finally
+            TrustStoreFiles.replace(tempFile, file);
+            tempFile = null;
+        }finally{
+            if(tempFile != null){
+                Files.deleteIfExists(tempFile);
+            }// end if
+        }// end try...finally
+    }// end write
+
+}// end class
@@ -0,0 +1,358 @@
+/**
+ *
+ */
+package com.omo.free.security.ssl;
+
+import java.net.Socket;
+import java.nio.file.Path;
+import java.security.GeneralSecurityException;
+import java.security.KeyStore;
+import java.security.KeyStoreException;
+import java.security.cert.CertificateException;
+import java.security.cert.PKIXBuilderParameters;
+import java.security.cert.TrustAnchor;
+import java.security.cert.X509Certificate;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.logging.Logger;
+
+import javax.net.ssl.CertPathTrustManagerParameters;
+import javax.net.ssl.HttpsURLConnection;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLSocketFactory;
+import javax.net.ssl.TrustManager;
+import javax.net.ssl.TrustManagerFactory;
+import javax.net.ssl.X509ExtendedTrustManager;
+
+/**
+ * This class is a trust manager whose trust anchors can be replaced while the JVM is running. It is installed as the default {@link SSLContext} and as the default socket factory of {@link HttpsURLConnection}, so certificates added to the local truststore
+ * are trusted by every TLS client of the running build straight away.
+ * <p>
+ * The anchors are kept per truststore directory and the trust manager trusts all of them, so a build trusting hosts into several truststores keeps trusting the hosts of the first one after the second is installed. Installing a truststore again replaces
+ * only its own anchors.
+ * </p>
+ * <p>
+ * The trust anchors and the trust manager built from them are held in an immutable snapshot that is swapped as a whole when the anchors change. Handshakes read the current snapshot without taking a lock, an update builds a new snapshot from a copy of the
+ * anchors.
+ * </p>
+ * <p>
+ * The sockets of the installed socket factory are counted per handshake: a handshake that ran the trust manager is a full handshake, one that completed without it resumed a session cached by the default {@link SSLContext}. The chain a server sent is
+ * kept per socket until its handshake completes, so callers sharing the default context can read the chain of a handshake the trust manager refused.
+ * </p>
+ *
+ * @author Richard Salas
+ */
+public class ReloadableTrustManager extends X509ExtendedTrustManager {
+
+    private static final String MY_CLASS_NAME = "com.omo.free.security.ssl.ReloadableTrustManager";
+    private static Logger myLogger = Logger.getLogger(MY_CLASS_NAME);
+
+    private static ReloadableTrustManager installed;
+    private static SSLContext installedContext;
+    private static SSLSocketFactory installedSocketFactory;
+
+    private static final AtomicLong FULL_HANDSHAKES = new AtomicLong();
+    private static final AtomicLong RESUMED_HANDSHAKES = new AtomicLong();
+
+    /** the source of the anchors installed without a truststore directory */
+    private static final String DEFAULT_SOURCE = "";
+
+    private final AtomicReference<Snapshot> snapshot = new AtomicReference<Snapshot>();
+    private final Map<String, Set<X509Certificate>> sources = new LinkedHashMap<String, Set<X509Certificate>>();
+    private final Map<Socket, X509Certificate[]> peerChains = Collections.synchronizedMap(new WeakHashMap<Socket, X509Certificate[]>());
+
+    /**
+     * Constructor used to create an instance of the ReloadableTrustManager.
+     *
+     * @param keystore
+     *        the keystore holding the initial trust anchors
+     * @throws GeneralSecurityException
+     *         if the trust manager cannot be built from the keystore
+     */
+    public ReloadableTrustManager(KeyStore keystore) throws GeneralSecurityException {
+        this(DEFAULT_SOURCE, keystore);
+    }// end constructor
+
+    /**
+     * Constructor used to create an instance of the ReloadableTrustManager.
+     *
+     * @param source
+     *        the truststore the initial trust anchors belong to
+     * @param keystore
+     *        the keystore holding the initial trust anchors
+     * @throws GeneralSecurityException
+     *         if the trust manager cannot be built from the keystore
+     */
+    private ReloadableTrustManager(String source, KeyStore keystore) throws GeneralSecurityException {
+        Set<X509Certificate> anchors = readAnchors(keystore);
+        this.sources.put(source, anchors);
+        this.snapshot.set(new Snapshot(new HashSet<X509Certificate>(anchors)));
+    }// end constructor
+
+    /**
+     * Installs a ReloadableTrustManager as the default of the JVM the first time it is called, later calls replace the trust anchors installed without a truststore directory, the anchors of every truststore directory are kept. The caller must hold the
+     * lock of the keystore when the keystore is shared.
+     *
+     * @param keystore
+     *        the keystore holding the trust anchors
+     * @return the installed trust manager
+     * @throws GeneralSecurityException
+     *         if the trust manager cannot be built from the keystore or the default SSLContext cannot be created
+     */
+    public static ReloadableTrustManager install(KeyStore keystore) throws GeneralSecurityException {
+        return install(null, keystore, 0);
+    }// end install
+
+    /**
+     * Installs a ReloadableTrustManager as the default of the JVM the first time it is called, later calls replace the trust anchors of the same truststore directory and keep those of every other one. The caller must hold the lock of the keystore when
+     * the keystore is shared.
+     *
+     * @param trustStoreDir
+     *        the directory of the truststore the anchors belong to, null for anchors that do not belong to a truststore directory
+     * @param keystore
+     *        the keystore holding the trust anchors
+     * @param sessionCacheSize
+     *        the number of TLS sessions the default SSLContext keeps for resuming, zero or less to keep the size it has
+     * @return the installed trust manager
+     * @throws GeneralSecurityException
+     *         if the trust manager cannot be built from the keystore or the default SSLContext cannot be created
+     */
+    public static synchronized ReloadableTrustManager install(Path trustStoreDir, KeyStore keystore, int sessionCacheSize) throws GeneralSecurityException {
+        myLogger.entering(MY_CLASS_NAME, "install", trustStoreDir);
+
+        String source = (trustStoreDir != null) ? trustStoreDir.toAbsolutePath().normalize().toString() : DEFAULT_SOURCE;
+        if(installed == null){
+            ReloadableTrustManager trustManager = new ReloadableTrustManager(source, keystore);
+            SSLContext context = SSLContext.getInstance("TLS");
+            context.init(null, new TrustManager[]{trustManager}, null);
+            SSLContext.setDefault(context);
+            installedSocketFactory = new CountingSSLSocketFactory(context.getSocketFactory(), trustManager);
+            HttpsURLConnection.setDefaultSSLSocketFactory(installedSocketFactory);
+            installedContext = context;
+            installed = trustManager;
+            myLogger.info("Installed the reloadable trust manager as the default SSLContext with " + trustManager.getAcceptedIssuers().length + " trust anchor(s).");
+        }else{
+            installed.update(source, keystore);
+        }// end if
+
+        if(sessionCacheSize > 0 && installedContext.getClientSessionContext().getSessionCacheSize() != sessionCacheSize){
+            installedContext.getClientSessionContext().setSessionCacheSize(sessionCacheSize);
+            myLogger.info("The default SSLContext keeps up to " + sessionCacheSize + " TLS session(s) for resuming.");
+        }// end if
+
+        myLogger.exiting(MY_CLASS_NAME, "install");
+        return installed;
+    }// end install
+
+    /**
+     * @return the socket factory of the installed default SSLContext, it counts full and resumed handshakes, or null if no trust manager was installed
+     */
+    public static synchronized SSLSocketFactory getInstalledSocketFactory() {
+        return installedSocketFactory;
+    }// end getInstalledSocketFactory
+
+    /**
+     * @return the number of handshakes of the installed socket factory that verified the chain of the server
+     */
+    public static long getFullHandshakes() {
+        return FULL_HANDSHAKES.get();
+    }// end getFullHandshakes
+
+    /**
+     * @return the number of handshakes of the installed socket factory that resumed a cached TLS session
+     */
+    public static long getResumedHandshakes() {
+        return RESUMED_HANDSHAKES.get();
+    }// end getResumedHandshakes
+
+    /**
+     * Removes the chain the server of a socket of the installed socket factory sent.
+     *
+     * @param socket
+     *        the socket of the handshake
+     * @return the chain the installed trust manager was asked to verify or null if the handshake of the socket did not verify a chain
+     */
+    static X509Certificate[] takePeerChain(Socket socket) {
+        ReloadableTrustManager trustManager;
+        synchronized(ReloadableTrustManager.class){
+            trustManager = installed;
+        }// end synchronized
+        return (trustManager == null) ? null : trustManager.peerChains.remove(socket);
+    }// end takePeerChain
+
+    /**
+     * Counts a completed handshake of the socket as full when the trust manager verified a chain for it, as resumed otherwise.
+     *
+     * @param socket
+     *        the socket of the handshake
+     */
+    void handshakeCompleted(Socket socket) {
+        if(this.peerChains.remove(socket) != null){
+            FULL_HANDSHAKES.incrementAndGet();
+        }else{
+            RESUMED_HANDSHAKES.incrementAndGet();
+        }// end if
+    }// end handshakeCompleted
+
+    /**
+     * Replaces the trust anchors installed without a truststore directory with the certificates of the keystore, nothing is rebuilt when the anchors have not changed. The caller must hold the lock of the keystore when the keystore is shared.
+     *
+     * @param keystore
+     *        the keystore holding the trust anchors
+     * @return true if the trust anchors changed
+     * @throws GeneralSecurityException
+     *         if the trust manager cannot be built from the keystore
+     */
+    public boolean update(KeyStore keystore) throws GeneralSecurityException {
+        return update(DEFAULT_SOURCE, keystore);
+    }// end update
+
+    /**
+     * Replaces the trust anchors of one truststore with the certificates of the keystore and trusts the anchors of every truststore, nothing is rebuilt when the anchors of the truststore have not changed. The caller must hold the lock of the keystore
+     * when the keystore is shared.
+     *
+     * @param source
+     *        the truststore the anchors belong to
+     * @param keystore
+     *        the keystore holding the trust anchors
+     * @return true if the trust anchors changed
+     * @throws GeneralSecurityException
+     *         if the trust manager cannot be built from the keystore
+     */
+    private boolean update(String source, KeyStore keystore) throws GeneralSecurityException {
+        Set<X509Certificate> anchors = readAnchors(keystore);
+        synchronized(this.sources){
+            if(anchors.equals(this.sources.get(source))){
+                return false;
+            }// end if
+
+            Set<X509Certificate> merged = new HashSet<X509Certificate>(anchors);
+            for(Map.Entry<String, Set<X509Certificate>> entry : this.sources.entrySet()){
+                if(!entry.getKey().equals(source)){
+                    merged.addAll(entry.getValue());
+                }// end if
+            }// end for
+            this.snapshot.set(new Snapshot(merged));
+            this.sources.put(source, anchors);
+            myLogger.info("Reloaded the trust manager with " + merged.size() + " trust anchor(s) of " + this.sources.size() + " truststore(s).");
+        }// end synchronized
+        return true;
+    }// end update
+
+    /**
+     * Reads every certificate of the keystore.
+     *
+     * @param keystore
+     *        the keystore
+     * @return the X.509 certificates of the keystore
+     * @throws KeyStoreException
+     *         if the keystore has not been loaded
+     */
+    private static Set<X509Certificate> readAnchors(KeyStore keystore) throws KeyStoreException {
+        Set<X509Certificate> anchors = new HashSet<X509Certificate>();
+        for(String alias : Collections.list(keystore.aliases())){
+            if(keystore.isCertificateEntry(alias) && keystore.getCertificate(alias) instanceof X509Certificate){
+                anchors.add((X509Certificate) keystore.getCertificate(alias));
+            }// end if
+        }// end for
+        return anchors;
+    }// end readAnchors
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public X509Certificate[] getAcceptedIssuers() {
+        return this.snapshot.get().trustManager.getAcceptedIssuers();
+    }// end getAcceptedIssuers
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void checkClientTrusted(X509Certificate[] chain, String authType) throws CertificateException {
+        this.snapshot.get().trustManager.checkClientTrusted(chain, authType);
+    }// end checkClientTrusted
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void checkClientTrusted(X509Certificate[] chain, String authType, Socket socket) throws CertificateException {
+        this.snapshot.get().trustManager.checkClientTrusted(chain, authType, socket);
+    }// end checkClientTrusted
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void checkClientTrusted(X509Certificate[] chain, String authType, SSLEngine engine) throws CertificateException {
+        this.snapshot.get().trustManager.checkClientTrusted(chain, authType, engine);
+    }// end checkClientTrusted
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void checkServerTrusted(X509Certificate[] chain, String authType) throws CertificateException {
+        this.snapshot.get().trustManager.checkServerTrusted(chain, authType);
+    }// end checkServerTrusted
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void checkServerTrusted(X509Certificate[] chain, String authType, Socket socket) throws CertificateException {
+        if(socket != null){
+            this.peerChains.put(socket, chain);
+        }// end if
+        this.snapshot.get().trustManager.checkServerTrusted(chain, authType, socket);
+    }// end checkServerTrusted
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void checkServerTrusted(X509Certificate[] chain, String authType, SSLEngine engine) throws CertificateException {
+        this.snapshot.get().trustManager.checkServerTrusted(chain, authType, engine);
+    }// end checkServerTrusted
+
+    /**
+     * This class holds a set of trust anchors and the PKIX trust manager built from them, it is never changed once created.
+     */
+    private static class Snapshot {
+
+        private final Set<X509Certificate> anchors;
+        private final X509ExtendedTrustManager trustManager;
+
+        /**
+         * @param anchors
+         *        the trust anchors, the set must not be changed afterwards
+         * @throws GeneralSecurityException
+         *         if the trust manager cannot be built
+         */
+        Snapshot(Set<X509Certificate> anchors) throws GeneralSecurityException {
+            this.anchors = Collections.unmodifiableSet(anchors);
+
+            Set<TrustAnchor> trustAnchors = new HashSet<TrustAnchor>(anchors.size() * 2);
+            for(X509Certificate anchor : anchors){
+                trustAnchors.add(new TrustAnchor(anchor, null));
+            }// end for
+            // revocation checking is disabled the same way TrustManagerFactory.init(KeyStore) disables it
+            PKIXBuilderParameters parameters = new PKIXBuilderParameters(trustAnchors, null);
+            parameters.setRevocationEnabled(false);
+            TrustManagerFactory factory = TrustManagerFactory.getInstance("PKIX");
+            factory.init(new CertPathTrustManagerParameters(parameters));
+            this.trustManager = (X509ExtendedTrustManager) factory.getTrustManagers()[0];
+        }// end constructor
+
+    }// end class
+
+}// end class
@@ -0,0 +1,421 @@
+/**
+ *
+ */
+package com.omo.free.security.ssl;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.lang.reflect.Method;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * This class holds the time spent in each phase of trusting the web servers and the number of servers per outcome. The time of the connect and handshake phases is also kept per server so slow hosts can be found.
+ * <p>
+ * When the running JVM has the JDK Flight Recorder every phase and outcome is also committed as a JFR event (see {@code JfrTrustEvents} in the {@code src-jfr} source root), the events cost nothing unless a recording is running.
+ * </p>
+ *
+ * @author Richard Salas
+ */
+public class TrustMetrics {
+
+    private static final String MY_CLASS_NAME = "com.omo.free.security.ssl.TrustMetrics";
+    private static Logger myLogger = Logger.getLogger(MY_CLASS_NAME);
+
+    /**
+     * The phases of trusting the web servers.
+     */
+    public enum Phase {
+        /** creating or refreshing the local truststore from the java Runtime's cacerts */
+        BOOTSTRAP,
+        /** loading the local truststore */
+        LOAD,
+        /** reading the certificates of certificate files */
+        IMPORT,
+        /** resolving every address of the hosts when every address is handshaked with */
+        RESOLVE,
+        /** the name lookup and TCP connect to a server */
+        CONNECT,
+        /** the TLS handshake with a server */
+        HANDSHAKE,
+        /** storing the local truststore */
+        STORE,
+        /** exporting the truststore as PEM files */
+        EXPORT;
+
+        /**
+         * @return the name used in property names and the report
+         */
+        public String getName() {
+            return name().toLowerCase(Locale.ROOT);
+        }// end getName
+    }// end enum
+
+    /**
+     * The outcomes of checking a web server.
+     */
+    public enum Outcome {
+        /** the certificate of the server was already trusted */
+        TRUSTED,
+        /** the certificate of the server was added to the truststore */
+        ADDED,
+        /** the expired certificate of the server was replaced in the truststore */
+        REFRESHED,
+        /** the server could not be checked */
+        FAILED,
+        /** the handshake was skipped because the server was verified recently */
+        CACHED,
+        /** the handshake was skipped because the server failed recently */
+        SKIPPED;
+
+        /**
+         * @return the name used in property names and the report
+         */
+        public String getName() {
+            return name().toLowerCase(Locale.ROOT);
+        }// end getName
+    }// end enum
+
+    /**
+     * Receives every phase and outcome as it is recorded.
+     */
+    interface Listener {
+
+        /**
+         * @param phase
+         *        the phase that ended
+         * @param host
+         *        the host name, null when the phase is not tied to a server
+         * @param port
+         *        the port, zero when the phase is not tied to a server
+         * @param nanos
+         *        the time the phase took
+         */
+        void phaseEnded(Phase phase, String host, int port, long nanos);
+
+        /**
+         * @param outcome
+         *        the outcome
+         * @param host
+         *        the host name
+         * @param port
+         *        the port
+         */
+        void outcome(Outcome outcome, String host, int port);
+
+    }// end interface
+
+    private static final String JFR_EVENTS_CLASS_NM = "com.omo.free.security.ssl.JfrTrustEvents";
+    private static final Method JFR_INITIALIZED = jfrInitializedMethod();
+    private static volatile Listener jfrListener;
+    private static volatile boolean jfrUnavailable;
+
+    private final Map<Phase, AtomicLong> phaseNanos = new EnumMap<Phase, AtomicLong>(Phase.class);
+    private final Map<Phase, AtomicLong> phaseCounts = new EnumMap<Phase, AtomicLong>(Phase.class);
+    private final Map<Outcome, AtomicLong> outcomeCounts = new EnumMap<Outcome, AtomicLong>(Outcome.class);
+    private final ConcurrentHashMap<String, HostMetrics> hosts = new ConcurrentHashMap<String, HostMetrics>();
+
+    /**
+     * Constructor used to create an instance of the TrustMetrics with every phase and outcome at zero.
+     */
+    public TrustMetrics() {
+        for(Phase phase : Phase.values()){
+            this.phaseNanos.put(phase, new AtomicLong());
+            this.phaseCounts.put(phase, new AtomicLong());
+        }// end for
+        for(Outcome outcome : Outcome.values()){
+            this.outcomeCounts.put(outcome, new AtomicLong());
+        }// end for
+    }// end constructor
+
+    /**
+     * @return the start time to pass to {@link #record(Phase, long)}
+     */
+    public static long start() {
+        return System.nanoTime();
+    }// end start
+
+    /**
+     * Records a phase that is not tied to a server.
+     *
+     * @param phase
+     *        the phase that ended
+     * @param startNanos
+     *        the time returned by {@link #start()} when the phase began
+     */
+    public void record(Phase phase, long startNanos) {
+        recordNanos(phase, null, 0, System.nanoTime() - startNanos);
+    }// end record
+
+    /**
+     * Records a phase of the check of a server.
+     *
+     * @param phase
+     *        the phase that ended
+     * @param host
+     *        the host name
+     * @param port
+     *        the port
+     * @param nanos
+     *        the time the phase took
+     */
+    public void recordNanos(Phase phase, String host, int port, long nanos) {
+        this.phaseNanos.get(phase).addAndGet(nanos);
+        this.phaseCounts.get(phase).incrementAndGet();
+        if(host != null){
+            HostMetrics metrics = host(host, port);
+            if(phase == Phase.CONNECT){
+                metrics.connectNanos.addAndGet(nanos);
+            }else if(phase == Phase.HANDSHAKE){
+                metrics.handshakeNanos.addAndGet(nanos);
+            }// end if
+        }// end if
+        Listener listener = jfrListener();
+        if(listener != null){
+            listener.phaseEnded(phase, host, port, nanos);
+        }// end if
+    }// end recordNanos
+
+    /**
+     * Records the outcome of the check of a server.
+     *
+     * @param outcome
+     *        the outcome
+     * @param host
+     *        the host name
+     * @param port
+     *        the port
+     */
+    public void count(Outcome outcome, String host, int port) {
+        this.outcomeCounts.get(outcome).incrementAndGet();
+        host(host, port).outcome = outcome;
+        Listener listener = jfrListener();
+        if(listener != null){
+            listener.outcome(outcome, host, port);
+        }// end if
+    }// end count
+
+    /**
+     * @param phase
+     *        the phase
+     * @return the total time in milliseconds spent in the phase
+     */
+    public long getMillis(Phase phase) {
+        return TimeUnit.NANOSECONDS.toMillis(this.phaseNanos.get(phase).get());
+    }// end getMillis
+
+    /**
+     * @param phase
+     *        the phase
+     * @return the total time in nanoseconds spent in the phase
+     */
+    public long getNanos(Phase phase) {
+        return this.phaseNanos.get(phase).get();
+    }// end getNanos
+
+    /**
+     * @return the outcome of every server that has one, keyed by {@code host:port}
+     */
+    public Map<String, Outcome> getOutcomes() {
+        Map<String, Outcome> outcomes = new TreeMap<String, Outcome>();
+        for(Map.Entry<String, HostMetrics> host : this.hosts.entrySet()){
+            if(host.getValue().outcome != null){
+                outcomes.put(host.getKey(), host.getValue().outcome);
+            }// end if
+        }// end for
+        return outcomes;
+    }// end getOutcomes
+
+    /**
+     * @param outcome
+     *        the outcome
+     * @return the number of servers with the outcome
+     */
+    public long getCount(Outcome outcome) {
+        return this.outcomeCounts.get(outcome).get();
+    }// end getCount
+
+    /**
+     * Writes the metrics as a JSON document.
+     *
+     * @param reportFile
+     *        the file to write
+     * @throws IOException
+     *         if the file cannot be written
+     */
+    public void writeJson(Path reportFile) throws IOException {
+        myLogger.entering(MY_CLASS_NAME, "writeJson", reportFile);
+
+        List<HostMetrics> hostList = new ArrayList<HostMetrics>(this.hosts.values());
+        Writer out = Files.newBufferedWriter(reportFile, StandardCharsets.UTF_8);
+        try{
+            out.write("{\n  \"phases\": {");
+            String separator = "\n";
+            for(Phase phase : Phase.values()){
+                out.write(separator + "    " + quote(phase.getName()) + ": {\"ms\": " + getMillis(phase) + ", \"count\": " + this.phaseCounts.get(phase).get() + "}");
+                separator = ",\n";
+            }// end for
+            out.write("\n  },\n  \"outcomes\": {");
+            separator = "\n";
+            for(Outcome outcome : Outcome.values()){
+                out.write(separator + "    " + quote(outcome.getName()) + ": " + getCount(outcome));
+                separator = ",\n";
+            }// end for
+            out.write("\n  },\n  \"hosts\": [");
+            separator = "\n";
+            for(HostMetrics host : hostList){
+                out.write(separator + "    {\"host\": " + quote(host.host) + ", \"port\": " + host.port + ", \"connectMs\": " + TimeUnit.NANOSECONDS.toMillis(host.connectNanos.get()) + ", \"handshakeMs\": "
+                        + TimeUnit.NANOSECONDS.toMillis(host.handshakeNanos.get()) + ", \"outcome\": " + (host.outcome == null ? "null" : quote(host.outcome.getName())) + "}");
+                separator = ",\n";
+            }// end for
+            out.write("\n  ]\n}\n");
+        }finally{
+            out.close();
+        }// end try...finally
+
+        myLogger.exiting(MY_CLASS_NAME, "writeJson");
+    }// end writeJson
+
+    /**
+     * @param host
+     *        the host name
+     * @param port
+     *        the port
+     * @return the metrics of the server, created if this is the first time the server is seen
+     */
+    private HostMetrics host(String host, int port) {
+        String key = host + ":" + port;
+        HostMetrics metrics = this.hosts.get(key);
+        if(metrics == null){
+            HostMetrics created = new HostMetrics(host, port);
+            metrics = this.hosts.putIfAbsent(key, created);
+            if(metrics == null){
+                metrics = created;
+            }// end if
+        }// end if
+        return metrics;
+    }// end host
+
+    /**
+     * @param value
+     *        the value
+     * @return the value as a JSON string
+     */
+    private static String quote(String value) {
+        StringBuilder quoted = new StringBuilder(value.length() + 2).append('"');
+        for(int i = 0; i < value.length(); i++){
+            char c = value.charAt(i);
+            if(c == '"' || c == '\\'){
+                quoted.append('\\').append(c);
+            }else if(c < 0x20){
+                quoted.append(String.format("\\u%04x", (int) c));
+            }else{
+                quoted.append(c);
+            }// end if
+        }// end for
+        return quoted.append('"').toString();
+    }// end quote
+
+    /**
+     * Looks up {@code FlightRecorder.isInitialized()} by name so this class still loads on a java Runtime without the {@code jdk.jfr} API. Only a handful of {@code jdk.jfr} classes are loaded for it, the event classes are not touched until a
+     * recording has been started.
+     *
+     * @return the method or null if the running JVM has no JDK Flight Recorder or the event classes are missing
+     */
+    private static Method jfrInitializedMethod() {
+        try{
+            Class.forName("jdk.jfr.Event");
+            Class.forName(JFR_EVENTS_CLASS_NM, false, TrustMetrics.class.getClassLoader());
+            return Class.forName("jdk.jfr.FlightRecorder").getMethod("isInitialized");
+        }catch(ClassNotFoundException e){
+            myLogger.fine("The JDK Flight Recorder or the JFR events are not available, no JFR events will be committed.");
+        }catch(LinkageError e){
+            myLogger.log(Level.FINE, "The JFR events could not be loaded, no JFR events will be committed.  Error message is: " + e.getMessage(), e);
+        }catch(NoSuchMethodException e){
+            myLogger.log(Level.FINE, "The JDK Flight Recorder cannot be queried, no JFR events will be committed.  Error message is: " + e.getMessage(), e);
+        }// end try...catch
+        return null;
+    }// end jfrInitializedMethod
+
+    /**
+     * Returns the listener committing JFR events once the Flight Recorder has been initialized, whether by {@code -XX:StartFlightRecording} or by a recording started later (for example with {@code jcmd <pid> JFR.start}). Registering the event
+     * classes loads about a hundred classes of the {@code jdk.jfr} module, so a run without a recording never creates the listener.
+     *
+     * @return the listener or null if no recording has been started or the JFR events are not available
+     */
+    private static Listener jfrListener() {
+        Listener listener = jfrListener;
+        if(listener != null || JFR_INITIALIZED == null || jfrUnavailable){
+            return listener;
+        }// end if
+        try{
+            if(!Boolean.TRUE.equals(JFR_INITIALIZED.invoke(null))){
+                return null;
+            }// end if
+        }catch(ReflectiveOperationException e){
+            myLogger.log(Level.FINE, "The JDK Flight Recorder could not be queried, no JFR events will be committed.  Error message is: " + e.getMessage(), e);
+            jfrUnavailable = true;
+            return null;
+        }// end try...catch
+        synchronized(TrustMetrics.class){
+            if(jfrListener == null && !jfrUnavailable){
+                jfrListener = newJfrListener();
+                jfrUnavailable = (jfrListener == null);
+            }// end if
+            return jfrListener;
+        }// end synchronized
+    }// end jfrListener
+
+    /**
+     * Creates the listener committing JFR events, the listener is loaded by name since its classes live in their own source root.
+     *
+     * @return the listener or null if the JFR events could not be created
+     */
+    private static Listener newJfrListener() {
+        try{
+            return (Listener) Class.forName(JFR_EVENTS_CLASS_NM).getDeclaredConstructor().newInstance();
+        }catch(LinkageError e){
+            myLogger.log(Level.FINE, "The JFR events could not be loaded, no JFR events will be committed.  Error message is: " + e.getMessage(), e);
+        }catch(ReflectiveOperationException e){
+            myLogger.log(Level.FINE, "The JFR events could not be created, no JFR events will be committed.  Error message is: " + e.getMessage(), e);
+        }// end try...catch
+        return null;
+    }// end newJfrListener
+
+    /**
+     * This class holds the time spent on a single server and its outcome.
+     */
+    private static class HostMetrics {
+
+        private final String host;
+        private final int port;
+        private final AtomicLong connectNanos = new AtomicLong();
+        private final AtomicLong handshakeNanos = new AtomicLong();
+        private volatile Outcome outcome;
+
+        /**
+         * @param host
+         *        the host name
+         * @param port
+         *        the port
+         */
+        HostMetrics(String host, int port) {
+            this.host = host;
+            this.port = port;
+        }// end constructor
+
+    }// end class
+
+}// end class
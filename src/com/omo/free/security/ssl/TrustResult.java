@@ -0,0 +1,173 @@
+/**
+ *
+ */
+package com.omo.free.security.ssl;
+
+import java.net.InetAddress;
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * This class is what the {@link TrustStoreService} did for a single url: the chain the server sent, the action taken on the truststore, the trust anchor of the chain and the time the connect and the handshake took. When every address of the host was
+ * handshaked with, the result of the url sums up the result of each address, which is kept as well. Instances are immutable and may be handed between threads.
+ *
+ * @author Richard Salas
+ */
+public final class TrustResult {
+
+    private final String url;
+    private final String host;
+    private final int port;
+    private final InetAddress address;
+    private final TrustMetrics.Outcome outcome;
+    private final X509Certificate[] chain;
+    private final List<String> anchors;
+    private final long connectNanos;
+    private final long handshakeNanos;
+    private final Exception error;
+    private final List<TrustResult> addressResults;
+
+    /**
+     * Constructor used to create an instance of the TrustResult.
+     *
+     * @param url
+     *        the url that was checked
+     * @param host
+     *        the host name of the url
+     * @param port
+     *        the port of the url
+     * @param address
+     *        the address the handshake was made with, null when the host name was resolved by the connect
+     * @param outcome
+     *        the action taken for the url
+     * @param chain
+     *        the certificate chain sent by the server, null when no handshake was made or the server sent none
+     * @param anchors
+     *        the SHA-256 fingerprints of the trust anchors of the chains, empty when they are not known
+     * @param connectNanos
+     *        the time the connect took
+     * @param handshakeNanos
+     *        the time the handshake took
+     * @param error
+     *        the reason the url could not be checked, null when it was
+     * @param addressResults
+     *        the results of the addresses of the host, empty when the handshake was not made with every address
+     */
+    TrustResult(String url, String host, int port, InetAddress address, TrustMetrics.Outcome outcome, X509Certificate[] chain, List<String> anchors, long connectNanos, long handshakeNanos, Exception error, List<TrustResult> addressResults) {
+        this.url = url;
+        this.host = host;
+        this.port = port;
+        this.address = address;
+        this.outcome = outcome;
+        this.chain = (chain != null) ? chain.clone() : null;
+        this.anchors = Collections.unmodifiableList(new ArrayList<String>(anchors));
+        this.connectNanos = connectNanos;
+        this.handshakeNanos = handshakeNanos;
+        this.error = error;
+        this.addressResults = Collections.unmodifiableList(new ArrayList<TrustResult>(addressResults));
+    }// end constructor
+
+    /**
+     * @return the url that was checked
+     */
+    public String getUrl() {
+        return this.url;
+    }// end getUrl
+
+    /**
+     * @return the host name of the url
+     */
+    public String getHost() {
+        return this.host;
+    }// end getHost
+
+    /**
+     * @return the port of the url
+     */
+    public int getPort() {
+        return this.port;
+    }// end getPort
+
+    /**
+     * @return the address the handshake was made with, null when the host name was resolved by the connect or the result sums up every address
+     */
+    public InetAddress getAddress() {
+        return this.address;
+    }// end getAddress
+
+    /**
+     * @return the action taken for the url
+     */
+    public TrustMetrics.Outcome getOutcome() {
+        return this.outcome;
+    }// end getOutcome
+
+    /**
+     * @return true if the certificate of the server is trusted by the truststore, whether it was already or has been added
+     */
+    public boolean isTrusted() {
+        return this.outcome == TrustMetrics.Outcome.TRUSTED || this.outcome == TrustMetrics.Outcome.ADDED || this.outcome == TrustMetrics.Outcome.REFRESHED || this.outcome == TrustMetrics.Outcome.CACHED;
+    }// end isTrusted
+
+    /**
+     * @return a copy of the certificate chain sent by the server, the chain of the first address when every address was handshaked with, null when no handshake was made or the server sent none
+     */
+    public X509Certificate[] getChain() {
+        return (this.chain != null) ? this.chain.clone() : null;
+    }// end getChain
+
+    /**
+     * @return the SHA-256 fingerprint of the trust anchor of the chain, the first one when the addresses of the host sent different chains, null when it is not known
+     */
+    public String getAnchor() {
+        return this.anchors.isEmpty() ? null : this.anchors.get(0);
+    }// end getAnchor
+
+    /**
+     * @return the SHA-256 fingerprints of the trust anchors of every distinct chain the host sent, empty when they are not known
+     */
+    public List<String> getAnchors() {
+        return this.anchors;
+    }// end getAnchors
+
+    /**
+     * @return the time in nanoseconds the connect took, zero when no handshake was made
+     */
+    public long getConnectNanos() {
+        return this.connectNanos;
+    }// end getConnectNanos
+
+    /**
+     * @return the time in nanoseconds the handshake took, zero when no handshake was made
+     */
+    public long getHandshakeNanos() {
+        return this.handshakeNanos;
+    }// end getHandshakeNanos
+
+    /**
+     * @return the reason the url could not be checked, null when it was
+     */
+    public Exception getError() {
+        return this.error;
+    }// end getError
+
+    /**
+     * @return the results of each address of the host, empty when the handshake was not made with every address
+     */
+    public List<TrustResult> getAddressResults() {
+        return this.addressResults;
+    }// end getAddressResults
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String toString() {
+        String address = (this.address != null) ? " [" + this.address.getHostAddress() + "]" : "";
+        String addresses = this.addressResults.isEmpty() ? "" : " (" + this.addressResults.size() + " address(es))";
+        return this.host + ":" + this.port + address + " " + this.outcome.getName() + addresses + ((this.error != null) ? " (" + this.error.getMessage() + ")" : "");
+    }// end toString
+
+}// end class
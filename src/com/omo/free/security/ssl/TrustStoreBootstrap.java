@@ -0,0 +1,313 @@
+/**
+ *
+ */
+package com.omo.free.security.ssl;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.DigestInputStream;
+import java.security.GeneralSecurityException;
+import java.security.KeyStore;
+import java.security.MessageDigest;
+import java.util.Collections;
+import java.util.Properties;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * This class is used for creating the local truststore from the cacerts file of the running java Runtime and for keeping it in step with the java Runtime.
+ * <p>
+ * When the type of the java Runtime's cacerts file is known the file is copied as is rather than being loaded and stored again, so a new local truststore costs a file copy instead of a full decode and encode. A stamp file recording the SHA-256 hash of
+ * the java Runtime's cacerts is kept next to the local truststore, when the trust anchors of the java Runtime change the local truststore is rebuilt and the certificates added by the task are merged back in.
+ * </p>
+ *
+ * @author Richard Salas
+ */
+public final class TrustStoreBootstrap {
+
+    private static final String MY_CLASS_NAME = "com.omo.free.security.ssl.TrustStoreBootstrap";
+    private static Logger myLogger = Logger.getLogger(MY_CLASS_NAME);
+
+    /** the name of the stamp file recording the java Runtime cacerts the local truststore was created from */
+    public static final String JDK_STAMP_FILE_NM = "cacerts.jdk";
+
+    private static final String TRUST_STORE_NM = "cacerts";
+    private static final String PATH_KEY = "path";
+    private static final String SIZE_KEY = "size";
+    private static final String MODIFIED_KEY = "lastModified";
+    private static final String HASH_KEY = "sha256";
+
+    /**
+     * Utility class, no instances.
+     */
+    private TrustStoreBootstrap() {
+    }// end constructor
+
+    /**
+     * @return the path of the cacerts file of the running java Runtime
+     */
+    public static Path getJdkTrustStore() {
+        return Paths.get(System.getProperty("java.home"), "lib", "security", TRUST_STORE_NM);
+    }// end getJdkTrustStore
+
+    /**
+     * Creates the local truststore from the cacerts file of the running java Runtime and records the stamp of the java Runtime's cacerts.
+     *
+     * @param truststoreFile
+     *        the local truststore file to create
+     * @param password
+     *        the password of the truststore
+     * @throws IOException
+     *         if a file cannot be read or written
+     * @throws GeneralSecurityException
+     *         if the java Runtime's cacerts has an unknown type and cannot be loaded
+     */
+    public static void create(Path truststoreFile, char[] password) throws IOException, GeneralSecurityException {
+        myLogger.entering(MY_CLASS_NAME, "create", truststoreFile);
+
+        Path caCertsPath = getJdkTrustStore();
+        TrustStoreLock lock = TrustStoreLock.acquire(truststoreFile);
+        Path tempFile = null;
+        try{
+            if(Files.exists(truststoreFile)){
+                // another build created the truststore while this one was waiting on the lock
+                myLogger.exiting(MY_CLASS_NAME, "create");
+                return;
+            }// end if
+
+            myLogger.info("copying cacerts file from: " + String.valueOf(caCertsPath.toString()));
+            MessageDigest digest = newSha256();
+            tempFile = copyToTemp(caCertsPath, truststoreFile, digest);
+            String hash = CertificateFingerprints.toHex(digest.digest());
+            if(FileKeyStoreLoader.detectType(tempFile) == null){
+                // unknown format, fall back to loading and storing the keystore with the default type
+                KeyStore keystore = KeyStore.getInstance(KeyStore.getDefaultType());
+                InputStream in = Files.newInputStream(caCertsPath);
+                try{
+                    keystore.load(in, password);
+                }finally{
+                    in.close();
+                }// end try...finally
+                storeTo(keystore, tempFile, password);
+            }// end if
+            TrustStoreFiles.replace(tempFile, truststoreFile);
+            tempFile = null;
+            writeStamp(truststoreFile, caCertsPath, hash);
+        }finally{
+            try{
+                if(tempFile != null){
+                    Files.deleteIfExists(tempFile);
+                }// end if
+            }finally{
+                lock.release();
+            }// end try...finally
+        }// end try...finally
+
+        myLogger.exiting(MY_CLASS_NAME, "create");
+    }// end create
+
+    /**
+     * Rebuilds the local truststore when the trust anchors of the running java Runtime have changed since it was created. The certificates added by the task (alias ending with {@link TrustedCertficatesStore#ALIAS_SUFFIX}) are merged into the new copy. The
+     * java Runtime's cacerts is only hashed when its size or modified time differs from the stamp.
+     *
+     * @param truststoreFile
+     *        the local truststore file
+     * @param password
+     *        the password of the truststore
+     * @return true if the local truststore was rebuilt
+     * @throws IOException
+     *         if a file cannot be read or written
+     * @throws GeneralSecurityException
+     *         if a keystore cannot be loaded or stored
+     */
+    public static boolean refreshIfJdkChanged(Path truststoreFile, char[] password) throws IOException, GeneralSecurityException {
+        myLogger.entering(MY_CLASS_NAME, "refreshIfJdkChanged", truststoreFile);
+
+        Path caCertsPath = getJdkTrustStore();
+        if(!Files.exists(caCertsPath)){
+            myLogger.exiting(MY_CLASS_NAME, "refreshIfJdkChanged", false);
+            return false;
+        }// end if
+
+        Properties stamp = readStamp(truststoreFile);
+        BasicFileAttributes attributes = Files.readAttributes(caCertsPath, BasicFileAttributes.class);
+        if(stamp != null && caCertsPath.toString().equals(stamp.getProperty(PATH_KEY)) && String.valueOf(attributes.size()).equals(stamp.getProperty(SIZE_KEY))
+                && String.valueOf(attributes.lastModifiedTime().toMillis()).equals(stamp.getProperty(MODIFIED_KEY))){
+            myLogger.exiting(MY_CLASS_NAME, "refreshIfJdkChanged", false);
+            return false;
+        }// end if
+
+        boolean rebuilt = false;
+        TrustStoreLock lock = TrustStoreLock.acquire(truststoreFile);
+        Path tempFile = null;
+        try{
+            // another build may have rebuilt the truststore while this one was waiting on the lock
+            stamp = readStamp(truststoreFile);
+            MessageDigest digest = newSha256();
+            tempFile = copyToTemp(caCertsPath, truststoreFile, digest);
+            String hash = CertificateFingerprints.toHex(digest.digest());
+            if(stamp != null && !hash.equals(stamp.getProperty(HASH_KEY))){
+                myLogger.info("The trust anchors of the java Runtime have changed, rebuilding the local truststore " + truststoreFile);
+                KeyStoreLoader loader = new FileKeyStoreLoader();
+                KeyStore rebuiltStore = loader.load(tempFile, password);
+                KeyStore localStore = loader.load(truststoreFile, password);
+                int merged = 0;
+                for(String alias : Collections.list(localStore.aliases())){
+                    if(TrustedCertficatesStore.isTaskAlias(alias) && localStore.isCertificateEntry(alias)){
+                        rebuiltStore.setCertificateEntry(alias, localStore.getCertificate(alias));
+                        merged++;
+                    }// end if
+                }// end for
+                storeTo(rebuiltStore, tempFile, password);
+                TrustStoreFiles.replace(tempFile, truststoreFile);
+                tempFile = null;
+                rebuilt = true;
+                myLogger.info("Merged " + merged + " certificate(s) added by the task into the rebuilt truststore.");
+            }// end if
+            writeStamp(truststoreFile, caCertsPath, hash);
+        }finally{
+            try{
+                if(tempFile != null){
+                    Files.deleteIfExists(tempFile);
+                }// end if
+            }finally{
+                lock.release();
+            }// end try...finally
+        }// end try...finally
+
+        myLogger.exiting(MY_CLASS_NAME, "refreshIfJdkChanged", rebuilt);
+        return rebuilt;
+    }// end refreshIfJdkChanged
+
+    /**
+     * Copies the source file to a temporary file in the directory of the target file, updating the digest while it is copied.
+     *
+     * @param source
+     *        the file to copy
+     * @param target
+     *        the file the copy will later replace
+     * @param digest
+     *        the digest updated with the bytes of the source file
+     * @return the temporary file
+     * @throws IOException
+     *         if the copy fails
+     */
+    private static Path copyToTemp(Path source, Path target, MessageDigest digest) throws IOException {
+        Path tempFile = TrustStoreFiles.newTempFile(target);
+        InputStream in = new DigestInputStream(Files.newInputStream(source), digest);
+        try{
+            Files.copy(in, tempFile, StandardCopyOption.REPLACE_EXISTING);
+        }catch(IOException e){
+            Files.deleteIfExists(tempFile);
+            throw e;
+        }finally{
+            in.close();
+        }// end try...catch...finally
+        return tempFile;
+    }// end copyToTemp
+
+    /**
+     * Stores the keystore to the file.
+     *
+     * @param keystore
+     *        the keystore to store
+     * @param file
+     *        the file to write
+     * @param password
+     *        the password of the truststore
+     * @throws IOException
+     *         if the file cannot be written
+     * @throws GeneralSecurityException
+     *         if the keystore cannot be stored
+     */
+    private static void storeTo(KeyStore keystore, Path file, char[] password) throws IOException, GeneralSecurityException {
+        OutputStream out = Files.newOutputStream(file);
+        try{
+            keystore.store(out, password);
+        }finally{
+            out.close();
+        }// end try...finally
+    }// end storeTo
+
+    /**
+     * Reads the stamp file of the local truststore.
+     *
+     * @param truststoreFile
+     *        the local truststore file
+     * @return the stamp or null if there is none
+     */
+    private static Properties readStamp(Path truststoreFile) {
+        Path stampFile = truststoreFile.resolveSibling(JDK_STAMP_FILE_NM);
+        if(!Files.exists(stampFile)){
+            return null;
+        }// end if
+
+        Properties stamp = new Properties();
+        try{
+            InputStream in = Files.newInputStream(stampFile);
+            try{
+                stamp.load(in);
+            }finally{
+                in.close();
+            }// end try...finally
+        }catch(IOException e){
+            myLogger.log(Level.WARNING, "IOException occurred while trying to read the stamp file " + stampFile + ", it will be recreated.  Error message is: " + e.getMessage(), e);
+            return null;
+        }// end try...catch
+        return stamp;
+    }// end readStamp
+
+    /**
+     * Writes the stamp file of the local truststore.
+     *
+     * @param truststoreFile
+     *        the local truststore file
+     * @param caCertsPath
+     *        the cacerts file of the java Runtime
+     * @param hash
+     *        the SHA-256 hash of the java Runtime's cacerts
+     * @throws IOException
+     *         if the stamp file cannot be written
+     */
+    private static void writeStamp(Path truststoreFile, Path caCertsPath, String hash) throws IOException {
+        BasicFileAttributes attributes = Files.readAttributes(caCertsPath, BasicFileAttributes.class);
+        Properties stamp = new Properties();
+        stamp.setProperty(PATH_KEY, caCertsPath.toString());
+        stamp.setProperty(SIZE_KEY, String.valueOf(attributes.size()));
+        stamp.setProperty(MODIFIED_KEY, String.valueOf(attributes.lastModifiedTime().toMillis()));
+        stamp.setProperty(HASH_KEY, hash);
+
+        Path stampFile = truststoreFile.resolveSibling(JDK_STAMP_FILE_NM);
+        Path tempFile = TrustStoreFiles.newTempFile(stampFile);
+        try{
+            OutputStream out = Files.newOutputStream(tempFile);
+            try{
+                stamp.store(out, "java Runtime cacerts the local truststore was created from");
+            }finally{
+                out.close();
+            }// end try...finally
+            TrustStoreFiles.replace(tempFile, stampFile);
+        }finally{
+            Files.deleteIfExists(tempFile);
+        }// end try...finally
+    }// end writeStamp
+
+    /**
+     * @return a new SHA-256 message digest
+     */
+    private static MessageDigest newSha256() {
+        try{
+            return MessageDigest.getInstance("SHA-256");
+        }catch(GeneralSecurityException e){
+            // every java platform is required to support SHA-256
+            throw new IllegalStateException("SHA-256 is not supported by this JVM", e);
+        }// end try...catch
+    }// end newSha256
+
+}// end class
@@ -0,0 +1,74 @@
+/**
+ *
+ */
+package com.omo.free.security.ssl;
+
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.logging.Logger;
+
+/**
+ * This class holds the file operations shared by every writer of the files kept in the truststore directory. Files are always written to a temporary file in the same directory and then moved into place so a reader never sees a partially written file.
+ *
+ * @author Richard Salas
+ */
+public final class TrustStoreFiles {
+
+    private static final String MY_CLASS_NAME = "com.omo.free.security.ssl.TrustStoreFiles";
+    private static Logger myLogger = Logger.getLogger(MY_CLASS_NAME);
+
+    private static final String DEFAULT_PERMISSIONS = "rw-r--r--";
+
+    /**
+     * Utility class, no instances.
+     */
+    private TrustStoreFiles() {
+    }// end constructor
+
+    /**
+     * Creates a temporary file in the directory of the target file.
+     *
+     * @param target
+     *        the file the temporary file will replace
+     * @return the temporary file
+     * @throws IOException
+     *         if the temporary file cannot be created
+     */
+    public static Path newTempFile(Path target) throws IOException {
+        return Files.createTempFile(target.toAbsolutePath().getParent(), target.getFileName().toString(), ".tmp");
+    }// end newTempFile
+
+    /**
+     * Replaces the target file with the temporary file using an atomic move. The permissions of the target file are kept (temporary files are only readable by their owner).
+     *
+     * @param tempFile
+     *        the fully written temporary file
+     * @param target
+     *        the file to replace
+     * @throws IOException
+     *         if the file cannot be moved
+     */
+    public static void replace(Path tempFile, Path target) throws IOException {
+        try{
+            if(Files.exists(target)){
+                Files.setPosixFilePermissions(tempFile, Files.getPosixFilePermissions(target));
+            }else{
+                Files.setPosixFilePermissions(tempFile, PosixFilePermissions.fromString(DEFAULT_PERMISSIONS));
+            }// end if
+        }catch(UnsupportedOperationException e){
+            myLogger.finest("POSIX file permissions are not supported for " + target);
+        }// end try...catch
+
+        try{
+            Files.move(tempFile, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }catch(AtomicMoveNotSupportedException e){
+            myLogger.fine("Atomic moves are not supported for " + target + ", replacing it with a plain move.");
+            Files.move(tempFile, target, StandardCopyOption.REPLACE_EXISTING);
+        }// end try...catch
+    }// end replace
+
+}// end class
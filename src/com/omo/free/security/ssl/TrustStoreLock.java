@@ -0,0 +1,123 @@
+/**
+ *
+ */
+package com.omo.free.security.ssl;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.logging.Logger;
+
+/**
+ * This class is an exclusive lock on a local truststore that is held by at most one writer across threads and processes. Within the JVM the lock is a {@link ReentrantLock} per truststore path, across processes it is a {@link FileLock} on a lock file next
+ * to the truststore (the truststore itself cannot be locked because it is replaced by an atomic move).
+ * <p>
+ * Readers never take this lock, every writer replaces the truststore with an atomic move so a reader always sees a complete file.
+ * </p>
+ *
+ * @author Richard Salas
+ */
+public final class TrustStoreLock {
+
+    private static final String MY_CLASS_NAME = "com.omo.free.security.ssl.TrustStoreLock";
+    private static Logger myLogger = Logger.getLogger(MY_CLASS_NAME);
+
+    /** the suffix of the lock file created next to the truststore */
+    public static final String LOCK_FILE_SUFFIX = ".lock";
+
+    private static final ConcurrentMap<Path, ReentrantLock> JVM_LOCKS = new ConcurrentHashMap<Path, ReentrantLock>();
+
+    private final ReentrantLock jvmLock;
+    private final FileChannel channel;
+    private final FileLock fileLock;
+
+    /**
+     * @param jvmLock
+     *        the lock held within the JVM
+     * @param channel
+     *        the channel of the lock file, null when the lock is re-entered
+     * @param fileLock
+     *        the lock held on the lock file, null when the lock is re-entered
+     */
+    private TrustStoreLock(ReentrantLock jvmLock, FileChannel channel, FileLock fileLock) {
+        this.jvmLock = jvmLock;
+        this.channel = channel;
+        this.fileLock = fileLock;
+    }// end constructor
+
+    /**
+     * Acquires the lock of the truststore, waiting until it is free. The lock is re-entrant for the current thread.
+     *
+     * @param truststoreFile
+     *        the truststore file
+     * @return the lock, which must be released with {@link #release()}
+     * @throws IOException
+     *         if the lock file cannot be created or locked
+     */
+    public static TrustStoreLock acquire(Path truststoreFile) throws IOException {
+        Path key = truststoreFile.toAbsolutePath().normalize();
+        ReentrantLock jvmLock = JVM_LOCKS.get(key);
+        if(jvmLock == null){
+            ReentrantLock newLock = new ReentrantLock();
+            jvmLock = JVM_LOCKS.putIfAbsent(key, newLock);
+            if(jvmLock == null){
+                jvmLock = newLock;
+            }// end if
+        }// end if
+
+        jvmLock.lock();
+        if(jvmLock.getHoldCount() > 1){
+            // the file lock is already held by this thread
+            return new TrustStoreLock(jvmLock, null, null);
+        }// end if
+
+        FileChannel channel = null;
+        try{
+            Path lockFile = key.resolveSibling(key.getFileName() + LOCK_FILE_SUFFIX);
+            channel = FileChannel.open(lockFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+            myLogger.fine("Waiting for the lock on " + lockFile);
+            FileLock fileLock = channel.lock();
+            return new TrustStoreLock(jvmLock, channel, fileLock);
+        }catch(IOException e){
+            if(channel != null){
+                channel.close();
+            }// end if
+            jvmLock.unlock();
+            throw e;
+        }catch(RuntimeException e){
+            if(channel != null){
+                channel.close();
+            }// end if
+            jvmLock.unlock();
+            throw e;
+        }// end try...catch
+    }// end acquire
+
+    /**
+     * Releases the lock.
+     *
+     * @throws IOException
+     *         if the lock file cannot be released
+     */
+    public void release() throws IOException {
+        try{
+            if(this.fileLock != null){
+                this.fileLock.release();
+            }// end if
+        }finally{
+            try{
+                if(this.channel != null){
+                    this.channel.close();
+                }// end if
+            }finally{
+                this.jvmLock.unlock();
+            }// end try...finally
+        }// end try...finally
+    }// end release
+
+}// end class
@@ -0,0 +1,548 @@
+/**
+ *
+ */
+package com.omo.free.security.ssl;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * This class holds the settings used by the {@link TrustedCertficatesStore} when trusting the certificates of one or more secure websites.
+ *
+ * @author Richard Salas
+ */
+public class TrustStoreOptions {
+
+    /** the default number of handshakes that will be ran at the same time */
+    public static final int DEFAULT_THREADS = 8;
+
+    /** the handshake engine using one blocking socket per host */
+    public static final String ENGINE_SOCKET = "socket";
+
+    /** the handshake engine multiplexing non-blocking channels on a few selectors */
+    public static final String ENGINE_NIO = "nio";
+
+    /** the default number of selectors used by the nio handshake engine */
+    public static final int DEFAULT_SELECTORS = 2;
+
+    /** the default time in milliseconds a connect may take */
+    public static final int DEFAULT_CONNECT_TIMEOUT = 10000;
+
+    /** the default time in milliseconds a handshake may take once connected */
+    public static final int DEFAULT_HANDSHAKE_TIMEOUT = 10000;
+
+    /** the default base time in milliseconds waited before the first retry */
+    public static final long DEFAULT_RETRY_BACKOFF = 500L;
+
+    /** the default time a verified handshake is trusted without a new handshake (1 day) */
+    public static final long DEFAULT_PROBE_CACHE_TTL = 24L * 60L * 60L * 1000L;
+
+    /** the default time before a certificate expires that a new handshake is forced (7 days) */
+    public static final long DEFAULT_RENEW_BEFORE = 7L * 24L * 60L * 60L * 1000L;
+
+    /** the default keystore type of the minimal truststore */
+    public static final String DEFAULT_MINIMAL_TYPE = "PKCS12";
+
+    private String keystoreDir = ".";
+    private List<String> urls = new ArrayList<String>();
+    private List<String> certificateFiles = new ArrayList<String>();
+    private int threads = DEFAULT_THREADS;
+    private KeyStoreLoader keyStoreLoader = new FileKeyStoreLoader();
+    private long probeCacheTtl = DEFAULT_PROBE_CACHE_TTL;
+    private long renewBefore = DEFAULT_RENEW_BEFORE;
+    private boolean refresh;
+    private boolean installTrustManager;
+    private boolean storeIntermediates;
+    private boolean pruneExpired;
+    private boolean minimal;
+    private String minimalType = DEFAULT_MINIMAL_TYPE;
+    private List<String> minimalAllow = new ArrayList<String>();
+    private String exportDir;
+    private int sessionCacheSize;
+    private boolean allAddresses;
+    private HostResolver hostResolver = new HostResolver();
+    private TrustMetrics metrics = new TrustMetrics();
+    private String engine = ENGINE_SOCKET;
+    private int selectors = DEFAULT_SELECTORS;
+    private int connectTimeout = DEFAULT_CONNECT_TIMEOUT;
+    private int handshakeTimeout = DEFAULT_HANDSHAKE_TIMEOUT;
+    private long deadline;
+    private int retries;
+    private long retryBackoff = DEFAULT_RETRY_BACKOFF;
+    private long breakerCoolDown;
+
+    /**
+     * Default constructor.
+     */
+    public TrustStoreOptions() {
+    }// end constructor
+
+    /**
+     * Constructor used to create the options for a single secure url.
+     *
+     * @param keystoreDir
+     *        the parent directory where the certificate truststore should be created.
+     * @param httpsURL
+     *        the url of the website to establish a secure handshake (Ex: https://servernamea.isu.net)
+     */
+    public TrustStoreOptions(String keystoreDir, String httpsURL) {
+        this.keystoreDir = keystoreDir;
+        this.threads = 1;
+        addUrl(httpsURL);
+    }// end constructor
+
+    /**
+     * @return the keystoreDir
+     */
+    public String getKeystoreDir() {
+        return keystoreDir;
+    }// end getKeystoreDir
+
+    /**
+     * @param keystoreDir
+     *        the keystoreDir to set
+     */
+    public void setKeystoreDir(String keystoreDir) {
+        this.keystoreDir = keystoreDir;
+    }// end setKeystoreDir
+
+    /**
+     * @return an unmodifiable view of the urls that will be trusted
+     */
+    public List<String> getUrls() {
+        return Collections.unmodifiableList(urls);
+    }// end getUrls
+
+    /**
+     * Adds a secure url to the list of urls that will be trusted. Duplicate urls are ignored.
+     *
+     * @param httpsURL
+     *        the url of the website to establish a secure handshake (Ex: https://servernamea.isu.net)
+     */
+    public void addUrl(String httpsURL) {
+        if(!urls.contains(httpsURL)){
+            urls.add(httpsURL);
+        }// end if
+    }// end addUrl
+
+    /**
+     * @return the PEM, DER or PKCS#7 files whose certificates are added to the truststore without a handshake
+     */
+    public List<String> getCertificateFiles() {
+        return Collections.unmodifiableList(certificateFiles);
+    }// end getCertificateFiles
+
+    /**
+     * Adds a file whose certificates are added to the truststore without a handshake. Duplicate files are ignored.
+     *
+     * @param certificateFile
+     *        the path of a PEM, DER or PKCS#7 file
+     */
+    public void addCertificateFile(String certificateFile) {
+        if(certificateFile == null || certificateFile.trim().isEmpty()){
+            throw new IllegalArgumentException("The certificate file must not be empty");
+        }// end if
+        if(!certificateFiles.contains(certificateFile)){
+            certificateFiles.add(certificateFile);
+        }// end if
+    }// end addCertificateFile
+
+    /**
+     * @return the number of handshakes that will be ran at the same time
+     */
+    public int getThreads() {
+        return threads;
+    }// end getThreads
+
+    /**
+     * @param threads
+     *        the number of handshakes that will be ran at the same time, must be greater than zero
+     */
+    public void setThreads(int threads) {
+        if(threads < 1){
+            throw new IllegalArgumentException("The number of threads must be greater than zero but was " + threads);
+        }// end if
+        this.threads = threads;
+    }// end setThreads
+
+    /**
+     * @return the loader used for loading and storing the local truststore
+     */
+    public KeyStoreLoader getKeyStoreLoader() {
+        return keyStoreLoader;
+    }// end getKeyStoreLoader
+
+    /**
+     * @param keyStoreLoader
+     *        the loader used for loading and storing the local truststore
+     */
+    public void setKeyStoreLoader(KeyStoreLoader keyStoreLoader) {
+        if(keyStoreLoader == null){
+            throw new IllegalArgumentException("The keyStoreLoader must not be null");
+        }// end if
+        this.keyStoreLoader = keyStoreLoader;
+    }// end setKeyStoreLoader
+
+    /**
+     * @return the time in milliseconds a verified handshake is trusted without a new handshake, zero or less disables the handshake cache
+     */
+    public long getProbeCacheTtl() {
+        return probeCacheTtl;
+    }// end getProbeCacheTtl
+
+    /**
+     * @param probeCacheTtl
+     *        the time in milliseconds a verified handshake is trusted without a new handshake, zero or less disables the handshake cache
+     */
+    public void setProbeCacheTtl(long probeCacheTtl) {
+        this.probeCacheTtl = probeCacheTtl;
+    }// end setProbeCacheTtl
+
+    /**
+     * @return the time in milliseconds before a certificate expires that a new handshake is forced
+     */
+    public long getRenewBefore() {
+        return renewBefore;
+    }// end getRenewBefore
+
+    /**
+     * @param renewBefore
+     *        the time in milliseconds before a certificate expires that a new handshake is forced
+     */
+    public void setRenewBefore(long renewBefore) {
+        this.renewBefore = renewBefore;
+    }// end setRenewBefore
+
+    /**
+     * @return true if a handshake should be made with every host even when the handshake cache holds a valid entry
+     */
+    public boolean isRefresh() {
+        return refresh;
+    }// end isRefresh
+
+    /**
+     * @param refresh
+     *        true if a handshake should be made with every host even when the handshake cache holds a valid entry
+     */
+    public void setRefresh(boolean refresh) {
+        this.refresh = refresh;
+    }// end setRefresh
+
+    /**
+     * @return true if a {@link ReloadableTrustManager} holding the local truststore should be installed as the default of the JVM
+     */
+    public boolean isInstallTrustManager() {
+        return installTrustManager;
+    }// end isInstallTrustManager
+
+    /**
+     * @param installTrustManager
+     *        true if a {@link ReloadableTrustManager} holding the local truststore should be installed as the default of the JVM
+     */
+    public void setInstallTrustManager(boolean installTrustManager) {
+        this.installTrustManager = installTrustManager;
+    }// end setInstallTrustManager
+
+    /**
+     * @return true if the intermediate certificates of a chain are stored along with the top certificate of the chain
+     */
+    public boolean isStoreIntermediates() {
+        return storeIntermediates;
+    }// end isStoreIntermediates
+
+    /**
+     * @param storeIntermediates
+     *        true if the intermediate certificates of a chain are stored along with the top certificate of the chain
+     */
+    public void setStoreIntermediates(boolean storeIntermediates) {
+        this.storeIntermediates = storeIntermediates;
+    }// end setStoreIntermediates
+
+    /**
+     * @return true if every expired certificate entry is removed from the local truststore
+     */
+    public boolean isPruneExpired() {
+        return pruneExpired;
+    }// end isPruneExpired
+
+    /**
+     * @param pruneExpired
+     *        true if every expired certificate entry is removed from the local truststore
+     */
+    public void setPruneExpired(boolean pruneExpired) {
+        this.pruneExpired = pruneExpired;
+    }// end setPruneExpired
+
+    /**
+     * @return true if a {@link MinimalTrustStore} holding only the trust anchors of the urls (and the allowed entries) should be written and used as the truststore of the JVM
+     */
+    public boolean isMinimal() {
+        return minimal;
+    }// end isMinimal
+
+    /**
+     * @param minimal
+     *        true if a {@link MinimalTrustStore} holding only the trust anchors of the urls (and the allowed entries) should be written and used as the truststore of the JVM
+     */
+    public void setMinimal(boolean minimal) {
+        this.minimal = minimal;
+    }// end setMinimal
+
+    /**
+     * @return the keystore type of the minimal truststore, PKCS12 or JKS
+     */
+    public String getMinimalType() {
+        return minimalType;
+    }// end getMinimalType
+
+    /**
+     * @param minimalType
+     *        the keystore type of the minimal truststore, PKCS12 or JKS
+     */
+    public void setMinimalType(String minimalType) {
+        if(!"PKCS12".equalsIgnoreCase(minimalType) && !"JKS".equalsIgnoreCase(minimalType)){
+            throw new IllegalArgumentException("The minimal truststore type must be PKCS12 or JKS but was " + minimalType);
+        }// end if
+        this.minimalType = minimalType.toUpperCase(Locale.ROOT);
+    }// end setMinimalType
+
+    /**
+     * @return the aliases or SHA-256 fingerprints of the entries of the local truststore that are always kept in the minimal truststore
+     */
+    public List<String> getMinimalAllow() {
+        return Collections.unmodifiableList(minimalAllow);
+    }// end getMinimalAllow
+
+    /**
+     * @param entry
+     *        the alias or SHA-256 fingerprint of an entry of the local truststore that is always kept in the minimal truststore
+     */
+    public void addMinimalAllow(String entry) {
+        if(entry == null || entry.trim().isEmpty()){
+            throw new IllegalArgumentException("The allowed entry must not be empty");
+        }// end if
+        this.minimalAllow.add(entry.trim());
+    }// end addMinimalAllow
+
+    /**
+     * @return the directory the certificates of the truststore are exported to as PEM files, null when they are not exported
+     */
+    public String getExportDir() {
+        return exportDir;
+    }// end getExportDir
+
+    /**
+     * @param exportDir
+     *        the directory the certificates of the truststore are exported to as PEM files, null to not export them
+     */
+    public void setExportDir(String exportDir) {
+        this.exportDir = exportDir;
+    }// end setExportDir
+
+    /**
+     * @return the number of TLS sessions the default SSLContext of the JVM keeps for resuming, zero when the handshakes do not share the default SSLContext
+     */
+    public int getSessionCacheSize() {
+        return sessionCacheSize;
+    }// end getSessionCacheSize
+
+    /**
+     * @param sessionCacheSize
+     *        the number of TLS sessions the default SSLContext of the JVM keeps for resuming, zero for handshakes that do not share the default SSLContext
+     */
+    public void setSessionCacheSize(int sessionCacheSize) {
+        if(sessionCacheSize < 0){
+            throw new IllegalArgumentException("The session cache size must not be negative but was " + sessionCacheSize);
+        }// end if
+        this.sessionCacheSize = sessionCacheSize;
+    }// end setSessionCacheSize
+
+    /**
+     * @return true if every address of a host should be handshaked with instead of the first one, so the chains of every server behind a load balanced name are trusted in one run
+     */
+    public boolean isAllAddresses() {
+        return allAddresses;
+    }// end isAllAddresses
+
+    /**
+     * @param allAddresses
+     *        true if every address of a host should be handshaked with instead of the first one
+     */
+    public void setAllAddresses(boolean allAddresses) {
+        this.allAddresses = allAddresses;
+    }// end setAllAddresses
+
+    /**
+     * @return the resolver the addresses of the hosts are looked up with when every address is handshaked with
+     */
+    public HostResolver getHostResolver() {
+        return hostResolver;
+    }// end getHostResolver
+
+    /**
+     * @param hostResolver
+     *        the resolver the addresses of the hosts are looked up with, share one between the options of a build to look each host up once
+     */
+    public void setHostResolver(HostResolver hostResolver) {
+        if(hostResolver == null){
+            throw new IllegalArgumentException("The hostResolver must not be null");
+        }// end if
+        this.hostResolver = hostResolver;
+    }// end setHostResolver
+
+    /**
+     * @return the metrics the time spent in each phase and the outcome of each server are recorded to
+     */
+    public TrustMetrics getMetrics() {
+        return metrics;
+    }// end getMetrics
+
+    /**
+     * @param metrics
+     *        the metrics the time spent in each phase and the outcome of each server are recorded to
+     */
+    public void setMetrics(TrustMetrics metrics) {
+        if(metrics == null){
+            throw new IllegalArgumentException("The metrics must not be null");
+        }// end if
+        this.metrics = metrics;
+    }// end setMetrics
+
+    /**
+     * @return the handshake engine, {@link #ENGINE_SOCKET} or {@link #ENGINE_NIO}
+     */
+    public String getEngine() {
+        return engine;
+    }// end getEngine
+
+    /**
+     * @param engine
+     *        the handshake engine, {@link #ENGINE_SOCKET} or {@link #ENGINE_NIO}
+     */
+    public void setEngine(String engine) {
+        if(!ENGINE_SOCKET.equals(engine) && !ENGINE_NIO.equals(engine)){
+            throw new IllegalArgumentException("The engine must be " + ENGINE_SOCKET + " or " + ENGINE_NIO + " but was " + engine);
+        }// end if
+        this.engine = engine;
+    }// end setEngine
+
+    /**
+     * @return the number of selectors (and threads) used by the nio handshake engine
+     */
+    public int getSelectors() {
+        return selectors;
+    }// end getSelectors
+
+    /**
+     * @param selectors
+     *        the number of selectors (and threads) used by the nio handshake engine, must be greater than zero
+     */
+    public void setSelectors(int selectors) {
+        if(selectors < 1){
+            throw new IllegalArgumentException("The number of selectors must be greater than zero but was " + selectors);
+        }// end if
+        this.selectors = selectors;
+    }// end setSelectors
+
+    /**
+     * @return the time in milliseconds a connect may take
+     */
+    public int getConnectTimeout() {
+        return connectTimeout;
+    }// end getConnectTimeout
+
+    /**
+     * @param connectTimeout
+     *        the time in milliseconds a connect may take, must be greater than zero
+     */
+    public void setConnectTimeout(int connectTimeout) {
+        if(connectTimeout < 1){
+            throw new IllegalArgumentException("The connect timeout must be greater than zero but was " + connectTimeout);
+        }// end if
+        this.connectTimeout = connectTimeout;
+    }// end setConnectTimeout
+
+    /**
+     * @return the time in milliseconds a handshake may take once connected
+     */
+    public int getHandshakeTimeout() {
+        return handshakeTimeout;
+    }// end getHandshakeTimeout
+
+    /**
+     * @param handshakeTimeout
+     *        the time in milliseconds a handshake may take once connected, must be greater than zero
+     */
+    public void setHandshakeTimeout(int handshakeTimeout) {
+        if(handshakeTimeout < 1){
+            throw new IllegalArgumentException("The handshake timeout must be greater than zero but was " + handshakeTimeout);
+        }// end if
+        this.handshakeTimeout = handshakeTimeout;
+    }// end setHandshakeTimeout
+
+    /**
+     * @return the time in milliseconds every handshake (including retries) must finish within, zero or less means no deadline
+     */
+    public long getDeadline() {
+        return deadline;
+    }// end getDeadline
+
+    /**
+     * @param deadline
+     *        the time in milliseconds every handshake (including retries) must finish within, zero or less means no deadline
+     */
+    public void setDeadline(long deadline) {
+        this.deadline = deadline;
+    }// end setDeadline
+
+    /**
+     * @return the number of times a failed connect or handshake is retried
+     */
+    public int getRetries() {
+        return retries;
+    }// end getRetries
+
+    /**
+     * @param retries
+     *        the number of times a failed connect or handshake is retried
+     */
+    public void setRetries(int retries) {
+        if(retries < 0){
+            throw new IllegalArgumentException("The number of retries must not be negative but was " + retries);
+        }// end if
+        this.retries = retries;
+    }// end setRetries
+
+    /**
+     * @return the base time in milliseconds waited before the first retry, it doubles with every retry and is jittered
+     */
+    public long getRetryBackoff() {
+        return retryBackoff;
+    }// end getRetryBackoff
+
+    /**
+     * @param retryBackoff
+     *        the base time in milliseconds waited before the first retry, it doubles with every retry and is jittered
+     */
+    public void setRetryBackoff(long retryBackoff) {
+        this.retryBackoff = retryBackoff;
+    }// end setRetryBackoff
+
+    /**
+     * @return the time in milliseconds a host that failed is skipped, zero or less disables the circuit breaker
+     */
+    public long getBreakerCoolDown() {
+        return breakerCoolDown;
+    }// end getBreakerCoolDown
+
+    /**
+     * @param breakerCoolDown
+     *        the time in milliseconds a host that failed is skipped, zero or less disables the circuit breaker
+     */
+    public void setBreakerCoolDown(long breakerCoolDown) {
+        this.breakerCoolDown = breakerCoolDown;
+    }// end setBreakerCoolDown
+
+}// end class
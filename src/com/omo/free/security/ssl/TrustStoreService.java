@@ -0,0 +1,1447 @@
+/**
+ *
+ */
+package com.omo.free.security.ssl;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.GeneralSecurityException;
+import java.security.KeyManagementException;
+import java.security.KeyStore;
+import java.security.KeyStoreException;
+import java.security.NoSuchAlgorithmException;
+import java.security.cert.Certificate;
+import java.security.cert.CertificateException;
+import java.security.cert.CertificateExpiredException;
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLException;
+import javax.net.ssl.SSLParameters;
+import javax.net.ssl.SSLSocket;
+import javax.net.ssl.SSLSocketFactory;
+import javax.net.ssl.TrustManager;
+import javax.net.ssl.TrustManagerFactory;
+import javax.net.ssl.X509TrustManager;
+
+/**
+ * This class trusts the certificates of secure websites in a local truststore and reports what it did for every url as a {@link TrustResult}. An instance is bound to the truststore directory of its options and is meant to be kept and called again, from
+ * as many threads as needed: the keystore and the trust manager built from it are loaded once and only rebuilt when the truststore changes, and the handshakes run without holding any lock.
+ * <p>
+ * Changes to a truststore are made while holding one of a fixed set of locks picked by the path of the truststore, so callers working on different truststores rarely wait on each other while callers working on the same truststore (through this or any
+ * other instance) never change it at the same time. Unlike the {@link TrustedCertficatesStore} this class never changes the system properties of the JVM.
+ * </p>
+ *
+ * @author Richard Salas
+ */
+public class TrustStoreService {
+
+    private static final String MY_CLASS_NAME = "com.omo.free.security.ssl.TrustStoreService";
+    private static Logger myLogger = Logger.getLogger(MY_CLASS_NAME);
+
+    private static final String TRUST_STORE_NM = "cacerts";
+
+    /** the least time in milliseconds waited on the session ticket of a TLS 1.3 server */
+    private static final long MIN_SESSION_TICKET_WAIT = 20L;
+
+    private static final ReentrantLock[] STRIPES = new ReentrantLock[64];
+    static{
+        for(int i = 0; i < STRIPES.length; i++){
+            STRIPES[i] = new ReentrantLock();
+        }// end for
+    }// end static
+
+    private final TrustStoreOptions options;
+    private final TrustMetrics metrics;
+    private final Path truststoreFile;
+    private final ReentrantLock stripe;
+
+    // the loaded truststore and the trust manager built from it, guarded by the stripe
+    private KeyStore keystore;
+    private String keystoreStamp;
+    private X509TrustManager trustManager;
+    private int trustManagerSize = -1;
+
+    /**
+     * Constructor used to create an instance of the TrustStoreService. The truststore directory is created when it does not exist and the local truststore is created, or rebuilt when the trust anchors of the running java Runtime have changed.
+     *
+     * @param options
+     *        the options holding the truststore directory and how the handshakes are ran, the urls of the options are not used
+     * @throws IOException
+     *         if the truststore directory cannot be created
+     */
+    public TrustStoreService(TrustStoreOptions options) throws IOException {
+        myLogger.entering(MY_CLASS_NAME, "TrustStoreService", options);
+
+        String trustStoreDirPath = options.getKeystoreDir();
+
+        // added this logic to attempt to create auto create local directory
+        Files.createDirectories(Paths.get(trustStoreDirPath));
+
+        if(!Files.exists(Paths.get(trustStoreDirPath))){
+            throw new IllegalArgumentException("The directory path " + String.valueOf(trustStoreDirPath) + " does not exist!  An attempt was also made to create this directory structure but failed.  It must be created before creating an instance of the TrustStoreService");
+        }// end if
+
+        this.options = options;
+        this.metrics = options.getMetrics();
+        this.truststoreFile = Paths.get(trustStoreDirPath, TRUST_STORE_NM);
+        this.stripe = STRIPES[(this.truststoreFile.toAbsolutePath().normalize().hashCode() & 0x7fffffff) % STRIPES.length];
+
+        this.stripe.lock();
+        try{
+            long bootstrapStart = TrustMetrics.start();
+            if(!Files.exists(this.truststoreFile)){
+                // create the local truststore, any cached handshake results belong to the old truststore
+                createLocalTrustStore();
+                Files.deleteIfExists(this.truststoreFile.resolveSibling(HandshakeCache.CACHE_FILE_NM));
+            }else if(refreshLocalTrustStore()){
+                // hosts trusted through a root of the old java Runtime need a new handshake
+                Files.deleteIfExists(this.truststoreFile.resolveSibling(HandshakeCache.CACHE_FILE_NM));
+            }// end if
+            this.metrics.record(TrustMetrics.Phase.BOOTSTRAP, bootstrapStart);
+        }finally{
+            this.stripe.unlock();
+        }// end try...finally
+
+        myLogger.exiting(MY_CLASS_NAME, "TrustStoreService", this.truststoreFile);
+    }// end constructor
+
+    /**
+     * Validates the format of the url.
+     *
+     * @param url
+     *        the url to validate
+     */
+    static void validateUrl(String url) {
+        if(url == null || !url.startsWith("https://") || url.endsWith("/")){
+            throw new IllegalArgumentException("The url is incorrectly formatted: " + String.valueOf(url) + ".  Please send a correctly formatted URL ie. https://www.abc.com ");
+        }// end if
+    }// end validateUrl
+
+    /**
+     * This method will create a local truststore. This method will copy the currently running java Runtime's cacerts file to local destination.
+     */
+    private void createLocalTrustStore() {
+        myLogger.entering(MY_CLASS_NAME, "createLocalTrustStore");
+
+        try{
+            TrustStoreBootstrap.create(this.truststoreFile, "changeit".toCharArray());// this is the default password
+        }catch(GeneralSecurityException e){
+            myLogger.log(Level.SEVERE, "GeneralSecurityException occurred during the createLocalTrustStore process.  Error message is: " + e.getMessage(), e);
+        }catch(IOException e){
+            myLogger.log(Level.SEVERE, "IOException occurred during the createLocalTrustStore process.  Error message is: " + e.getMessage(), e);
+        }catch(Exception e){
+            myLogger.log(Level.SEVERE, "Exception occurred during the createLocalTrustStore process.  Error message is: " + e.getMessage(), e);
+        }// end try...catch
+        myLogger.exiting(MY_CLASS_NAME, "createLocalTrustStore");
+    }// end createLocalTrustStore
+
+    /**
+     * This method will rebuild the local truststore when the trust anchors of the currently running java Runtime have changed since it was created. The certificates added by the {@link TrustedCertficatesStore} are kept.
+     *
+     * @return true if the local truststore was rebuilt
+     */
+    private boolean refreshLocalTrustStore() {
+        myLogger.entering(MY_CLASS_NAME, "refreshLocalTrustStore");
+
+        boolean rebuilt = false;
+        try{
+            rebuilt = TrustStoreBootstrap.refreshIfJdkChanged(this.truststoreFile, "changeit".toCharArray());// this is the default password
+        }catch(GeneralSecurityException e){
+            myLogger.log(Level.SEVERE, "GeneralSecurityException occurred during the refreshLocalTrustStore process.  Error message is: " + e.getMessage(), e);
+        }catch(IOException e){
+            myLogger.log(Level.SEVERE, "IOException occurred during the refreshLocalTrustStore process.  Error message is: " + e.getMessage(), e);
+        }// end try...catch
+        myLogger.exiting(MY_CLASS_NAME, "refreshLocalTrustStore", rebuilt);
+        return rebuilt;
+    }// end refreshLocalTrustStore
+
+    /**
+     * This method will make sure that the web certificate is trusted, if it is not then the certificate is stored in the truststore.
+     *
+     * @param url
+     *        the url used to check for certificate (Ex: https://servernamea.isu.net:8443)
+     * @return what was done for the url
+     */
+    public TrustResult check(String url) {
+        return checkAll(Collections.singletonList(url)).get(0);
+    }// end check
+
+    /**
+     * This method will check to see if the web certificates of the given urls are trusted already. The handshakes are ran concurrently against the loaded truststore and every certificate that is not trusted is saved to the truststore with a single
+     * store.
+     *
+     * @param urls
+     *        the urls used to check for certificates
+     * @return what was done for every url, in the same order as the urls
+     */
+    public List<TrustResult> checkAll(List<String> urls) {
+        myLogger.entering(MY_CLASS_NAME, "checkAll", urls);
+
+        for(String url : urls){
+            validateUrl(url);
+        }// end for
+
+        char[] passphrase = "changeit".toCharArray(); // default password
+
+        List<ProbeResult> all = new ArrayList<ProbeResult>(urls.size());
+        for(String url : urls){
+            all.add(new ProbeResult(url, null));
+        }// end for
+
+        HandshakeCache handshakeCache = null;
+        CircuitBreaker circuitBreaker = null;
+        Exception failure = null;
+        try{
+            // hosts verified recently do not need a new handshake
+            if(this.options.getProbeCacheTtl() > 0){
+                handshakeCache = new HandshakeCache(this.truststoreFile.getParent());
+                if(!this.options.isRefresh()){
+                    Map<ProbeResult, List<String>> cached = new LinkedHashMap<ProbeResult, List<String>>();
+                    for(ProbeResult target : all){
+                        // entries recorded without the trust anchor of the host cannot be checked against the truststore and need a new handshake
+                        List<String> anchors = handshakeCache.getAnchors(target.host, target.port);
+                        if(handshakeCache.isValid(target.host, target.port, this.options.getProbeCacheTtl(), this.options.getRenewBefore()) && !anchors.isEmpty()){
+                            cached.put(target, anchors);
+                        }// end if
+                    }// end for
+                    if(!cached.isEmpty()){
+                        storedAnchors(cached, passphrase);
+                    }// end if
+                    for(Map.Entry<ProbeResult, List<String>> entry : cached.entrySet()){
+                        ProbeResult target = entry.getKey();
+                        myLogger.info("Host certificate " + target.host + ":" + target.port + " was verified recently, skipping the handshake.");
+                        target.outcome = TrustMetrics.Outcome.CACHED;
+                        target.anchors.addAll(entry.getValue());
+                        this.metrics.count(TrustMetrics.Outcome.CACHED, target.host, target.port);
+                    }// end for
+                }// end if
+            }// end if
+
+            // hosts that failed recently are skipped until the cool-down has passed
+            if(this.options.getBreakerCoolDown() > 0){
+                circuitBreaker = new CircuitBreaker(this.truststoreFile.getParent());
+                for(ProbeResult target : all){
+                    if(target.outcome == null && circuitBreaker.isOpen(target.host, target.port, this.options.getBreakerCoolDown())){
+                        myLogger.warning("Host " + target.host + ":" + target.port + " failed within the last " + (this.options.getBreakerCoolDown() / 60000L) + " minute(s), skipping the handshake.");
+                        target.outcome = TrustMetrics.Outcome.SKIPPED;
+                        this.metrics.count(TrustMetrics.Outcome.SKIPPED, target.host, target.port);
+                    }// end if
+                }// end for
+            }// end if
+
+            List<Integer> probeIndexes = new ArrayList<Integer>(all.size());
+            List<String> probeUrls = new ArrayList<String>(all.size());
+            for(int i = 0; i < all.size(); i++){
+                if(all.get(i).outcome == null){
+                    probeIndexes.add(i);
+                    probeUrls.add(urls.get(i));
+                }// end if
+            }// end for
+
+            if(probeUrls.isEmpty() && !this.options.isPruneExpired()){
+                myLogger.exiting(MY_CLASS_NAME, "checkAll");
+                return toTrustResults(urls, all);
+            }// end if
+
+            // the handshakes run without holding the lock, the results replace the targets they were ran for
+            List<ProbeResult> results = new ArrayList<ProbeResult>();
+            List<ProbeResult> urlResults = new ArrayList<ProbeResult>();
+            if(!probeUrls.isEmpty()){
+                // a url is handshaked with once per address when every address is asked for, with the host name still sent to each of them
+                List<List<InetAddress>> addresses = resolveAddresses(probeUrls);
+                List<String> targetUrls = new ArrayList<String>(probeUrls.size());
+                List<InetAddress> targetAddresses = new ArrayList<InetAddress>(probeUrls.size());
+                for(int i = 0; i < probeUrls.size(); i++){
+                    for(InetAddress address : addresses.get(i)){
+                        targetUrls.add(probeUrls.get(i));
+                        targetAddresses.add(address);
+                    }// end for
+                }// end for
+                results = probeAll(targetUrls, targetAddresses, trustManager(passphrase));
+
+                int next = 0;
+                for(int i = 0; i < probeUrls.size(); i++){
+                    List<ProbeResult> addressResults = results.subList(next, next + addresses.get(i).size());
+                    next += addressResults.size();
+                    ProbeResult urlResult = addressResults.get(0);
+                    if(addressResults.get(0).address != null){
+                        urlResult = new ProbeResult(probeUrls.get(i), null);
+                        urlResult.addressResults.addAll(addressResults);
+                    }// end if
+                    urlResults.add(urlResult);
+                    all.set(probeIndexes.get(i), urlResult);
+                }// end for
+            }// end if
+
+            this.stripe.lock();
+            try{
+                KeyStore ks = loadKeyStore(passphrase);
+
+                // the keystore may be shared with other tasks running in parallel so all changes are made while holding its lock
+                synchronized(ks){
+                    // hosts behind the same certificate authority share one entry, certificates already stored are found by fingerprint
+                    FingerprintIndex index = FingerprintIndex.of(ks, this.truststoreFile);
+
+                    // a chain that expired or changed only replaces the entries of its own host, every other entry of the truststore is kept
+                    List<String> taskAliases = null;
+                    List<String> removed = new ArrayList<String>();
+                    Map<String, Set<String>> hostFingerprints = new LinkedHashMap<String, Set<String>>();
+                    for(ProbeResult result : results){
+                        if(result.chain != null){
+                            if(!hostFingerprints.containsKey(result.host)){
+                                hostFingerprints.put(result.host, new HashSet<String>());
+                            }// end if
+                            for(X509Certificate certificate : result.chain){
+                                hostFingerprints.get(result.host).add(CertificateFingerprints.sha256(certificate));
+                            }// end for
+                        }// end if
+                    }// end for
+                    Set<String> staleHosts = new HashSet<String>();
+                    Set<String> replacedHosts = new HashSet<String>();
+                    for(ProbeResult result : results){
+                        if(result.certificate != null && staleHosts.add(result.host)){
+                            if(taskAliases == null){
+                                taskAliases = new ArrayList<String>();
+                                for(String alias : Collections.list(ks.aliases())){
+                                    if(TrustedCertficatesStore.isTaskAlias(alias)){
+                                        taskAliases.add(alias);
+                                    }// end if
+                                }// end for
+                            }// end if
+                            // the entries still sent by any address of the host are kept
+                            List<String> stale = removeStaleEntries(ks, index, taskAliases, result.host, hostFingerprints.get(result.host));
+                            if(!stale.isEmpty()){
+                                replacedHosts.add(result.host);
+                                removed.addAll(stale);
+                            }// end if
+                        }// end if
+                    }// end for
+                    if(this.options.isPruneExpired()){
+                        removed.addAll(pruneExpiredEntries(ks, index));
+                    }// end if
+
+                    int added = 0;
+                    Set<X509Certificate> addedCertificates = new HashSet<X509Certificate>();
+                    for(ProbeResult result : results){
+                        if(result.certificate != null){
+                            int last = result.chain.length - 1;
+                            int first = this.options.isStoreIntermediates() ? Math.min(1, last) : last;
+                            for(int i = last; i >= first; i--){
+                                X509Certificate certificate = result.chain[i];
+                                String existing = index.find(ks, certificate);
+                                if(existing != null){
+                                    myLogger.info("Certificate " + certificate.getSubjectX500Principal() + " of " + result.host + " is already stored as " + existing + ".");
+                                    result.stored |= addedCertificates.contains(certificate);
+                                }else{
+                                    // the top of the chain keeps the alias of the host, intermediates are numbered by their position in the chain
+                                    String position = (i == last) ? "" : "-" + i;
+                                    String alias = result.host + position + TrustedCertficatesStore.ALIAS_SUFFIX;
+                                    if(result.address != null && ks.containsAlias(alias)){
+                                        // another address of the host sent a different chain, each chain keeps its own entry
+                                        alias = result.host + "-ip-" + result.address.getHostAddress().replaceAll("[^0-9A-Za-z.]", "_") + position + TrustedCertficatesStore.ALIAS_SUFFIX;
+                                    }// end if
+                                    ks.setCertificateEntry(alias, certificate);
+                                    index.added(alias, certificate);
+                                    myLogger.info("Added new " + alias + " certificate to the keystore.");
+                                    addedCertificates.add(certificate);
+                                    result.stored = true;
+                                    added++;
+                                }// end if
+                            }// end for
+                        }// end if
+                    }// end for
+
+                    // an expired chain is only trusted once it changed the truststore, a chain whose anchor is already stored stays expired
+                    for(ProbeResult result : results){
+                        if(result.certificate != null && result.expired){
+                            result.trusted = result.stored || replacedHosts.contains(result.host);
+                            if(!result.trusted){
+                                myLogger.warning("The expired certificate chain of host " + result.host + ":" + result.port + " ends at an entry already stored in the keystore, nothing was replaced.");
+                            }// end if
+                        }// end if
+                    }// end for
+
+                    if(added > 0 || !removed.isEmpty()){
+                        long storeStart = TrustMetrics.start();
+                        this.options.getKeyStoreLoader().store(this.truststoreFile, ks, passphrase);
+                        this.metrics.record(TrustMetrics.Phase.STORE, storeStart);
+                        index.save();
+                        this.keystoreStamp = FingerprintIndex.stamp(this.truststoreFile);
+                        this.trustManager = null;
+                        myLogger.info("Successfully saved " + added + " new and removed " + removed.size() + " stale certificate(s) in " + this.truststoreFile.toString());
+                    }// end if
+
+                    // only the hosts whose cached chain or anchor used a removed entry need a new handshake
+                    if(handshakeCache != null && !removed.isEmpty()){
+                        handshakeCache.invalidateCertificates(removed);
+                    }// end if
+
+                    // the trust anchor of each host is the entry of the local truststore its chain ends at, a certificate added above is its own anchor
+                    if(this.options.isMinimal() || handshakeCache != null){
+                        MinimalTrustStore anchors = new MinimalTrustStore(ks);
+                        for(ProbeResult result : results){
+                            if(result.trusted && result.chain != null && anchors.findAnchor(result.chain) != null){
+                                result.anchors.add(anchors.findAnchor(result.chain));
+                            }// end if
+                        }// end for
+                    }// end if
+                }// end synchronized
+            }finally{
+                this.stripe.unlock();
+            }// end try...finally
+
+            for(ProbeResult result : results){
+                if(result.error != null || !result.trusted){
+                    result.outcome = TrustMetrics.Outcome.FAILED;
+                }else if(result.certificate == null || (!result.expired && !result.stored)){
+                    // a chain stored by another call since the trust manager was built is trusted already
+                    result.outcome = TrustMetrics.Outcome.TRUSTED;
+                }else{
+                    result.outcome = result.expired ? TrustMetrics.Outcome.REFRESHED : TrustMetrics.Outcome.ADDED;
+                }// end if
+            }// end for
+            for(ProbeResult result : urlResults){
+                if(!result.addressResults.isEmpty()){
+                    summarize(result);
+                }// end if
+                this.metrics.count(result.outcome, result.host, result.port);
+            }// end for
+
+            if(handshakeCache != null){
+                for(ProbeResult result : urlResults){
+                    if(result.trusted && !result.chains().isEmpty()){
+                        handshakeCache.verified(result.host, result.port, result.chains(), result.anchors);
+                    }else{
+                        handshakeCache.invalidate(result.host, result.port);
+                    }// end if
+                }// end for
+                handshakeCache.save();
+            }// end if
+
+            if(circuitBreaker != null){
+                for(ProbeResult result : urlResults){
+                    if(result.error != null){
+                        circuitBreaker.failed(result.host, result.port);
+                    }else{
+                        circuitBreaker.succeeded(result.host, result.port);
+                    }// end if
+                }// end for
+                circuitBreaker.save();
+            }// end if
+        }catch(NoSuchAlgorithmException e){
+            myLogger.log(Level.SEVERE, "NoSuchAlgorithmException occurred during the checkAll process.  Error message is: " + e.getMessage(), e);
+            failure = e;
+        }catch(FileNotFoundException e){
+            myLogger.log(Level.SEVERE, "FileNotFoundException occurred during the checkAll process.  Error message is: " + e.getMessage(), e);
+            failure = e;
+        }catch(KeyStoreException e){
+            myLogger.log(Level.SEVERE, "KeyStoreException occurred during the checkAll process.  Error message is: " + e.getMessage(), e);
+            failure = e;
+        }catch(CertificateException e){
+            myLogger.log(Level.SEVERE, "CertificateException occurred during the checkAll process.  Error message is: " + e.getMessage(), e);
+            failure = e;
+        }catch(IOException e){
+            myLogger.log(Level.SEVERE, "IOException occurred during the checkAll process.  Error message is: " + e.getMessage(), e);
+            failure = e;
+        }catch(Exception e){
+            myLogger.log(Level.SEVERE, "Exception occurred during the checkAll process.  Error message is: " + e.getMessage(), e);
+            failure = e;
+        }// end try...catch
+
+        // urls the failure left without an outcome could not be checked
+        if(failure != null){
+            for(ProbeResult result : all){
+                if(result.outcome == null){
+                    result.outcome = TrustMetrics.Outcome.FAILED;
+                    result.error = (result.error != null) ? result.error : failure;
+                    this.metrics.count(TrustMetrics.Outcome.FAILED, result.host, result.port);
+                }// end if
+            }// end for
+        }// end if
+
+        myLogger.exiting(MY_CLASS_NAME, "checkAll");
+        return toTrustResults(urls, all);
+    }// end checkAll
+
+    /**
+     * @param urls
+     *        the urls that were checked
+     * @param all
+     *        the result of every url, in the same order as the urls
+     * @return the results handed to the caller
+     */
+    private static List<TrustResult> toTrustResults(List<String> urls, List<ProbeResult> all) {
+        List<TrustResult> trustResults = new ArrayList<TrustResult>(all.size());
+        for(int i = 0; i < all.size(); i++){
+            trustResults.add(toTrustResult(urls.get(i), all.get(i)));
+        }// end for
+        return trustResults;
+    }// end toTrustResults
+
+    /**
+     * @param url
+     *        the url that was checked
+     * @param result
+     *        the result of the url or of one of the addresses of its host
+     * @return the result handed to the caller
+     */
+    private static TrustResult toTrustResult(String url, ProbeResult result) {
+        List<TrustResult> addressResults = new ArrayList<TrustResult>(result.addressResults.size());
+        for(ProbeResult addressResult : result.addressResults){
+            addressResults.add(toTrustResult(url, addressResult));
+        }// end for
+        return new TrustResult(url, result.host, result.port, result.address, result.outcome, result.chain, result.anchors, result.connectNanos, result.handshakeNanos, result.error, addressResults);
+    }// end toTrustResult
+
+    /**
+     * This method will sum up the results of the addresses of a host as the result of its url. The url failed when any address failed, otherwise it was refreshed or added when any address was and trusted when every address was. The handshake
+     * times are those of the slowest address, the addresses were handshaked with at the same time.
+     *
+     * @param result
+     *        the result of the url holding the results of the addresses
+     */
+    private static void summarize(ProbeResult result) {
+        result.trusted = true;
+        for(ProbeResult addressResult : result.addressResults){
+            result.trusted &= addressResult.trusted && addressResult.error == null;
+            if(result.error == null){
+                result.error = addressResult.error;
+            }// end if
+            if(result.chain == null){
+                result.chain = addressResult.chain;
+            }// end if
+            for(String anchor : addressResult.anchors){
+                if(!result.anchors.contains(anchor)){
+                    result.anchors.add(anchor);
+                }// end if
+            }// end for
+            result.connectNanos = Math.max(result.connectNanos, addressResult.connectNanos);
+            result.handshakeNanos = Math.max(result.handshakeNanos, addressResult.handshakeNanos);
+        }// end for
+
+        List<TrustMetrics.Outcome> outcomes = new ArrayList<TrustMetrics.Outcome>();
+        for(ProbeResult addressResult : result.addressResults){
+            outcomes.add(addressResult.outcome);
+        }// end for
+        if(outcomes.contains(TrustMetrics.Outcome.FAILED)){
+            result.outcome = TrustMetrics.Outcome.FAILED;
+        }else if(outcomes.contains(TrustMetrics.Outcome.REFRESHED)){
+            result.outcome = TrustMetrics.Outcome.REFRESHED;
+        }else if(outcomes.contains(TrustMetrics.Outcome.ADDED)){
+            result.outcome = TrustMetrics.Outcome.ADDED;
+        }else{
+            result.outcome = TrustMetrics.Outcome.TRUSTED;
+        }// end if
+        myLogger.info("Host " + result.host + ":" + result.port + " was handshaked with at " + result.addressResults.size() + " address(es) and sent " + result.chains().size() + " distinct chain(s), " + result.outcome.getName() + ".");
+    }// end summarize
+
+    /**
+     * This method will resolve every address of the hosts of the urls when every address should be handshaked with. The hosts are looked up concurrently through the {@link HostResolver} of the options, a host that cannot be resolved is left to the
+     * connect, which fails it the way a single handshake does.
+     *
+     * @param urls
+     *        the urls that will be handshaked with
+     * @return the addresses of the host of every url, in the same order as the urls, a single null address when the host name is resolved by the connect
+     * @throws InterruptedException
+     *         if the thread is interrupted while waiting on the lookups
+     */
+    private List<List<InetAddress>> resolveAddresses(List<String> urls) throws InterruptedException {
+        List<List<InetAddress>> addresses = new ArrayList<List<InetAddress>>(urls.size());
+        if(!this.options.isAllAddresses()){
+            for(int i = 0; i < urls.size(); i++){
+                addresses.add(Collections.<InetAddress> singletonList(null));
+            }// end for
+            return addresses;
+        }// end if
+
+        long resolveStart = TrustMetrics.start();
+        final HostResolver resolver = this.options.getHostResolver();
+        ExecutorService executor = newProbeExecutor(Math.min(this.options.getThreads(), urls.size()));
+        try{
+            List<Future<List<InetAddress>>> futures = new ArrayList<Future<List<InetAddress>>>(urls.size());
+            for(String url : urls){
+                final String host = new ProbeResult(url, null).host;
+                futures.add(executor.submit(new Callable<List<InetAddress>>() {
+                    @Override
+                    public List<InetAddress> call() throws Exception {
+                        return resolver.resolve(host);
+                    }// end call
+                }));
+            }// end for
+            for(int i = 0; i < futures.size(); i++){
+                try{
+                    addresses.add(futures.get(i).get());
+                }catch(ExecutionException e){
+                    myLogger.warning("The addresses of " + urls.get(i) + " could not be resolved.  Error message is: " + e.getCause().getMessage());
+                    addresses.add(Collections.<InetAddress> singletonList(null));
+                }// end try...catch
+            }// end for
+        }finally{
+            executor.shutdownNow();
+            this.metrics.record(TrustMetrics.Phase.RESOLVE, resolveStart);
+        }// end try...finally
+        return addresses;
+    }// end resolveAddresses
+
+    /**
+     * This method will add the certificates of the files to the truststore without any handshake. The files are read concurrently, a certificate found in several files or already stored is only stored once and every new certificate is saved to
+     * the truststore with a single store. The certificate of a file is stored as {@code <file>-ISU}, the certificates of a bundle as {@code <file>-<position>-ISU}, where {@code <file>} is the lower case file name without its extension.
+     *
+     * @param files
+     *        the PEM, DER or PKCS#7 files
+     * @return the SHA-256 fingerprints of the certificates of the files, in the order of the files
+     * @throws GeneralSecurityException
+     *         if a file cannot be parsed or the truststore cannot be changed
+     * @throws IOException
+     *         if a file cannot be read or the truststore cannot be written
+     * @throws InterruptedException
+     *         if the thread is interrupted while the files are read
+     */
+    public List<String> importCertificates(List<Path> files) throws GeneralSecurityException, IOException, InterruptedException {
+        myLogger.entering(MY_CLASS_NAME, "importCertificates", files);
+
+        // the files are parsed without holding the lock
+        long importStart = TrustMetrics.start();
+        List<X509Certificate[]> certificates = CertificateFiles.readAll(files, this.options.getThreads());
+        this.metrics.record(TrustMetrics.Phase.IMPORT, importStart);
+
+        Map<String, String> aliases = new LinkedHashMap<String, String>();
+        Map<String, X509Certificate> byFingerprint = new HashMap<String, X509Certificate>();
+        for(int i = 0; i < files.size(); i++){
+            String name = files.get(i).getFileName().toString().toLowerCase(Locale.ROOT);
+            name = name.substring(0, name.lastIndexOf('.') > 0 ? name.lastIndexOf('.') : name.length());
+            X509Certificate[] bundle = certificates.get(i);
+            for(int j = 0; j < bundle.length; j++){
+                String fingerprint = CertificateFingerprints.sha256(bundle[j]);
+                if(!aliases.containsKey(fingerprint)){
+                    aliases.put(fingerprint, (bundle.length == 1) ? name + TrustedCertficatesStore.ALIAS_SUFFIX : name + "-" + j + TrustedCertficatesStore.ALIAS_SUFFIX);
+                    byFingerprint.put(fingerprint, bundle[j]);
+                }// end if
+            }// end for
+        }// end for
+
+        char[] passphrase = "changeit".toCharArray(); // default password
+        this.stripe.lock();
+        try{
+            KeyStore ks = loadKeyStore(passphrase);
+
+            // the keystore may be shared with other tasks running in parallel so all changes are made while holding its lock
+            synchronized(ks){
+                FingerprintIndex index = FingerprintIndex.of(ks, this.truststoreFile);
+                int added = 0;
+                for(Map.Entry<String, String> entry : aliases.entrySet()){
+                    X509Certificate certificate = byFingerprint.get(entry.getKey());
+                    String existing = index.find(ks, certificate);
+                    if(existing != null){
+                        myLogger.info("Certificate " + certificate.getSubjectX500Principal() + " is already stored as " + existing + ".");
+                    }else{
+                        // an alias taken by another certificate is made unique with the start of the fingerprint
+                        String alias = entry.getValue();
+                        if(ks.containsAlias(alias)){
+                            alias = alias.substring(0, alias.length() - TrustedCertficatesStore.ALIAS_SUFFIX.length()) + "-" + entry.getKey().substring(0, 8) + TrustedCertficatesStore.ALIAS_SUFFIX;
+                        }// end if
+                        ks.setCertificateEntry(alias, certificate);
+                        index.added(alias, certificate);
+                        myLogger.info("Imported new " + alias + " certificate to the keystore.");
+                        added++;
+                    }// end if
+                }// end for
+
+                if(added > 0){
+                    long storeStart = TrustMetrics.start();
+                    this.options.getKeyStoreLoader().store(this.truststoreFile, ks, passphrase);
+                    this.metrics.record(TrustMetrics.Phase.STORE, storeStart);
+                    index.save();
+                    this.keystoreStamp = FingerprintIndex.stamp(this.truststoreFile);
+                    this.trustManager = null;
+                }// end if
+                myLogger.info("Imported " + added + " new certificate(s) of the " + aliases.size() + " read from " + files.size() + " file(s) to " + this.truststoreFile.toString());
+            }// end synchronized
+        }finally{
+            this.stripe.unlock();
+        }// end try...finally
+
+        myLogger.exiting(MY_CLASS_NAME, "importCertificates", aliases.size());
+        return new ArrayList<String>(aliases.keySet());
+    }// end importCertificates
+
+    /**
+     * This method will keep only the cache entries whose trust anchors are all still entries of the local truststore. The handshake cache may be saved while the write of the truststore is deferred, so an entry can outlive a write that failed or
+     * never happened, its host then needs a new handshake.
+     *
+     * @param cached
+     *        the trust anchors of every host whose cache entry is valid, the hosts whose anchors are missing are removed
+     * @param passphrase
+     *        the password of the truststore
+     * @throws GeneralSecurityException
+     *         if the truststore cannot be read
+     * @throws IOException
+     *         if the truststore file cannot be read
+     */
+    private void storedAnchors(Map<ProbeResult, List<String>> cached, char[] passphrase) throws GeneralSecurityException, IOException {
+        this.stripe.lock();
+        try{
+            KeyStore ks = loadKeyStore(passphrase);
+            synchronized(ks){
+                FingerprintIndex index = FingerprintIndex.of(ks, this.truststoreFile);
+                for(Iterator<Map.Entry<ProbeResult, List<String>>> entries = cached.entrySet().iterator(); entries.hasNext();){
+                    Map.Entry<ProbeResult, List<String>> entry = entries.next();
+                    for(String anchor : entry.getValue()){
+                        if(!index.contains(ks, anchor)){
+                            myLogger.info("The trust anchor " + anchor + " of host " + entry.getKey().host + ":" + entry.getKey().port + " is not in the keystore, the handshake cache entry is ignored.");
+                            entries.remove();
+                            break;
+                        }// end if
+                    }// end for
+                }// end for
+            }// end synchronized
+        }finally{
+            this.stripe.unlock();
+        }// end try...finally
+    }// end storedAnchors
+
+    /**
+     * This method will load the local truststore. The keystore already loaded is kept as long as the truststore file has not been changed by anyone else, the caller must hold the stripe.
+     *
+     * @param passphrase
+     *        the password of the truststore
+     * @return the loaded truststore
+     * @throws GeneralSecurityException
+     *         if the truststore cannot be read
+     * @throws IOException
+     *         if the truststore file cannot be read
+     */
+    private KeyStore loadKeyStore(char[] passphrase) throws GeneralSecurityException, IOException {
+        String stamp = FingerprintIndex.stamp(this.truststoreFile);
+        if(this.keystore == null || stamp == null || !stamp.equals(this.keystoreStamp)){
+            long loadStart = TrustMetrics.start();
+            this.keystore = this.options.getKeyStoreLoader().load(this.truststoreFile, passphrase);
+            this.metrics.record(TrustMetrics.Phase.LOAD, loadStart);
+            this.keystoreStamp = stamp;
+            this.trustManager = null;
+        }// end if
+        return this.keystore;
+    }// end loadKeyStore
+
+    /**
+     * This method will get the trust manager backed by the local truststore. It is built once and built again only when the truststore was reloaded or its entries changed. When the handshakes share the default SSLContext the trust anchors of the
+     * installed {@link ReloadableTrustManager} are updated as well.
+     *
+     * @param passphrase
+     *        the password of the truststore
+     * @return the trust manager
+     * @throws GeneralSecurityException
+     *         if the truststore cannot be read
+     * @throws IOException
+     *         if the truststore file cannot be read
+     */
+    private X509TrustManager trustManager(char[] passphrase) throws GeneralSecurityException, IOException {
+        this.stripe.lock();
+        try{
+            KeyStore ks = loadKeyStore(passphrase);
+            synchronized(ks){
+                if(this.trustManager == null || this.trustManagerSize != ks.size()){
+                    TrustManagerFactory tmf = TrustManagerFactory.getInstance(TrustManagerFactory.getDefaultAlgorithm());
+                    tmf.init(ks);
+                    this.trustManager = (X509TrustManager) tmf.getTrustManagers()[0];
+                    this.trustManagerSize = ks.size();
+                }// end if
+                if(this.options.getSessionCacheSize() > 0){
+                    // the handshakes share the default SSLContext, it must trust what this truststore trusts
+                    ReloadableTrustManager.install(this.truststoreFile.getParent(), ks, this.options.getSessionCacheSize());
+                }// end if
+            }// end synchronized
+            return this.trustManager;
+        }finally{
+            this.stripe.unlock();
+        }// end try...finally
+    }// end trustManager
+
+    /**
+     * This method will remove the expired entries added for the host of an expired or changed chain that the chains of the host no longer use. The entries are found by alias ({@code <host>-ISU}, {@code <host>-<position>-ISU} and the same with
+     * {@code -ip-<address>} after the host) and kept when the server still sends the certificate. Entries that are still valid are kept as well since other hosts behind the same certificate authority may rely on them, every other entry of the truststore is left alone. The caller must hold the lock of the keystore.
+     *
+     * @param ks
+     *        the local truststore
+     * @param index
+     *        the fingerprint index of the truststore
+     * @param taskAliases
+     *        the aliases of the truststore added by this class, removed aliases are taken out of the list
+     * @param host
+     *        the host whose chain is not trusted
+     * @param chainFingerprints
+     *        the SHA-256 fingerprints of the certificates of every chain the host sent
+     * @return the SHA-256 fingerprints of the removed certificates
+     * @throws GeneralSecurityException
+     *         if the keystore cannot be read or changed
+     */
+    private List<String> removeStaleEntries(KeyStore ks, FingerprintIndex index, List<String> taskAliases, String host, Set<String> chainFingerprints) throws GeneralSecurityException {
+        long now = System.currentTimeMillis();
+        List<String> removed = new ArrayList<String>();
+        for(Iterator<String> aliases = taskAliases.iterator(); aliases.hasNext();){
+            String alias = aliases.next();
+            Certificate certificate = ks.getCertificate(alias);
+            if(isHostAlias(alias, host) && certificate instanceof X509Certificate && ((X509Certificate) certificate).getNotAfter().getTime() < now){
+                String fingerprint = CertificateFingerprints.sha256((X509Certificate) certificate);
+                if(!chainFingerprints.contains(fingerprint)){
+                    ks.deleteEntry(alias);
+                    aliases.remove();
+                    index.removed((X509Certificate) certificate);
+                    removed.add(fingerprint);
+                    myLogger.info("Removed the stale " + alias + " certificate from the keystore.");
+                }// end if
+            }// end if
+        }// end for
+        return removed;
+    }// end removeStaleEntries
+
+    /**
+     * This method will remove every certificate entry of the truststore that has expired. The caller must hold the lock of the keystore.
+     *
+     * @param ks
+     *        the local truststore
+     * @param index
+     *        the fingerprint index of the truststore
+     * @return the SHA-256 fingerprints of the removed certificates
+     * @throws GeneralSecurityException
+     *         if the keystore cannot be read or changed
+     */
+    private List<String> pruneExpiredEntries(KeyStore ks, FingerprintIndex index) throws GeneralSecurityException {
+        long now = System.currentTimeMillis();
+        List<String> removed = new ArrayList<String>();
+        for(String alias : Collections.list(ks.aliases())){
+            Certificate certificate = ks.getCertificate(alias);
+            if(ks.isCertificateEntry(alias) && certificate instanceof X509Certificate && ((X509Certificate) certificate).getNotAfter().getTime() < now){
+                ks.deleteEntry(alias);
+                index.removed((X509Certificate) certificate);
+                removed.add(CertificateFingerprints.sha256((X509Certificate) certificate));
+                myLogger.info("Removed the expired " + alias + " certificate from the keystore.");
+            }// end if
+        }// end for
+        return removed;
+    }// end pruneExpiredEntries
+
+    /**
+     * Checks whether the alias is one of the aliases used by the {@link TrustedCertficatesStore} for the certificates of the host.
+     *
+     * @param alias
+     *        the alias to check
+     * @param host
+     *        the host name
+     * @return true if the alias is {@code <host>-ISU} or {@code <host>-<position>-ISU}, optionally with {@code -ip-<address>} after the host, ignoring case
+     */
+    private static boolean isHostAlias(String alias, String host) {
+        String upperAlias = alias.toUpperCase(Locale.ROOT);
+        String prefix = host.toUpperCase(Locale.ROOT) + "-";
+        if(!TrustedCertficatesStore.isTaskAlias(alias) || !upperAlias.startsWith(prefix)){
+            return false;
+        }// end if
+
+        String position = upperAlias.substring(prefix.length(), upperAlias.length() - TrustedCertficatesStore.ALIAS_SUFFIX.length() + 1);
+        return position.matches("(IP-[0-9A-Z._]+-)?(\\d+-)?");
+    }// end isHostAlias
+
+    /**
+     * This method will run the handshake for every url. When there is more than one url the handshakes are ran concurrently on a bounded pool of threads (virtual threads are used when the running JVM supports them). Every handshake, including its retries,
+     * must finish within the deadline of the options, handshakes still running when it passes are failed.
+     *
+     * @param urls
+     *        the urls used to check for certificates
+     * @param addresses
+     *        the address each url is handshaked with, null when the host name of the url is resolved by the connect
+     * @param defaultTrustManager
+     *        the trust manager backed by the local keystore
+     * @return the results of the handshakes in the same order as the urls
+     * @throws InterruptedException
+     *         if the thread is interrupted while waiting on the handshakes
+     */
+    private List<ProbeResult> probeAll(List<String> urls, List<InetAddress> addresses, final X509TrustManager defaultTrustManager) throws InterruptedException {
+        myLogger.entering(MY_CLASS_NAME, "probeAll", urls);
+
+        final long deadlineAt = this.options.getDeadline() > 0 ? System.currentTimeMillis() + this.options.getDeadline() : Long.MAX_VALUE;
+        List<ProbeResult> results = new ArrayList<ProbeResult>(urls.size());
+        if(TrustStoreOptions.ENGINE_NIO.equals(this.options.getEngine())){
+            results = probeAllNio(urls, addresses, defaultTrustManager, deadlineAt);
+        }else if(urls.size() == 1 || this.options.getThreads() == 1){
+            for(int i = 0; i < urls.size(); i++){
+                results.add(checkWebServerCertificate(urls.get(i), addresses.get(i), defaultTrustManager, deadlineAt));
+            }// end for
+        }else{
+            ExecutorService executor = newProbeExecutor(Math.min(this.options.getThreads(), urls.size()));
+            try{
+                List<Future<ProbeResult>> futures = new ArrayList<Future<ProbeResult>>(urls.size());
+                for(int i = 0; i < urls.size(); i++){
+                    final String url = urls.get(i);
+                    final InetAddress address = addresses.get(i);
+                    futures.add(executor.submit(new Callable<ProbeResult>() {
+                        @Override
+                        public ProbeResult call() throws Exception {
+                            return checkWebServerCertificate(url, address, defaultTrustManager, deadlineAt);
+                        }// end call
+                    }));
+                }// end for
+
+                for(int i = 0; i < futures.size(); i++){
+                    Future<ProbeResult> future = futures.get(i);
+                    try{
+                        if(deadlineAt == Long.MAX_VALUE){
+                            results.add(future.get());
+                        }else{
+                            results.add(future.get(Math.max(deadlineAt - System.currentTimeMillis(), 1L), TimeUnit.MILLISECONDS));
+                        }// end if
+                    }catch(ExecutionException e){
+                        myLogger.log(Level.SEVERE, "Exception occurred during the probeAll process.  Error message is: " + e.getCause().getMessage(), e.getCause());
+                        ProbeResult result = new ProbeResult(urls.get(i), addresses.get(i));
+                        result.error = (e.getCause() instanceof Exception) ? (Exception) e.getCause() : e;
+                        results.add(result);
+                    }catch(TimeoutException e){
+                        future.cancel(true);
+                        ProbeResult result = new ProbeResult(urls.get(i), addresses.get(i));
+                        result.error = e;
+                        myLogger.severe("The handshake with " + result.host + ":" + result.port + " did not finish before the deadline.");
+                        results.add(result);
+                    }// end try...catch
+                }// end for
+            }finally{
+                executor.shutdownNow();
+            }// end try...finally
+        }// end if
+
+        myLogger.exiting(MY_CLASS_NAME, "probeAll");
+        return results;
+    }// end probeAll
+
+    /**
+     * This method will run the handshake for every url with the {@link NioHandshakeEngine}, a small fixed number of selector threads drive every handshake at once.
+     *
+     * @param urls
+     *        the urls used to check for certificates
+     * @param addresses
+     *        the address each url is handshaked with, null when the host name of the url is resolved by the connect
+     * @param defaultTrustManager
+     *        the trust manager backed by the local keystore
+     * @param deadlineAt
+     *        the time every handshake, including its retries, must have finished by
+     * @return the results of the handshakes in the same order as the urls
+     * @throws InterruptedException
+     *         if the thread is interrupted while waiting on the handshakes
+     */
+    private List<ProbeResult> probeAllNio(List<String> urls, List<InetAddress> addresses, X509TrustManager defaultTrustManager, long deadlineAt) throws InterruptedException {
+        myLogger.entering(MY_CLASS_NAME, "probeAllNio", urls);
+
+        List<ProbeResult> results = new ArrayList<ProbeResult>(urls.size());
+        for(int i = 0; i < urls.size(); i++){
+            results.add(new ProbeResult(urls.get(i), addresses.get(i)));
+        }// end for
+
+        try{
+            NioHandshakeEngine engine = new NioHandshakeEngine(defaultTrustManager, this.options.getSelectors(), this.options.getConnectTimeout(), this.options.getHandshakeTimeout());
+            List<ProbeResult> pending = results;
+            for(int attempt = 0; !pending.isEmpty(); attempt++){
+                List<InetSocketAddress> targets = new ArrayList<InetSocketAddress>(pending.size());
+                for(ProbeResult result : pending){
+                    // an address resolved from the host name keeps the name, the engine still sends it to the server
+                    targets.add((result.address != null) ? new InetSocketAddress(result.address, result.port) : InetSocketAddress.createUnresolved(result.host, result.port));
+                }// end for
+
+                // handshakes that failed before the server sent its chain (refused, reset, timed out) are ran again in the next round
+                List<ProbeResult> failed = new ArrayList<ProbeResult>();
+                List<NioHandshakeEngine.HandshakeResult> handshakes = engine.handshake(targets, deadlineAt);
+                for(int i = 0; i < handshakes.size(); i++){
+                    NioHandshakeEngine.HandshakeResult handshake = handshakes.get(i);
+                    ProbeResult result = pending.get(i);
+                    result.chain = handshake.getChain();
+                    result.error = null;
+                    result.connectNanos = handshake.getConnectNanos();
+                    result.handshakeNanos = handshake.getHandshakeNanos();
+                    this.metrics.recordNanos(TrustMetrics.Phase.CONNECT, result.host, result.port, result.connectNanos);
+                    if(result.handshakeNanos > 0){
+                        this.metrics.recordNanos(TrustMetrics.Phase.HANDSHAKE, result.host, result.port, result.handshakeNanos);
+                    }// end if
+                    if(handshake.isTrusted()){
+                        result.trusted = true;
+                    }else if(handshake.getTrustFailure() != null && result.chain != null){
+                        result.expired = isExpired(handshake.getTrustFailure());
+                        myLogger.info("Client did not accept the server's handshake for host " + result.host + ".  It will be accepted and injected into local truststore.");
+                        myLogger.info("Server " + result.host + " sent " + result.chain.length + " certificate(s):");
+                        result.certificate = result.chain[result.chain.length - 1];
+                        // an expired chain is trusted once it is stored
+                        result.trusted = !result.expired;
+                    }else{
+                        result.error = handshake.getError();
+                        failed.add(result);
+                    }// end if
+                }// end for
+
+                if(!failed.isEmpty() && (attempt >= this.options.getRetries() || !sleepBeforeRetry(attempt, deadlineAt))){
+                    for(ProbeResult result : failed){
+                        myLogger.log(Level.SEVERE, "Exception occurred during the probeAllNio process for host " + result.host + ":" + result.port + ".  Error message is: " + result.error.getMessage(), result.error);
+                    }// end for
+                    break;
+                }// end if
+                for(ProbeResult result : failed){
+                    myLogger.info("Retrying the handshake with " + result.host + ":" + result.port + " after: " + result.error.getMessage());
+                }// end for
+                pending = failed;
+            }// end for
+        }catch(GeneralSecurityException e){
+            myLogger.log(Level.SEVERE, "GeneralSecurityException occurred during the probeAllNio process.  Error message is: " + e.getMessage(), e);
+        }// end try...catch
+
+        myLogger.exiting(MY_CLASS_NAME, "probeAllNio");
+        return results;
+    }// end probeAllNio
+
+    /**
+     * This method will create the executor used for running the handshakes. A fixed pool of virtual threads is used when the running JVM supports them, otherwise a fixed pool of daemon platform threads is used.
+     *
+     * @param threads
+     *        the maximum number of handshakes to run at the same time
+     * @return the executor
+     */
+    private static ExecutorService newProbeExecutor(int threads) {
+        ThreadFactory factory = null;
+        try{
+            // Thread.ofVirtual().name("trustcert-probe-", 0).factory() is only available on java 21+
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+            builder = builderClass.getMethod("name", String.class, long.class).invoke(builder, "trustcert-probe-", 0L);
+            factory = (ThreadFactory) builderClass.getMethod("factory").invoke(builder);
+        }catch(Exception e){
+            myLogger.fine("Virtual threads are not supported by this JVM, using platform threads for the handshakes.");
+            final AtomicInteger count = new AtomicInteger();
+            factory = new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, "trustcert-probe-" + count.getAndIncrement());
+                    thread.setDaemon(true);
+                    return thread;
+                }// end newThread
+            };
+        }// end try...catch
+        return Executors.newFixedThreadPool(threads, factory);
+    }// end newProbeExecutor
+
+    /**
+     * This method will wait before a failed handshake is retried. The wait doubles with every attempt and is jittered between half and one and a half times its length so that many builds retrying the same server do not retry in step.
+     *
+     * @param attempt
+     *        the number of the attempt that failed, starting at zero
+     * @param deadlineAt
+     *        the time every handshake, including its retries, must have finished by
+     * @return true if the handshake should be retried, false if the deadline would pass while waiting
+     * @throws InterruptedException
+     *         if the thread is interrupted while waiting
+     */
+    private boolean sleepBeforeRetry(int attempt, long deadlineAt) throws InterruptedException {
+        long backoff = this.options.getRetryBackoff() << Math.min(attempt, 16);
+        long wait = (long) (backoff * (0.5d + ThreadLocalRandom.current().nextDouble()));
+        if(System.currentTimeMillis() + wait >= deadlineAt){
+            return false;
+        }// end if
+        Thread.sleep(wait);
+        return true;
+    }// end sleepBeforeRetry
+
+    /**
+     * This method will check to see if the web certificate is trusted already. A handshake that fails before the server's certificate is known is retried with a backoff as many times as the options allow.
+     *
+     * @param url
+     *        the url used to check for certificate
+     * @param address
+     *        the address of the host to handshake with, null when the host name is resolved by the connect
+     * @param defaultTrustManager
+     *        the trust manager backed by the local keystore
+     * @param deadlineAt
+     *        the time the handshake, including its retries, must have finished by
+     * @return the result holding the certificate that should be added to the keystore, the certificate will be null when there is nothing to add
+     */
+    private ProbeResult checkWebServerCertificate(String url, InetAddress address, X509TrustManager defaultTrustManager, long deadlineAt) {
+        myLogger.entering(MY_CLASS_NAME, "checkWebServerCertificate", url);
+
+        ProbeResult result = null;
+        for(int attempt = 0;; attempt++){
+            result = checkWebServerCertificateOnce(url, address, defaultTrustManager, deadlineAt);
+            try{
+                if(result.error == null || attempt >= this.options.getRetries() || !sleepBeforeRetry(attempt, deadlineAt)){
+                    break;
+                }// end if
+            }catch(InterruptedException e){
+                Thread.currentThread().interrupt();
+                break;
+            }// end try...catch
+            myLogger.info("Retrying the handshake with " + result.host + ":" + result.port + " after: " + result.error.getMessage());
+        }// end for
+
+        myLogger.exiting(MY_CLASS_NAME, "checkWebServerCertificate");
+        return result;
+    }// end checkWebServerCertificate
+
+    /**
+     * This method will make a single attempt to check whether the web certificate is trusted already. The connect and the handshake are bounded by the timeouts of the options and by the deadline.
+     *
+     * @param url
+     *        the url used to check for certificate
+     * @param address
+     *        the address of the host to handshake with, null when the host name is resolved by the connect
+     * @param defaultTrustManager
+     *        the trust manager backed by the local keystore
+     * @param deadlineAt
+     *        the time the handshake must have finished by
+     * @return the result of the attempt, its error is set when the server could not be reached or the handshake failed for a reason other than trust
+     */
+    private ProbeResult checkWebServerCertificateOnce(String url, InetAddress address, X509TrustManager defaultTrustManager, long deadlineAt) {
+        myLogger.entering(MY_CLASS_NAME, "checkWebServerCertificateOnce", url);
+
+        ProbeResult result = new ProbeResult(url, address);
+        String host = result.host;
+        int port = result.port;
+
+        SSLContext context = null;
+        SavingTrustManager tm = null;
+
+        // the default SSLContext caches the sessions of the handshakes so later HTTPS calls of the JVM resume them
+        SSLSocketFactory factory = (this.options.getSessionCacheSize() > 0) ? ReloadableTrustManager.getInstalledSocketFactory() : null;
+        SSLSocket socket = null;
+        try{
+            if(factory == null){
+                // get TLS context
+                context = SSLContext.getInstance("TLS");
+                tm = new SavingTrustManager(defaultTrustManager);
+                context.init(null, new TrustManager[]{tm}, null);
+                factory = context.getSocketFactory();
+            }// end if
+
+            myLogger.info("Attempting to open a connection to " + String.valueOf(host) + ":" + String.valueOf(port) + ((address != null) ? " at " + address.getHostAddress() : ""));
+            Socket plainSocket = new Socket();
+            long connectStart = TrustMetrics.start();
+            try{
+                // the socket is layered over the connection with the host name, so the server is sent the host name whichever address was connected to
+                plainSocket.connect((address != null) ? new InetSocketAddress(address, port) : new InetSocketAddress(host, port), remainingTimeout(this.options.getConnectTimeout(), deadlineAt, host, port));
+                plainSocket.setSoTimeout(remainingTimeout(this.options.getHandshakeTimeout(), deadlineAt, host, port));
+                socket = (SSLSocket) factory.createSocket(plainSocket, host, port, true);
+                if(tm == null){
+                    // HTTPS clients only resume sessions whose host name was verified the way they verify it
+                    SSLParameters parameters = socket.getSSLParameters();
+                    parameters.setEndpointIdentificationAlgorithm("HTTPS");
+                    socket.setSSLParameters(parameters);
+                }// end if
+            }catch(IOException e){
+                plainSocket.close();
+                throw e;
+            }finally{
+                result.connectNanos = System.nanoTime() - connectStart;
+                this.metrics.recordNanos(TrustMetrics.Phase.CONNECT, host, port, result.connectNanos);
+            }// end try...catch...finally
+            boolean isHandshakeError = false;
+            long handshakeStart = TrustMetrics.start();
+            try{
+                myLogger.info("Initiating the handshake with server.");
+                socket.startHandshake();
+                result.trusted = true;
+            }catch(SSLException e){
+                String message = String.valueOf(e.getMessage());
+                // the saving trust manager refuses getAcceptedIssuers(), which the JSSE only calls once the chain has been trusted
+                if("java.lang.UnsupportedOperationException".equals(message) || e.getCause() instanceof UnsupportedOperationException){
+                    myLogger.info("certificate is already trusted");
+                    result.trusted = true;
+                }else if(message.contains("unable to find valid certification path to requested target")){
+                    myLogger.info("Client did not accept the server's handshake for host " + String.valueOf(host) + ".  It will be accepted and injected into local truststore.");
+                    isHandshakeError = true;
+                }else if(message.contains("expired") || message.contains("SSLHandshakeException") || isExpired(e)){
+                    myLogger.info("Client did not accept the expired certificate for host " + String.valueOf(host) + ".  It will be replaced within the local truststore.");
+                    isHandshakeError = true;
+                    result.expired = message.contains("expired") || isExpired(e);
+                }else{
+                    // the handshake failed for a reason other than trust, the server's certificate is unknown
+                    myLogger.warning("The handshake with host " + String.valueOf(host) + " failed.  Error message is: " + message);
+                    result.error = e;
+                }// end if
+            }finally{
+                result.handshakeNanos = System.nanoTime() - handshakeStart;
+                this.metrics.recordNanos(TrustMetrics.Phase.HANDSHAKE, host, port, result.handshakeNanos);
+            }// end try...catch...finally
+
+            if(tm == null && result.trusted){
+                awaitSessionTicket(socket, result.connectNanos, deadlineAt);
+            }// end if
+
+            if(tm != null){
+                result.chain = tm.chain;
+            }else if(isHandshakeError){
+                result.chain = ReloadableTrustManager.takePeerChain(socket);
+            }else if(result.trusted){
+                result.chain = toX509Chain(socket.getSession().getPeerCertificates());
+            }// end if
+            if(isHandshakeError){
+                X509Certificate[] chain = result.chain;
+                if(chain == null){
+                    myLogger.info("Could not obtain the servers certificate chain");
+                    result.error = new SSLException("The server " + host + ":" + port + " did not send a certificate chain");
+                    return result;
+                }// end if
+
+                myLogger.info("Server " + String.valueOf(host) + " sent " + chain.length + " certificate(s):");
+                result.certificate = chain[chain.length - 1];
+                // an expired chain is trusted once it is stored
+                result.trusted = !result.expired;
+            }else if(result.trusted){
+                myLogger.info("Host certificate " + String.valueOf(host) + " is already trusted.");
+            }// end if
+        }catch(NoSuchAlgorithmException e){
+            myLogger.log(Level.SEVERE, "NoSuchAlgorithmException occurred during the checkWebServerCertificate process.  Error message is: " + e.getMessage(), e);
+            result.error = e;
+        }catch(IOException e){
+            myLogger.log(Level.SEVERE, "IOException occurred during the checkWebServerCertificate process.  Error message is: " + e.getMessage(), e);
+            result.error = e;
+        }catch(KeyManagementException e){
+            myLogger.log(Level.SEVERE, "KeyManagementException occurred during the checkWebServerCertificate process.  Error message is: " + e.getMessage(), e);
+            result.error = e;
+        }catch(Exception e){
+            myLogger.log(Level.SEVERE, "Exception occurred during the checkWebServerCertificate process.  Error message is: " + e.getMessage(), e);
+            result.error = e;
+        }finally{
+            // close all resources
+            try{
+                if(socket != null){
+                    socket.close();
+                }// end if
+            }catch(IOException e){
+                myLogger.log(Level.SEVERE, "IOException occurred while trying to close the socket used in the checkWebServerCertificate process.  Error message is: " + e.getMessage(), e);
+            }// end try...catch
+        }// end try...catch...finally
+        myLogger.exiting(MY_CLASS_NAME, "checkWebServerCertificateOnce");
+        return result;
+    }// end checkWebServerCertificateOnce
+
+    /**
+     * This method will read the session ticket a TLS 1.3 server sends once the handshake has finished, without it the session cannot be resumed. The ticket arrives about one round trip after the handshake, so the read waits twice as long as the
+     * connect took, the server sends nothing else until it receives a request.
+     *
+     * @param socket
+     *        the socket of the finished handshake
+     * @param connectNanos
+     *        the time the connect took
+     * @param deadlineAt
+     *        the time the handshake must have finished by
+     */
+    private void awaitSessionTicket(SSLSocket socket, long connectNanos, long deadlineAt) {
+        if(!"TLSv1.3".equals(socket.getSession().getProtocol())){
+            return;
+        }// end if
+        try{
+            long wait = MIN_SESSION_TICKET_WAIT + 2 * TimeUnit.NANOSECONDS.toMillis(connectNanos);
+            socket.setSoTimeout((int) Math.min(Math.min(wait, this.options.getHandshakeTimeout()), Math.max(deadlineAt - System.currentTimeMillis(), 1L)));
+            socket.getInputStream().read();
+        }catch(SocketTimeoutException e){
+            // the ticket, if the server sends one, has been read
+        }catch(IOException e){
+            myLogger.log(Level.FINE, "IOException occurred while reading the session ticket of " + socket.getSession().getPeerHost() + ".  Error message is: " + e.getMessage(), e);
+        }// end try...catch
+    }// end awaitSessionTicket
+
+    /**
+     * @param certificates
+     *        the peer certificates of a TLS session
+     * @return the X.509 certificates of the session
+     */
+    private static X509Certificate[] toX509Chain(Certificate[] certificates) {
+        List<X509Certificate> chain = new ArrayList<X509Certificate>(certificates.length);
+        for(Certificate certificate : certificates){
+            if(certificate instanceof X509Certificate){
+                chain.add((X509Certificate) certificate);
+            }// end if
+        }// end for
+        return chain.toArray(new X509Certificate[chain.size()]);
+    }// end toX509Chain
+
+    /**
+     * This method will check whether a handshake failed because a certificate of the chain has expired.
+     *
+     * @param failure
+     *        the reason the chain was not trusted
+     * @return true if the failure or one of its causes is a {@link CertificateExpiredException}
+     */
+    private static boolean isExpired(Throwable failure) {
+        for(Throwable cause = failure; cause != null; cause = cause.getCause()){
+            if(cause instanceof CertificateExpiredException){
+                return true;
+            }// end if
+        }// end for
+        return false;
+    }// end isExpired
+
+    /**
+     * This method will bound a timeout by the time left before the deadline.
+     *
+     * @param timeout
+     *        the timeout in milliseconds
+     * @param deadlineAt
+     *        the time the handshake must have finished by
+     * @param host
+     *        the host name used in the error message
+     * @param port
+     *        the port used in the error message
+     * @return the smaller of the timeout and the time left
+     * @throws SocketTimeoutException
+     *         if the deadline has already passed
+     */
+    private static int remainingTimeout(int timeout, long deadlineAt, String host, int port) throws SocketTimeoutException {
+        long remaining = deadlineAt - System.currentTimeMillis();
+        if(remaining <= 0){
+            throw new SocketTimeoutException("The deadline passed before the handshake with " + host + ":" + port + " could finish");
+        }// end if
+        return (int) Math.min(timeout, remaining);
+    }// end remainingTimeout
+
+    /**
+     * @return the local truststore file of this service
+     */
+    public Path getTrustStoreFile() {
+        return this.truststoreFile;
+    }// end getTrustStoreFile
+
+    /**
+     * @return the options of this service
+     */
+    public TrustStoreOptions getOptions() {
+        return this.options;
+    }// end getOptions
+
+    /**
+     * This class holds the outcome of a handshake with a single server, or of the handshakes with every address of a host.
+     */
+    private static class ProbeResult {
+
+        private final String host;
+        private final int port;
+        private final InetAddress address;
+        private X509Certificate[] chain;
+        private X509Certificate certificate;
+        private boolean trusted;
+        private boolean expired;
+        private final List<String> anchors = new ArrayList<String>();
+        private boolean stored;
+        private long connectNanos;
+        private long handshakeNanos;
+        private TrustMetrics.Outcome outcome;
+        private Exception error;
+        private final List<ProbeResult> addressResults = new ArrayList<ProbeResult>();
+
+        /**
+         * @param url
+         *        the url of the server (Ex: https://servernamea.isu.net:8443)
+         * @param address
+         *        the address of the server to handshake with, null when the host name is resolved by the connect
+         */
+        ProbeResult(String url, InetAddress address) {
+            // splitting the host name for gathering parameters used to establish a handshake with server.
+            String[] hostArray = url.replace("https://", "").split(":");
+            this.host = hostArray[0];
+            this.port = (hostArray.length == 1) ? 443 : Integer.parseInt(hostArray[1]);
+            this.address = address;
+        }// end constructor
+
+        /**
+         * @return the distinct certificate chains sent by the server, or by the addresses of the host
+         */
+        List<X509Certificate[]> chains() {
+            List<X509Certificate[]> chains = new ArrayList<X509Certificate[]>();
+            if(this.addressResults.isEmpty()){
+                if(this.chain != null){
+                    chains.add(this.chain);
+                }// end if
+                return chains;
+            }// end if
+            for(ProbeResult addressResult : this.addressResults){
+                boolean distinct = addressResult.chain != null;
+                for(int i = 0; distinct && i < chains.size(); i++){
+                    distinct = !Arrays.equals(chains.get(i), addressResult.chain);
+                }// end for
+                if(distinct){
+                    chains.add(addressResult.chain);
+                }// end if
+            }// end for
+            return chains;
+        }// end chains
+
+    }// end class
+
+    /**
+     * This class is used for checking the servers trusted certificates. A new instance is used for every handshake, the chain is written by the thread running the handshake and read once it has finished.
+     * <p>
+     * The primary responsibility of the TrustManager is to determine whether the presented authentication credentials should be trusted. If the credentials are not trusted, then the connection will be terminated.
+     * </p>
+     */
+    private static class SavingTrustManager implements X509TrustManager {
+
+        private final X509TrustManager tm;
+        private volatile X509Certificate[] chain;
+
+        /**
+         * @param tm
+         */
+        SavingTrustManager(X509TrustManager tm) {
+            this.tm = tm;
+        }// end constructor
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public X509Certificate[] getAcceptedIssuers() {
+            throw new UnsupportedOperationException();
+        }// end getAcceptedIssuers
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public void checkClientTrusted(X509Certificate[] chain, String authType) throws CertificateException {
+            throw new UnsupportedOperationException();
+        }// end checkClientTrusted
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public void checkServerTrusted(X509Certificate[] chain, String authType) throws CertificateException {
+            this.chain = chain;
+            tm.checkServerTrusted(chain, authType);
+        }// end checkServerTrusted
+
+    }// end class
+
+}// end class
@@ -3,34 +3,23 @@
  */
 package com.omo.free.security.ssl;
 
-import java.io.FileInputStream;
-import java.io.FileNotFoundException;
-import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.OutputStream;
-import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.security.KeyManagementException;
+import java.security.GeneralSecurityException;
 import java.security.KeyStore;
-import java.security.KeyStoreException;
-import java.security.NoSuchAlgorithmException;
-import java.security.cert.CertificateException;
-import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
-import javax.net.ssl.SSLContext;
-import javax.net.ssl.SSLException;
-import javax.net.ssl.SSLSocket;
-import javax.net.ssl.SSLSocketFactory;
-import javax.net.ssl.TrustManager;
-import javax.net.ssl.TrustManagerFactory;
-import javax.net.ssl.X509TrustManager;
-
 /**
- * This class is used for creating a Trusted Certificates Keystore and place a copy of a secure websites certificate within it.
+ * This class is used for creating a Trusted Certificates Keystore and place a copy of a secure websites certificate within it. The handshakes and the changes to the keystore are made by a {@link TrustStoreService}, this class then writes the minimal
+ * truststore and points the JVM at the truststore through the javax.net.ssl system properties.
  *
  * @author Richard Salas
  */
@@ -40,10 +29,21 @@ public class TrustedCertficatesStore {
     private static Logger myLogger = Logger.getLogger(MY_CLASS_NAME);
 
     private static final String TRUST_STORE_PROPERTY_NM = "javax.net.ssl.trustStore";
-    private static final String TRUST_STORE_NM = "cacerts";
+    private static final String TRUST_STORE_TYPE_PROPERTY_NM = "javax.net.ssl.trustStoreType";
+    private static final String TRUST_STORE_PASSWORD_PROPERTY_NM = "javax.net.ssl.trustStorePassword";
+
+    /** the suffix of the aliases of the certificates added to the truststore */
+    public static final String ALIAS_SUFFIX = "-ISU";
 
     private String httpsURL;
     private Path truststoreFile;
+    private TrustStoreOptions options;
+    private TrustMetrics metrics;
+    private TrustStoreService service;
+    private List<TrustResult> results = new ArrayList<TrustResult>();
+    private Map<String, List<String>> hostAnchors = new LinkedHashMap<String, List<String>>();
+    private List<String> importedFingerprints = new ArrayList<String>();
+    private KeyStore minimalStore;
 
     /**
      * Constructor used to create an instance of the TrustedCertficatesStore. An exception will be thrown if the key store is unable to be created.
@@ -56,93 +56,68 @@ public class TrustedCertficatesStore {
      *         if keystore is unable to be created
      */
     public TrustedCertficatesStore(String trustStoreDirPath, String httpsURL) throws Exception {
-        myLogger.entering(MY_CLASS_NAME, "TrustedCertficatesStore", new Object[]{trustStoreDirPath, httpsURL});
+        this(new TrustStoreOptions(trustStoreDirPath, httpsURL));
+    }// end constructor
 
-        // added this logic to attempt to create auto create local directory
-        Files.createDirectories(Paths.get(trustStoreDirPath));
+    /**
+     * Constructor used to create an instance of the TrustedCertficatesStore that will trust every url within the {@code options}. The keystore is loaded once, the handshakes are ran concurrently and every new certificate is written with a single store. An exception will be thrown if the key store is unable to be created.
+     *
+     * @param options
+     *        the options holding the truststore directory, the urls to trust and the number of handshakes to run at the same time.
+     * @throws Exception
+     *         if keystore is unable to be created
+     */
+    public TrustedCertficatesStore(TrustStoreOptions options) throws Exception {
+        myLogger.entering(MY_CLASS_NAME, "TrustedCertficatesStore", options);
 
-        if(!Files.exists(Paths.get(trustStoreDirPath))){
-            throw new IllegalArgumentException("The directory path " + String.valueOf(trustStoreDirPath) + " does not exist!  An attempt was also made to create this directory structure but failed.  It must be created before creating an instance of the TrustedCertficatesStore");
-        }// end if
+        String trustStoreDirPath = options.getKeystoreDir();
 
-        if(httpsURL == null || !httpsURL.startsWith("https://") || httpsURL.endsWith("/")){
-            throw new IllegalArgumentException("The url is incorrectly formatted: " + String.valueOf(httpsURL) + ".  Please send a correctly formatted URL ie. https://www.abc.com ");
+        if(options.getUrls().isEmpty() && options.getCertificateFiles().isEmpty()){
+            throw new IllegalArgumentException("At least one url or certificate file must be given.  Please send a correctly formatted URL ie. https://www.abc.com ");
         }// end if
 
-        this.truststoreFile = Paths.get(trustStoreDirPath, "cacerts");
-        this.httpsURL = httpsURL;
+        for(String url : options.getUrls()){
+            TrustStoreService.validateUrl(url);
+        }// end for
 
-        if(!Files.exists(this.truststoreFile)){
-            // create the local truststore
-            createLocalTrustStore();
+        this.httpsURL = options.getUrls().isEmpty() ? null : options.getUrls().get(0);
+        this.options = options;
+        this.metrics = options.getMetrics();
+        this.service = new TrustStoreService(options);
+        this.truststoreFile = this.service.getTrustStoreFile();
+
+        // the certificate files are imported first so hosts signed by an imported certificate authority are trusted by their handshake
+        if(!options.getCertificateFiles().isEmpty()){
+            importCertificateFiles();
         }// end if
 
-        // check web server certficate and set the truststore location property
-        checkWebServerCertificate();
+        // check web server certficates and set the truststore location property
+        checkWebServerCertificates(options.getUrls());
+        if(options.isMinimal()){
+            writeMinimalTrustStore();
+        }// end if
+        if(options.getExportDir() != null){
+            exportPem();
+        }// end if
         setTrustStoreLocationProperty();
+        // the handshakes sharing the default SSLContext need the certificates just added trusted by it as well
+        if(options.isInstallTrustManager() || options.getSessionCacheSize() > 0){
+            installTrustManager();
+        }// end if
 
         myLogger.exiting(MY_CLASS_NAME, "TrustedCertficatesStore", trustStoreDirPath);
     }// end constructor
 
     /**
-     * This method will create a local truststore. This method will copy the currently running java Runtime's cacerts file to local destination.
+     * Checks whether the alias is one of the aliases used by this class for the certificates it adds to the truststore.
+     *
+     * @param alias
+     *        the alias to check
+     * @return true if the alias ends with {@link #ALIAS_SUFFIX} (keystores such as JKS store aliases in lower case)
      */
-    private void createLocalTrustStore() {
-        myLogger.entering(MY_CLASS_NAME, "createLocalTrustStore");
-
-        /* below logic is used for getting the default truststore cacerts from users java installation directory */
-        Path caCertsPath = Paths.get(System.getProperty("java.home"), "lib", "security", TRUST_STORE_NM);
-
-        FileInputStream is = null;
-        FileOutputStream fos = null;
-        KeyStore keystore = null;
-        char[] password = null;
-
-        try{
-            myLogger.info("loading cacerts file from: " + String.valueOf(caCertsPath.toString()));
-            is = new FileInputStream(caCertsPath.toFile());
-            keystore = KeyStore.getInstance(KeyStore.getDefaultType());
-            password = "changeit".toCharArray();// this is the default password
-            keystore.load(is, password);
-
-            // create file
-            Path truststoreFile = Paths.get(this.truststoreFile.getParent().toString(), TRUST_STORE_NM);
-            Files.createFile(truststoreFile);
-
-            // copy installations truststore file into local truststore file
-            fos = new FileOutputStream(truststoreFile.toFile());
-            keystore.store(fos, password);
-        }catch(NoSuchAlgorithmException e){
-            myLogger.log(Level.SEVERE, "NoSuchAlgorithmException occurred during the createLocalTrustStore process.  Error message is: " + e.getMessage(), e);
-        }catch(FileNotFoundException e){
-            myLogger.log(Level.SEVERE, "FileNotFoundException occurred during the createLocalTrustStore process.  Error message is: " + e.getMessage(), e);
-        }catch(KeyStoreException e){
-            myLogger.log(Level.SEVERE, "KeyStoreException occurred during the createLocalTrustStore process.  Error message is: " + e.getMessage(), e);
-        }catch(CertificateException e){
-            myLogger.log(Level.SEVERE, "CertificateException occurred during the createLocalTrustStore process.  Error message is: " + e.getMessage(), e);
-        }catch(IOException e){
-            myLogger.log(Level.SEVERE, "IOException occurred during the createLocalTrustStore process.  Error message is: " + e.getMessage(), e);
-        }catch(Exception e){
-            myLogger.log(Level.SEVERE, "Exception occurred during the createLocalTrustStore process.  Error message is: " + e.getMessage(), e);
-        }finally{
-            try{
-                if(is != null){
-                    is.close();
-                }// end if
-            }catch(IOException e){
-                myLogger.log(Level.SEVERE, "IOException occurred while trying to close the inputstream used in the createLocalTrustStore process.  Error message is: " + e.getMessage(), e);
-            }// end try...catch
-
-            try{
-                if(fos != null){
-                    fos.close();
-                }// end if
-            }catch(IOException e){
-                myLogger.log(Level.SEVERE, "IOException occurred while trying to close the outputstream used in the createLocalTrustStore process.  Error message is: " + e.getMessage(), e);
-            }// end try...catch
-        }// end try...catch...finally
-        myLogger.exiting(MY_CLASS_NAME, "createLocalTrustStore");
-    }// end createLocalTrustStore
+    public static boolean isTaskAlias(String alias) {
+        return alias.toUpperCase(Locale.ROOT).endsWith(ALIAS_SUFFIX);
+    }// end isTaskAlias
 
     /**
      * This method will make sure that the web certificate is trusted, if it is not then an attempt to store the certificate in the keystore is made.
@@ -152,150 +127,183 @@ public class TrustedCertficatesStore {
      */
     public void checkWebServerCertifcate(String url) {
         myLogger.entering(MY_CLASS_NAME, "checkWebServerCertifcate", url);
+        TrustStoreService.validateUrl(url);
         this.httpsURL = url;
-        checkWebServerCertificate();
+        checkWebServerCertificates(Collections.singletonList(url));
         myLogger.exiting(MY_CLASS_NAME, "checkWebServerCertifcate");
     }// end checkWebServerCertifcate
 
     /**
-     * This method will check to see if the web certificate is trusted already.
+     * This method will add the certificates of the certificate files of the options to the truststore. Their fingerprints are kept so the minimal truststore holds them as well.
+     *
+     * @throws GeneralSecurityException
+     *         if a file cannot be parsed or the truststore cannot be changed
+     * @throws IOException
+     *         if a file cannot be read or the truststore cannot be written
+     * @throws InterruptedException
+     *         if the thread is interrupted while the files are read
      */
-    private void checkWebServerCertificate() {
-        myLogger.entering(MY_CLASS_NAME, "checkWebServerCertificate");
+    private void importCertificateFiles() throws GeneralSecurityException, IOException, InterruptedException {
+        myLogger.entering(MY_CLASS_NAME, "importCertificateFiles", this.options.getCertificateFiles());
 
-        // splitting the host name for gathering parameters used to establish a handshake with server.
-        String[] hostArray = this.httpsURL.replace("https://", "").split(":");
-        String host = hostArray[0];
-        int port = (hostArray.length == 1) ? 443 : Integer.parseInt(hostArray[1]);
-        char[] passphrase = "changeit".toCharArray(); // default password
+        List<Path> files = new ArrayList<Path>(this.options.getCertificateFiles().size());
+        for(String file : this.options.getCertificateFiles()){
+            files.add(Paths.get(file));
+        }// end for
+        this.importedFingerprints.addAll(this.service.importCertificates(files));
+
+        myLogger.exiting(MY_CLASS_NAME, "importCertificateFiles");
+    }// end importCertificateFiles
+
+    /**
+     * This method will check to see if the web certificates of the given urls are trusted already, every certificate that is not trusted is saved to the keystore. The trust anchors of the hosts are kept for the minimal truststore.
+     *
+     * @param urls
+     *        the urls used to check for certificates
+     */
+    private void checkWebServerCertificates(List<String> urls) {
+        myLogger.entering(MY_CLASS_NAME, "checkWebServerCertificates", urls);
+
+        for(TrustResult result : this.service.checkAll(urls)){
+            this.results.add(result);
+            // a host whose addresses sent different chains has an anchor for each of them
+            if(!result.getAnchors().isEmpty()){
+                this.hostAnchors.put(result.getHost() + ":" + result.getPort(), result.getAnchors());
+            }// end if
+        }// end for
 
-        InputStream in = null;
-        KeyStore ks = null;
-        SSLContext context = null;
-        TrustManagerFactory tmf = null;
-        X509TrustManager defaultTrustManager = null;
-        SavingTrustManager tm = null;
+        myLogger.exiting(MY_CLASS_NAME, "checkWebServerCertificates");
+    }// end checkWebServerCertificates
 
-        SSLSocketFactory factory = null;
-        SSLSocket socket = null;
+    /**
+     * @return what was done for every url checked by this instance, in the order the urls were checked
+     */
+    public List<TrustResult> getResults() {
+        return Collections.unmodifiableList(this.results);
+    }// end getResults
+
+    /**
+     * @return the service that trusts the urls in the local truststore, it may be used to check further urls without changing the system properties
+     */
+    public TrustStoreService getService() {
+        return this.service;
+    }// end getService
 
-        OutputStream out = null;
+    /**
+     * This method will write the {@link MinimalTrustStore} next to the local truststore. It holds the trust anchors of the configured hosts, the imported certificates and the allowed entries of the options, the file is only written again when its entries change.
+     */
+    private void writeMinimalTrustStore() {
+        myLogger.entering(MY_CLASS_NAME, "writeMinimalTrustStore");
+
+        char[] passphrase = "changeit".toCharArray(); // default password
         try{
-            myLogger.info("Starting to load the cacerts file: " + this.truststoreFile.toString());
-            // obtain the file path and then load the KeyStore
-            in = new FileInputStream(this.truststoreFile.toFile());
-            ks = KeyStore.getInstance(KeyStore.getDefaultType());
-            ks.load(in, passphrase);// load
-            in.close();
-
-            // get TLS context
-            context = SSLContext.getInstance("TLS");
-            tmf = TrustManagerFactory.getInstance(TrustManagerFactory.getDefaultAlgorithm());
-            tmf.init(ks);
-
-            defaultTrustManager = (X509TrustManager) tmf.getTrustManagers()[0];
-            tm = new SavingTrustManager(defaultTrustManager);
-            context.init(null, new TrustManager[]{tm}, null);
-            factory = context.getSocketFactory();
-
-            myLogger.info("Attempting to open a connection to " + String.valueOf(host) + ":" + String.valueOf(port));
-            socket = (SSLSocket) factory.createSocket(host, port);
-            socket.setSoTimeout(10000);
-            boolean isHandshakeError = false;
-            try{
-                myLogger.info("Initiating the handshake with server.");
-                socket.startHandshake();
-                socket.close();
-            }catch(SSLException e){
-                if("java.lang.UnsupportedOperationException".equals(e.getMessage())){
-                    myLogger.info("certificate is already trusted");
-                }else if(e.getMessage().contains("unable to find valid certification path to requested target")){
-                    myLogger.info("Client did not accept the server's handshake for host " + String.valueOf(host) + ".  It will be accepted and injected into local truststore.");
-                    isHandshakeError = true;
-                }else if(e.getMessage().contains("expired") || e.getMessage().contains("SSLHandshakeException")){
-                    if(Files.exists(this.truststoreFile)){
-                        Files.delete(this.truststoreFile);
-                        // create the local truststore
-                        createLocalTrustStore();
-                        isHandshakeError = true;
-                    }// end if
+            long storeStart = TrustMetrics.start();
+            KeyStore ks = this.options.getKeyStoreLoader().load(this.truststoreFile, passphrase);
+            KeyStore minimal;
+            synchronized(ks){
+                // the imported certificates were asked for explicitly, they are kept like the allowed entries
+                List<String> allowed = new ArrayList<String>(this.options.getMinimalAllow());
+                allowed.addAll(this.importedFingerprints);
+                List<String> anchors = new ArrayList<String>();
+                for(List<String> hostAnchor : this.hostAnchors.values()){
+                    anchors.addAll(hostAnchor);
+                }// end for
+                minimal = new MinimalTrustStore(ks).build(anchors, allowed, this.options.getMinimalType());
+            }// end synchronized
+
+            for(TrustResult result : this.results){
+                if(!this.hostAnchors.containsKey(result.getHost() + ":" + result.getPort())){
+                    myLogger.warning("No trust anchor was found for " + result.getHost() + ":" + result.getPort() + ", it will not be trusted by the minimal truststore.");
                 }// end if
-            }// end try...catch
+            }// end for
 
-            if(isHandshakeError){
-                X509Certificate[] chain = tm.chain;
-                if(chain == null){
-                    myLogger.info("Could not obtain the servers certificate chain");
-                    return;
-                }// end if
+            Path minimalFile = this.truststoreFile.resolveSibling(MinimalTrustStore.MINIMAL_TRUST_STORE_NM);
+            if(MinimalTrustStore.write(minimalFile, minimal, passphrase)){
+                this.metrics.record(TrustMetrics.Phase.STORE, storeStart);
+                myLogger.info("Successfully saved " + minimal.size() + " certificate(s) to " + minimalFile.toString());
+            }// end if
+            this.minimalStore = minimal;
+        }catch(GeneralSecurityException e){
+            myLogger.log(Level.SEVERE, "GeneralSecurityException occurred during the writeMinimalTrustStore process.  Error message is: " + e.getMessage(), e);
+        }catch(IOException e){
+            myLogger.log(Level.SEVERE, "IOException occurred during the writeMinimalTrustStore process.  Error message is: " + e.getMessage(), e);
+        }// end try...catch
 
-                myLogger.info("Server sent " + chain.length + " certificate(s):");
+        myLogger.exiting(MY_CLASS_NAME, "writeMinimalTrustStore");
+    }// end writeMinimalTrustStore
 
-                X509Certificate certificate = null;
-                certificate = chain[chain.length - 1];
-                if(certificate != null){
-                    String alias = host + "-ISU";
-                    ks.setCertificateEntry(alias, certificate);
+    /**
+     * This method will export the certificates of the truststore TLS clients should use (the minimal truststore when it was written) to the export directory of the options as PEM files. Only the files of the certificates that changed since the last
+     * export are written, renamed or deleted.
+     */
+    private void exportPem() {
+        myLogger.entering(MY_CLASS_NAME, "exportPem", this.options.getExportDir());
 
-                    out = new FileOutputStream(this.truststoreFile.toFile());
-                    ks.store(out, passphrase);
-                    out.close();
-                    myLogger.info("Successfully saved new " + alias + " certificate to " + this.truststoreFile.toString());
-                }// end if
+        try{
+            long exportStart = TrustMetrics.start();
+            PemExporter exporter = new PemExporter(Paths.get(this.options.getExportDir()), this.options.getThreads());
+            int changes;
+            if(this.minimalStore != null){
+                changes = exporter.export(this.minimalStore);
             }else{
-                myLogger.info("Host certificate " + String.valueOf(host) + " is already trusted.");
+                KeyStore ks = this.options.getKeyStoreLoader().load(this.truststoreFile, "changeit".toCharArray());// this is the default password
+                synchronized(ks){
+                    changes = exporter.export(ks);
+                }// end synchronized
             }// end if
-        }catch(NoSuchAlgorithmException e){
-            myLogger.log(Level.SEVERE, "NoSuchAlgorithmException occurred during the checkWebServerCertificate process.  Error message is: " + e.getMessage(), e);
-        }catch(FileNotFoundException e){
-            myLogger.log(Level.SEVERE, "FileNotFoundException occurred during the checkWebServerCertificate process.  Error message is: " + e.getMessage(), e);
-        }catch(KeyStoreException e){
-            myLogger.log(Level.SEVERE, "KeyStoreException occurred during the checkWebServerCertificate process.  Error message is: " + e.getMessage(), e);
-        }catch(CertificateException e){
-            myLogger.log(Level.SEVERE, "CertificateException occurred during the checkWebServerCertificate process.  Error message is: " + e.getMessage(), e);
+            this.metrics.record(TrustMetrics.Phase.EXPORT, exportStart);
+            myLogger.info("Exported the truststore to " + this.options.getExportDir() + " with " + changes + " changed file(s).");
+        }catch(GeneralSecurityException e){
+            myLogger.log(Level.SEVERE, "GeneralSecurityException occurred during the exportPem process.  Error message is: " + e.getMessage(), e);
         }catch(IOException e){
-            myLogger.log(Level.SEVERE, "IOException occurred during the checkWebServerCertificate process.  Error message is: " + e.getMessage(), e);
-        }catch(KeyManagementException e){
-            myLogger.log(Level.SEVERE, "KeyManagementException occurred during the checkWebServerCertificate process.  Error message is: " + e.getMessage(), e);
-        }catch(Exception e){
-            myLogger.log(Level.SEVERE, "Exception occurred during the checkWebServerCertificate process.  Error message is: " + e.getMessage(), e);
-        }finally{
-            // close all resources
-            try{
-                if(out != null){
-                    out.close();
-                }// end if
-            }catch(IOException e){
-                myLogger.log(Level.SEVERE, "IOException occurred while trying to close the outputstream used in the checkWebServerCertificate process.  Error message is: " + e.getMessage(), e);
-            }// end try...catch
+            myLogger.log(Level.SEVERE, "IOException occurred during the exportPem process.  Error message is: " + e.getMessage(), e);
+        }catch(InterruptedException e){
+            Thread.currentThread().interrupt();
+            myLogger.log(Level.SEVERE, "InterruptedException occurred during the exportPem process.  Error message is: " + e.getMessage(), e);
+        }// end try...catch
 
-            try{
-                if(in != null){
-                    in.close();
-                }// end if
-            }catch(IOException e){
-                myLogger.log(Level.SEVERE, "IOException occurred while trying to close the inputstream used in the checkWebServerCertificate process.  Error message is: " + e.getMessage(), e);
-            }// end try...catch
+        myLogger.exiting(MY_CLASS_NAME, "exportPem");
+    }// end exportPem
 
-            try{
-                if(socket != null){
-                    socket.close();
-                }// end if
-            }catch(IOException e){
-                myLogger.log(Level.SEVERE, "IOException occurred while trying to close the socket used in the checkWebServerCertificate process.  Error message is: " + e.getMessage(), e);
-            }// end try...catch
-        }// end try...catch...finally
-        myLogger.exiting(MY_CLASS_NAME, "checkWebServerCertificate");
-    }// end checkWebServerCertificate
+    /**
+     * @return the truststore TLS clients should use, the minimal truststore when it was written otherwise the local truststore
+     */
+    public Path getTrustStoreLocation() {
+        return (this.minimalStore != null) ? this.truststoreFile.resolveSibling(MinimalTrustStore.MINIMAL_TRUST_STORE_NM) : this.truststoreFile;
+    }// end getTrustStoreLocation
 
     /**
-     * This method will set the javax.net.ssl.trustStore property. The only requirement is that it needs to exist.
+     * @return the keystore type of the minimal truststore when it was written, null when TLS clients should use the local truststore
+     */
+    public String getTrustStoreType() {
+        return (this.minimalStore != null) ? this.minimalStore.getType() : null;
+    }// end getTrustStoreType
+
+    /**
+     * This method will set the javax.net.ssl.trustStore property. The only requirement is that it needs to exist. When the minimal truststore was written it is used instead of the local truststore, its type and password are set as well since a PKCS12
+     * truststore read without a password holds no certificates.
      */
     public void setTrustStoreLocationProperty() {
-        myLogger.entering(MY_CLASS_NAME, "setTrustStoreLocationProperty");
+        setTrustStoreLocationProperty(getTrustStoreLocation(), getTrustStoreType());
+    }// end setTrustStoreLocationProperty
+
+    /**
+     * This method will set the javax.net.ssl.trustStore property to a truststore written by another JVM, for example the trust daemon.
+     *
+     * @param truststore
+     *        the truststore TLS clients should use
+     * @param type
+     *        the keystore type of the truststore, null to leave the type and password properties alone
+     */
+    public static void setTrustStoreLocationProperty(Path truststore, String type) {
+        myLogger.entering(MY_CLASS_NAME, "setTrustStoreLocationProperty", truststore);
 
         try{
-            System.setProperty(TRUST_STORE_PROPERTY_NM, this.truststoreFile.toFile().getCanonicalPath());
+            System.setProperty(TRUST_STORE_PROPERTY_NM, truststore.toFile().getCanonicalPath());
+            if(type != null){
+                System.setProperty(TRUST_STORE_TYPE_PROPERTY_NM, type);
+                System.setProperty(TRUST_STORE_PASSWORD_PROPERTY_NM, "changeit");// this is the default password
+            }// end if
         }catch(Exception e){
             throw new RuntimeException("Problem trying to set truststore location using the getCanonicalPath() method.  Error message is: " + e.getMessage());
         }// end try...catch
@@ -304,48 +312,29 @@ public class TrustedCertficatesStore {
     }// end setTrustStoreLocationProperty
 
     /**
-     * This class is used for checking the servers trusted certificates.
-     * <p>
-     * The primary responsibility of the TrustManager is to determine whether the presented authentication credentials should be trusted. If the credentials are not trusted, then the connection will be terminated.
-     * </p>
+     * This method will install a {@link ReloadableTrustManager} holding the local truststore as the default SSLContext of the JVM, or update the trust anchors of the one already installed. TLS clients created later in the JVM trust the new certificates
+     * without the truststore file being read again.
      */
-    private static class SavingTrustManager implements X509TrustManager {
-
-        private final X509TrustManager tm;
-        private X509Certificate[] chain;
-
-        /**
-         * @param tm
-         */
-        SavingTrustManager(X509TrustManager tm) {
-            this.tm = tm;
-        }// end constructor
-
-        /**
-         * {@inheritDoc}
-         */
-        @Override
-        public X509Certificate[] getAcceptedIssuers() {
-            throw new UnsupportedOperationException();
-        }// end getAcceptedIssuers
-
-        /**
-         * {@inheritDoc}
-         */
-        @Override
-        public void checkClientTrusted(X509Certificate[] chain, String authType) throws CertificateException {
-            throw new UnsupportedOperationException();
-        }// end checkClientTrusted
-
-        /**
-         * {@inheritDoc}
-         */
-        @Override
-        public void checkServerTrusted(X509Certificate[] chain, String authType) throws CertificateException {
-            this.chain = chain;
-            tm.checkServerTrusted(chain, authType);
-        }// end checkServerTrusted
-
-    }// end class
+    public void installTrustManager() {
+        myLogger.entering(MY_CLASS_NAME, "installTrustManager");
+
+        try{
+            // the minimal truststore is private to this instance, the local truststore may be shared
+            if(this.minimalStore != null){
+                ReloadableTrustManager.install(this.truststoreFile.getParent(), this.minimalStore, this.options.getSessionCacheSize());
+            }else{
+                KeyStore ks = this.options.getKeyStoreLoader().load(this.truststoreFile, "changeit".toCharArray());// this is the default password
+                synchronized(ks){
+                    ReloadableTrustManager.install(this.truststoreFile.getParent(), ks, this.options.getSessionCacheSize());
+                }// end synchronized
+            }// end if
+        }catch(GeneralSecurityException e){
+            myLogger.log(Level.SEVERE, "GeneralSecurityException occurred during the installTrustManager process.  Error message is: " + e.getMessage(), e);
+        }catch(IOException e){
+            myLogger.log(Level.SEVERE, "IOException occurred during the installTrustManager process.  Error message is: " + e.getMessage(), e);
+        }// end try...catch
+
+        myLogger.exiting(MY_CLASS_NAME, "installTrustManager");
+    }// end installTrustManager
 
 }// end class
@@ -0,0 +1,100 @@
+package com.omo.free.trustcert;
+
+import org.apache.tools.ant.BuildEvent;
+import org.apache.tools.ant.BuildListener;
+import org.apache.tools.ant.Project;
+
+import com.omo.free.security.ssl.ReloadableTrustManager;
+
+/**
+ * This class logs how many TLS handshakes of the default SSLContext were full handshakes and how many resumed a cached session once the build finishes. It is stored on the Ant {@link Project} as a reference the first time the {@link TrustCertTask}
+ * shares its TLS sessions with the build, the handshakes made before then are not counted.
+ *
+ * @author Richard Salas JCCC
+ */
+public class HandshakeReport implements BuildListener {
+
+    /** the id of the project reference holding the report */
+    public static final String REFERENCE_ID = "trustcert.handshake.report";
+
+    private final long fullAtStart = ReloadableTrustManager.getFullHandshakes();
+    private final long resumedAtStart = ReloadableTrustManager.getResumedHandshakes();
+
+    /**
+     * Returns the report of the project, creating it and registering it as a build listener if this is the first call within the build.
+     *
+     * @param project the current project
+     * @return the report of the project
+     */
+    public static HandshakeReport getInstance(Project project) {
+        synchronized(project){
+            HandshakeReport instance = project.getReference(REFERENCE_ID);
+            if(instance == null){
+                instance = new HandshakeReport();
+                project.addReference(REFERENCE_ID, instance);
+                project.addBuildListener(instance);
+            }//end if
+            return instance;
+        }//end synchronized
+    }//end method
+
+    /**
+     * @return the number of full handshakes since the report was created
+     */
+    public long getFullHandshakes() {
+        return ReloadableTrustManager.getFullHandshakes() - this.fullAtStart;
+    }//end method
+
+    /**
+     * @return the number of resumed handshakes since the report was created
+     */
+    public long getResumedHandshakes() {
+        return ReloadableTrustManager.getResumedHandshakes() - this.resumedAtStart;
+    }//end method
+
+    /**
+     * Logs the number of full and resumed handshakes of the build.
+     *
+     * {@inheritDoc}
+     */
+    @Override public void buildFinished(BuildEvent event) {
+        event.getProject().log("TLS handshakes of the build: " + getFullHandshakes() + " full, " + getResumedHandshakes() + " resumed.", Project.MSG_INFO);
+    }//end method
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override public void buildStarted(BuildEvent event) {
+    }//end method
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override public void targetStarted(BuildEvent event) {
+    }//end method
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override public void targetFinished(BuildEvent event) {
+    }//end method
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override public void taskStarted(BuildEvent event) {
+    }//end method
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override public void taskFinished(BuildEvent event) {
+    }//end method
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override public void messageLogged(BuildEvent event) {
+    }//end method
+
+}//end class
@@ -0,0 +1,264 @@
+package com.omo.free.trustcert;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.GeneralSecurityException;
+import java.security.KeyStore;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.tools.ant.BuildEvent;
+import org.apache.tools.ant.BuildListener;
+import org.apache.tools.ant.Project;
+
+import com.omo.free.security.ssl.FileKeyStoreLoader;
+import com.omo.free.security.ssl.KeyStoreLoader;
+
+/**
+ * This class is a build scoped, in memory cache of the local truststores used by the {@link TrustCertTask}. It is stored on the Ant {@link Project} as a reference so that every invocation of the task within a build shares the same loaded keystores.
+ * <p>
+ * Entries are keyed by the canonical path of the truststore file and are reloaded only when the modified time or size of the file changes. When deferred writing is used the new entries are held in memory and written once when the build finishes.
+ * </p>
+ *
+ * @author Richard Salas, JCCC
+ */
+public class KeyStoreCache implements BuildListener {
+
+    /** the id of the project reference holding the cache */
+    public static final String REFERENCE_ID = "trustcert.keystore.cache";
+
+    private final KeyStoreLoader fileLoader = new FileKeyStoreLoader();
+    private final Map<String, CachedKeyStore> cache = new HashMap<String, CachedKeyStore>();
+
+    /**
+     * Returns the cache of the project, creating it and registering it as a build listener if this is the first call within the build.
+     *
+     * @param project the current project
+     * @return the cache of the project
+     */
+    public static KeyStoreCache getInstance(Project project) {
+        synchronized(project){
+            KeyStoreCache instance = project.getReference(REFERENCE_ID);
+            if(instance == null){
+                instance = new KeyStoreCache();
+                project.addReference(REFERENCE_ID, instance);
+                project.addBuildListener(instance);
+            }//end if
+            return instance;
+        }//end synchronized
+    }//end method
+
+    /**
+     * Returns a loader backed by this cache.
+     *
+     * @param deferWrite true if stores should be held in memory until the build finishes, false if they should be written straight away
+     * @return the loader
+     */
+    public KeyStoreLoader getLoader(final boolean deferWrite) {
+        return new KeyStoreLoader() {
+
+            @Override
+            public KeyStore load(Path truststoreFile, char[] password) throws IOException, GeneralSecurityException {
+                return KeyStoreCache.this.load(truststoreFile, password);
+            }//end method
+
+            @Override
+            public void store(Path truststoreFile, KeyStore keystore, char[] password) throws IOException, GeneralSecurityException {
+                KeyStoreCache.this.store(truststoreFile, keystore, password, deferWrite);
+            }//end method
+        };
+    }//end method
+
+    /**
+     * Returns the cached keystore when the truststore file has not changed since it was loaded (or when it holds changes not yet written), otherwise the keystore is loaded from the file.
+     *
+     * @param truststoreFile the truststore file
+     * @param password the password of the truststore
+     * @return the keystore
+     * @throws IOException if the truststore file cannot be read
+     * @throws GeneralSecurityException if the keystore cannot be loaded
+     */
+    private synchronized KeyStore load(Path truststoreFile, char[] password) throws IOException, GeneralSecurityException {
+        String key = truststoreFile.toFile().getCanonicalPath();
+        BasicFileAttributes attributes = Files.readAttributes(truststoreFile, BasicFileAttributes.class);
+
+        CachedKeyStore cached = cache.get(key);
+        if(cached != null && (cached.dirty || cached.isCurrent(attributes))){
+            return cached.keystore;
+        }//end if
+
+        KeyStore keystore = fileLoader.load(truststoreFile, password);
+        cache.put(key, new CachedKeyStore(truststoreFile, keystore, password, attributes));
+        return keystore;
+    }//end method
+
+    /**
+     * Stores the keystore into the cache and writes it to the truststore file unless the write is deferred.
+     *
+     * @param truststoreFile the truststore file
+     * @param keystore the keystore to store
+     * @param password the password of the truststore
+     * @param deferWrite true if the write should be held until the build finishes
+     * @throws IOException if the truststore file cannot be written
+     * @throws GeneralSecurityException if the keystore cannot be stored
+     */
+    private void store(Path truststoreFile, KeyStore keystore, char[] password, boolean deferWrite) throws IOException, GeneralSecurityException {
+        String key = truststoreFile.toFile().getCanonicalPath();
+
+        // locks are always taken keystore first then cache so that parallel tasks cannot deadlock
+        synchronized(keystore){
+            synchronized(this){
+                CachedKeyStore cached = cache.get(key);
+                if(cached == null){
+                    cached = new CachedKeyStore(truststoreFile, keystore, password, null);
+                    cache.put(key, cached);
+                }//end if
+                cached.keystore = keystore;
+                cached.password = password;
+
+                if(deferWrite){
+                    cached.dirty = true;
+                }else{
+                    cached.write(fileLoader);
+                }//end if
+            }//end synchronized
+        }//end synchronized
+    }//end method
+
+    /**
+     * Writes every keystore holding changes that have not been written yet.
+     *
+     * @param project the project used for logging
+     */
+    public void flush(Project project) {
+        List<CachedKeyStore> pending = new ArrayList<CachedKeyStore>();
+        synchronized(this){
+            for(CachedKeyStore cached : cache.values()){
+                if(cached.dirty){
+                    pending.add(cached);
+                }//end if
+            }//end for
+        }//end synchronized
+
+        for(CachedKeyStore cached : pending){
+            synchronized(cached.keystore){
+                synchronized(this){
+                    try{
+                        cached.write(fileLoader);
+                        project.log("Saved deferred truststore changes to " + cached.truststoreFile, Project.MSG_VERBOSE);
+                    }catch(Exception e){
+                        project.log(">>>> ERROR  Could not save the deferred truststore changes to " + cached.truststoreFile + ". Error message: " + e.getMessage(), e, Project.MSG_ERR);
+                    }//end try...catch
+                }//end synchronized
+            }//end synchronized
+        }//end for
+    }//end method
+
+    /**
+     * Writes the deferred keystore changes.
+     *
+     * {@inheritDoc}
+     */
+    @Override public void buildFinished(BuildEvent event) {
+        flush(event.getProject());
+    }//end method
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override public void buildStarted(BuildEvent event) {
+    }//end method
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override public void targetStarted(BuildEvent event) {
+    }//end method
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override public void targetFinished(BuildEvent event) {
+    }//end method
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override public void taskStarted(BuildEvent event) {
+    }//end method
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override public void taskFinished(BuildEvent event) {
+    }//end method
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override public void messageLogged(BuildEvent event) {
+    }//end method
+
+    /**
+     * This class holds a loaded keystore along with the modified time and size of the file it was loaded from.
+     */
+    private static class CachedKeyStore {
+
+        private final Path truststoreFile;
+        private KeyStore keystore;
+        private char[] password;
+        private long lastModified = -1;
+        private long size = -1;
+        private boolean dirty;
+
+        /**
+         * @param truststoreFile the truststore file
+         * @param keystore the loaded keystore
+         * @param password the password of the truststore
+         * @param attributes the attributes of the file when it was loaded, may be null
+         */
+        CachedKeyStore(Path truststoreFile, KeyStore keystore, char[] password, BasicFileAttributes attributes) {
+            this.truststoreFile = truststoreFile;
+            this.keystore = keystore;
+            this.password = password;
+            stamp(attributes);
+        }//end constructor
+
+        /**
+         * @param attributes the current attributes of the file
+         * @return true if the file has not changed since it was loaded or written
+         */
+        boolean isCurrent(BasicFileAttributes attributes) {
+            return attributes.lastModifiedTime().toMillis() == lastModified && attributes.size() == size;
+        }//end method
+
+        /**
+         * Writes the keystore to the file and records the new modified time and size. The caller must hold the lock of the keystore.
+         *
+         * @param loader the loader used to write the file
+         * @throws IOException if the file cannot be written
+         * @throws GeneralSecurityException if the keystore cannot be stored
+         */
+        void write(KeyStoreLoader loader) throws IOException, GeneralSecurityException {
+            loader.store(truststoreFile, keystore, password);
+            stamp(Files.readAttributes(truststoreFile, BasicFileAttributes.class));
+            dirty = false;
+        }//end method
+
+        /**
+         * @param attributes the attributes of the file, may be null
+         */
+        private void stamp(BasicFileAttributes attributes) {
+            if(attributes != null){
+                this.lastModified = attributes.lastModifiedTime().toMillis();
+                this.size = attributes.size();
+            }//end if
+        }//end method
+
+    }//end class
+
+}//end class
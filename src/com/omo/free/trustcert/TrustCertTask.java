@@ -1,8 +1,25 @@
 package com.omo.free.trustcert;
 
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.cert.CertificateException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
 import org.apache.tools.ant.BuildException;
+import org.apache.tools.ant.DirectoryScanner;
+import org.apache.tools.ant.Project;
 import org.apache.tools.ant.Task;
+import org.apache.tools.ant.types.FileSet;
 
+import com.omo.free.security.ssl.CertificateFiles;
+import com.omo.free.security.ssl.HostResolver;
+import com.omo.free.security.ssl.TrustMetrics;
+import com.omo.free.security.ssl.TrustStoreOptions;
 import com.omo.free.security.ssl.TrustedCertficatesStore;
 
 /**
@@ -10,7 +27,7 @@ import com.omo.free.security.ssl.TrustedCertficatesStore;
  * <ol>
  * <li>Create local directory</li>
  * <li>Export ALL certificates from keystore of JVM to local directory</li>
- * <li>Make call to {@code secureUrl} and export certificate chain from the call</li>
+ * <li>Make call to {@code secureUrl} (and every nested {@code <url>} and url within the {@code urlsFile}) and export certificate chain from the call</li>
  * <li>Add certificate to local keystore</li>
  * <li>Set location to the local keystore to the {@code javax.net.ssl.trustStore} property</li>
  * </ol>
@@ -19,8 +36,44 @@ import com.omo.free.security.ssl.TrustedCertficatesStore;
  */
 public class TrustCertTask extends Task {
 
-    private String secureUrl;//REQUIRED
+    /** the id of the project reference holding the resolver shared by the invocations of the build */
+    public static final String HOST_RESOLVER_REFERENCE_ID = "trustcert.host.resolver";
+
+    private static final long HOUR_MILLIS = 60L * 60L * 1000L;
+    private static final long DAY_MILLIS = 24L * HOUR_MILLIS;
+    private static final long MINUTE_MILLIS = 60L * 1000L;
+
+    private String secureUrl;//REQUIRED (unless nested urls or urlsFile are used)
+    private List<SecureUrl> urls = new ArrayList<SecureUrl>();//OPTIONAL
+    private List<FileSet> filesets = new ArrayList<FileSet>();//OPTIONAL
+    private File urlsFile;//OPTIONAL
+    private int threads = TrustStoreOptions.DEFAULT_THREADS;//OPTIONAL
     private String keystoreDir = ".";//OPTIONAL
+    private boolean deferWrite;//OPTIONAL
+    private boolean refresh;//OPTIONAL
+    private boolean installTrustManager;//OPTIONAL
+    private boolean useDaemon = true;//OPTIONAL
+    private File daemonDir;//OPTIONAL
+    private boolean storeIntermediates;//OPTIONAL
+    private boolean pruneExpired;//OPTIONAL
+    private boolean minimal;//OPTIONAL
+    private String minimalType = TrustStoreOptions.DEFAULT_MINIMAL_TYPE;//OPTIONAL
+    private String minimalAllow;//OPTIONAL
+    private File exportDir;//OPTIONAL
+    private int sessionCacheSize;//OPTIONAL
+    private boolean allAddresses;//OPTIONAL
+    private String metricsPrefix = "trustcert";//OPTIONAL
+    private File reportFile;//OPTIONAL
+    private String engine = TrustStoreOptions.ENGINE_SOCKET;//OPTIONAL
+    private int selectors = TrustStoreOptions.DEFAULT_SELECTORS;//OPTIONAL
+    private int probeCacheTtl = (int) (TrustStoreOptions.DEFAULT_PROBE_CACHE_TTL / HOUR_MILLIS);//OPTIONAL
+    private int renewBeforeExpiry = (int) (TrustStoreOptions.DEFAULT_RENEW_BEFORE / DAY_MILLIS);//OPTIONAL
+    private int connectTimeout = TrustStoreOptions.DEFAULT_CONNECT_TIMEOUT;//OPTIONAL
+    private int handshakeTimeout = TrustStoreOptions.DEFAULT_HANDSHAKE_TIMEOUT;//OPTIONAL
+    private long deadline;//OPTIONAL
+    private int retries;//OPTIONAL
+    private long retryBackoff = TrustStoreOptions.DEFAULT_RETRY_BACKOFF;//OPTIONAL
+    private int breakerCoolDown;//OPTIONAL
     private boolean verbose;//OPTIONAL
     private boolean fail = true;//OPTIONAL
 
@@ -55,14 +108,184 @@ public class TrustCertTask extends Task {
      */
     private void trustCertificate() {
         try{
-            vlog("Adding certifcate to keystore from the following url: " + String.valueOf(secureUrl) + ".");
-            new TrustedCertficatesStore(this.keystoreDir, this.secureUrl);
+            TrustStoreOptions options = new TrustStoreOptions();
+            options.setKeystoreDir(this.keystoreDir);
+            options.setThreads(this.threads);
+            options.setKeyStoreLoader(KeyStoreCache.getInstance(getProject()).getLoader(this.deferWrite));
+            options.setRefresh(this.refresh);
+            options.setInstallTrustManager(this.installTrustManager);
+            options.setStoreIntermediates(this.storeIntermediates);
+            options.setPruneExpired(this.pruneExpired);
+            options.setMinimal(this.minimal);
+            options.setMinimalType(this.minimalType);
+            if(this.minimalAllow != null){
+                for(String entry : this.minimalAllow.split(",")){
+                    if(!entry.trim().isEmpty()){
+                        options.addMinimalAllow(entry);
+                    }//end if
+                }//end for
+            }//end if
+            if(this.exportDir != null){
+                options.setExportDir(this.exportDir.getAbsolutePath());
+            }//end if
+            options.setSessionCacheSize(this.sessionCacheSize);
+            if(this.sessionCacheSize > 0){
+                HandshakeReport.getInstance(getProject());
+            }//end if
+            options.setAllAddresses(this.allAddresses);
+            if(this.allAddresses){
+                options.setHostResolver(getHostResolver());
+            }//end if
+            options.setEngine(this.engine);
+            options.setSelectors(this.selectors);
+            options.setProbeCacheTtl(this.probeCacheTtl * HOUR_MILLIS);
+            options.setRenewBefore(this.renewBeforeExpiry * DAY_MILLIS);
+            options.setConnectTimeout(this.connectTimeout);
+            options.setHandshakeTimeout(this.handshakeTimeout);
+            options.setDeadline(this.deadline);
+            options.setRetries(this.retries);
+            options.setRetryBackoff(this.retryBackoff);
+            options.setBreakerCoolDown(this.breakerCoolDown * MINUTE_MILLIS);
+            for(String url : collectUrls()){
+                vlog("Adding certifcate to keystore from the following url: " + String.valueOf(url) + ".");
+                options.addUrl(url);
+            }//end for
+            for(File file : collectCertificateFiles()){
+                vlog("Adding certifcates to keystore from the following file: " + String.valueOf(file) + ".");
+                options.addCertificateFile(file.getAbsolutePath());
+            }//end for
+            if(!trustWithDaemon(options)){
+                new TrustedCertficatesStore(options);
+            }//end if
+            publishMetrics(options.getMetrics());
             vlog("Certifcate processing completed succesfully.");
         }catch(Exception e){
             vlog(">>>> ERROR  Could not add the certificate to keystore due to an exception. Error message: " + e.getMessage());
-            if(fail){
-                throw new BuildException("Could not extract the certificate from the certificate chain returned from the url " + String.valueOf(secureUrl) + ".  Please verify that this url exists. If it does exist then, please inform a known ant developer to find out how to encrypt your values.");
+            if(fail && e instanceof CertificateException){
+                throw new BuildException("Error!!! Could not import the certificate files.  Error message: " + e.getMessage() + "!!!", e);
+            }else if(fail){
+                throw new BuildException("Could not extract the certificate from the certificate chain returned from the url(s) " + String.valueOf(describeUrls()) + ".  Please verify that this url exists. If it does exist then, please inform a known ant developer to find out how to encrypt your values.");
+            }//end if
+        }//end try...catch
+    }//end method
+
+    /**
+     * Returns the resolver shared by every invocation of the task within the build, so a host is only looked up once per build.
+     *
+     * @return the resolver of the project
+     */
+    private HostResolver getHostResolver() {
+        synchronized(getProject()){
+            HostResolver resolver = getProject().getReference(HOST_RESOLVER_REFERENCE_ID);
+            if(resolver == null){
+                resolver = new HostResolver();
+                getProject().addReference(HOST_RESOLVER_REFERENCE_ID, resolver);
             }//end if
+            return resolver;
+        }//end synchronized
+    }//end method
+
+    /**
+     * Sends the options to the trust daemon when one is running, the daemon keeps the local keystore loaded between builds.
+     *
+     * @param options the options of the task
+     * @return true if the daemon trusted the urls, false if no daemon could be reached and the urls must be trusted within this JVM
+     * @throws TrustDaemonException if the daemon was reached but failed the request
+     */
+    private boolean trustWithDaemon(TrustStoreOptions options) throws TrustDaemonException {
+        if(!this.useDaemon){
+            return false;
+        }//end if
+        if(this.sessionCacheSize > 0){
+            vlog("The TLS sessions are shared with the rest of the build, trusting the url(s) within this JVM.");
+            return false;
+        }//end if
+
+        Path directory = (this.daemonDir != null) ? this.daemonDir.toPath() : TrustDaemonProtocol.defaultDirectory();
+        TrustDaemonClient client = TrustDaemonClient.find(directory);
+        if(client == null){
+            vlog("No trust daemon is running in " + directory + ", trusting the url(s) within this JVM.");
+            return false;
+        }//end if
+
+        try{
+            client.trust(options);
+            vlog("The url(s) were trusted by the trust daemon in " + directory + ".");
+            return true;
+        }catch(IOException e){
+            vlog("Could not reach the trust daemon in " + directory + ", trusting the url(s) within this JVM. Error message: " + e.getMessage());
+            return false;
+        }//end try...catch
+    }//end method
+
+    /**
+     * Collects the urls from the {@code secureUrl} attribute, the nested {@code <url>} elements and the {@code urlsFile} in that order.
+     *
+     * @return the urls to trust
+     * @throws BuildException
+     *         exception thrown when the urlsFile cannot be read
+     */
+    private List<String> collectUrls() throws BuildException {
+        List<String> collected = new ArrayList<String>();
+        if(this.secureUrl != null){
+            collected.add(this.secureUrl);
+        }//end if
+
+        for(SecureUrl url : this.urls){
+            if(url.getUrl() == null){
+                throw new BuildException("Error!!! A nested <url> element is missing its 'url' attribute!!!");
+            }//end if
+            collected.add(url.getUrl().trim());
+        }//end for
+
+        if(this.urlsFile != null){
+            try{
+                for(String line : Files.readAllLines(this.urlsFile.toPath(), StandardCharsets.UTF_8)){
+                    line = line.trim();
+                    if(!line.isEmpty() && !line.startsWith("#")){
+                        collected.add(line);
+                    }//end if
+                }//end for
+            }catch(IOException e){
+                throw new BuildException("Error!!! Could not read the urlsFile " + String.valueOf(this.urlsFile) + ".  Error message: " + e.getMessage(), e);
+            }//end try...catch
+        }//end if
+        return collected;
+    }//end method
+
+    /**
+     * Collects the certificate files of the nested {@code <fileset>} elements, in the order of the filesets and sorted by name within each one. Files without a certificate extension are skipped.
+     *
+     * @return the files whose certificates are added to the keystore
+     */
+    private List<File> collectCertificateFiles() {
+        List<File> collected = new ArrayList<File>();
+        for(FileSet fileset : this.filesets){
+            DirectoryScanner scanner = fileset.getDirectoryScanner(getProject());
+            String[] names = scanner.getIncludedFiles();
+            Arrays.sort(names);
+            for(String name : names){
+                File file = new File(scanner.getBasedir(), name);
+                if(CertificateFiles.isCertificateFile(file.toPath())){
+                    collected.add(file);
+                }else{
+                    vlog("Skipping " + file + ", it is not a " + CertificateFiles.EXTENSIONS + " file.");
+                }//end if
+            }//end for
+        }//end for
+        return collected;
+    }//end method
+
+    /**
+     * Describes the urls for error messages.
+     *
+     * @return the urls separated by commas
+     */
+    private String describeUrls() {
+        try{
+            return String.valueOf(collectUrls());
+        }catch(BuildException e){
+            return String.valueOf(this.secureUrl);
         }//end try...catch
     }//end method
 
@@ -75,13 +298,44 @@ public class TrustCertTask extends Task {
     private void initRequiredAttributes() throws BuildException {
         vlog("Initializing the required attribute... secureUrl");
 
-        if(this.secureUrl == null){
-            throw new BuildException("Error!!! You didn't specify a 'secureUrl' name for the trustcert task!!!");
+        if(this.secureUrl == null && this.urls.isEmpty() && this.urlsFile == null && this.filesets.isEmpty()){
+            throw new BuildException("Error!!! You didn't specify a 'secureUrl' name, a nested <url> element, a 'urlsFile' or a nested <fileset> element for the trustcert task!!!");
         }//end if
 
         vlog("The required attribute has been succesfully initialized");
     }//end method
 
+    /**
+     * Publishes the time spent in each phase as {@code <metricsPrefix>.<phase>.ms} properties and the number of servers per outcome as {@code <metricsPrefix>.<outcome>.count} properties, then writes the JSON report when a {@code reportFile} was given.
+     * When the TLS sessions are shared the number of full and resumed handshakes of the build so far are published as {@code <metricsPrefix>.handshake.full.count} and {@code <metricsPrefix>.handshake.resumed.count}.
+     *
+     * @param metrics the metrics of the run
+     */
+    private void publishMetrics(TrustMetrics metrics) {
+        for(TrustMetrics.Phase phase : TrustMetrics.Phase.values()){
+            getProject().setNewProperty(this.metricsPrefix + "." + phase.getName() + ".ms", String.valueOf(metrics.getMillis(phase)));
+            vlog("Time spent in the " + phase.getName() + " phase: " + metrics.getMillis(phase) + "ms");
+        }//end for
+        for(TrustMetrics.Outcome outcome : TrustMetrics.Outcome.values()){
+            getProject().setNewProperty(this.metricsPrefix + "." + outcome.getName() + ".count", String.valueOf(metrics.getCount(outcome)));
+        }//end for
+        if(this.sessionCacheSize > 0){
+            HandshakeReport report = HandshakeReport.getInstance(getProject());
+            getProject().setNewProperty(this.metricsPrefix + ".handshake.full.count", String.valueOf(report.getFullHandshakes()));
+            getProject().setNewProperty(this.metricsPrefix + ".handshake.resumed.count", String.valueOf(report.getResumedHandshakes()));
+            vlog("TLS handshakes of the build so far: " + report.getFullHandshakes() + " full, " + report.getResumedHandshakes() + " resumed");
+        }//end if
+
+        if(this.reportFile != null){
+            try{
+                metrics.writeJson(this.reportFile.toPath());
+                vlog("Wrote the trust certificate report to " + this.reportFile + ".");
+            }catch(IOException e){
+                log(">>>> WARNING  Could not write the report file " + this.reportFile + ". Error message: " + e.getMessage(), Project.MSG_WARN);
+            }//end try...catch
+        }//end if
+    }//end method
+
     /**
      * Sets the secure URL that a certificate will be attempted to exported from so that any calls to it will be trusted.
      *
@@ -127,4 +381,326 @@ public class TrustCertTask extends Task {
         this.keystoreDir = keystoreDir;
     }//end method
 
+    /**
+     * Sets whether new certificates are held in memory and written to the local keystore once when the build finishes instead of straight away.
+     *
+     * @param deferWrite true or false value
+     */
+    public void setDeferWrite(boolean deferWrite) {
+        this.deferWrite = deferWrite;
+    }//end method
+
+    /**
+     * Sets the handshake engine, {@code socket} runs one blocking handshake per thread and {@code nio} runs every handshake at once on a few selector threads.
+     *
+     * @param engine socket or nio
+     */
+    public void setEngine(String engine) {
+        if(!TrustStoreOptions.ENGINE_SOCKET.equals(engine) && !TrustStoreOptions.ENGINE_NIO.equals(engine)){
+            throw new BuildException("Error!!! The 'engine' attribute must be 'socket' or 'nio'!!!");
+        }//end if
+        this.engine = engine;
+    }//end method
+
+    /**
+     * Sets the number of selector threads used by the nio engine.
+     *
+     * @param selectors the number of selectors
+     */
+    public void setSelectors(int selectors) {
+        if(selectors < 1){
+            throw new BuildException("Error!!! The 'selectors' attribute must be greater than zero!!!");
+        }//end if
+        this.selectors = selectors;
+    }//end method
+
+    /**
+     * Sets the number of milliseconds a connect to a host may take.
+     *
+     * @param connectTimeout the connect timeout in milliseconds
+     */
+    public void setConnectTimeout(int connectTimeout) {
+        if(connectTimeout < 1){
+            throw new BuildException("Error!!! The 'connectTimeout' attribute must be greater than zero!!!");
+        }//end if
+        this.connectTimeout = connectTimeout;
+    }//end method
+
+    /**
+     * Sets the number of milliseconds a handshake may take once connected.
+     *
+     * @param handshakeTimeout the handshake timeout in milliseconds
+     */
+    public void setHandshakeTimeout(int handshakeTimeout) {
+        if(handshakeTimeout < 1){
+            throw new BuildException("Error!!! The 'handshakeTimeout' attribute must be greater than zero!!!");
+        }//end if
+        this.handshakeTimeout = handshakeTimeout;
+    }//end method
+
+    /**
+     * Sets the number of milliseconds every handshake, including its retries, must finish within. Zero means no deadline.
+     *
+     * @param deadline the deadline in milliseconds
+     */
+    public void setDeadline(long deadline) {
+        if(deadline < 0){
+            throw new BuildException("Error!!! The 'deadline' attribute must not be negative!!!");
+        }//end if
+        this.deadline = deadline;
+    }//end method
+
+    /**
+     * Sets the number of times a connect or handshake that failed before the server's certificate was known is retried.
+     *
+     * @param retries the number of retries
+     */
+    public void setRetries(int retries) {
+        if(retries < 0){
+            throw new BuildException("Error!!! The 'retries' attribute must not be negative!!!");
+        }//end if
+        this.retries = retries;
+    }//end method
+
+    /**
+     * Sets the number of milliseconds waited before the first retry, the wait doubles with every retry.
+     *
+     * @param retryBackoff the base backoff in milliseconds
+     */
+    public void setRetryBackoff(long retryBackoff) {
+        if(retryBackoff < 0){
+            throw new BuildException("Error!!! The 'retryBackoff' attribute must not be negative!!!");
+        }//end if
+        this.retryBackoff = retryBackoff;
+    }//end method
+
+    /**
+     * Sets the number of minutes a host whose handshake failed is skipped by later builds. Zero disables the circuit breaker.
+     *
+     * @param breakerCoolDown the cool-down in minutes
+     */
+    public void setBreakerCoolDown(int breakerCoolDown) {
+        if(breakerCoolDown < 0){
+            throw new BuildException("Error!!! The 'breakerCoolDown' attribute must not be negative!!!");
+        }//end if
+        this.breakerCoolDown = breakerCoolDown;
+    }//end method
+
+    /**
+     * Sets whether a handshake is made with every host even when it was verified recently.
+     *
+     * @param refresh true or false value
+     */
+    public void setRefresh(boolean refresh) {
+        this.refresh = refresh;
+    }//end method
+
+    /**
+     * Sets whether a trust manager holding the local keystore is installed as the default SSLContext of the running JVM, so later tasks of the build trust the new certificates straight away.
+     *
+     * @param installTrustManager true or false value
+     */
+    public void setInstallTrustManager(boolean installTrustManager) {
+        this.installTrustManager = installTrustManager;
+    }//end method
+
+    /**
+     * Sets whether a running trust daemon is used, the urls are trusted within the JVM of the build when no daemon is running.
+     *
+     * @param useDaemon true or false value
+     */
+    public void setUseDaemon(boolean useDaemon) {
+        this.useDaemon = useDaemon;
+    }//end method
+
+    /**
+     * Sets the directory holding the socket or port file of the trust daemon.
+     *
+     * @param daemonDir the daemon directory
+     */
+    public void setDaemonDir(File daemonDir) {
+        this.daemonDir = daemonDir;
+    }//end method
+
+    /**
+     * Sets whether the intermediate certificates sent by a server are stored along with the top certificate of its chain.
+     *
+     * @param storeIntermediates true or false value
+     */
+    public void setStoreIntermediates(boolean storeIntermediates) {
+        this.storeIntermediates = storeIntermediates;
+    }//end method
+
+    /**
+     * Sets whether every expired certificate is removed from the local keystore.
+     *
+     * @param pruneExpired true or false value
+     */
+    public void setPruneExpired(boolean pruneExpired) {
+        this.pruneExpired = pruneExpired;
+    }//end method
+
+    /**
+     * Sets whether a minimal truststore holding only the trust anchors of the urls (and the {@code minimalAllow} entries) is written next to the local keystore and used as the truststore of the running JVM.
+     *
+     * @param minimal true or false value
+     */
+    public void setMinimal(boolean minimal) {
+        this.minimal = minimal;
+    }//end method
+
+    /**
+     * Sets the keystore type of the minimal truststore.
+     *
+     * @param minimalType PKCS12 or JKS
+     */
+    public void setMinimalType(String minimalType) {
+        if(!"PKCS12".equalsIgnoreCase(minimalType) && !"JKS".equalsIgnoreCase(minimalType)){
+            throw new BuildException("Error!!! The 'minimalType' attribute must be 'PKCS12' or 'JKS'!!!");
+        }//end if
+        this.minimalType = minimalType;
+    }//end method
+
+    /**
+     * Sets the entries of the local keystore that are always kept in the minimal truststore.
+     *
+     * @param minimalAllow aliases or SHA-256 fingerprints separated by commas
+     */
+    public void setMinimalAllow(String minimalAllow) {
+        this.minimalAllow = minimalAllow;
+    }//end method
+
+    /**
+     * Sets the directory the certificates of the local keystore (or of the minimal truststore) are exported to as PEM files, one {@code <alias>.pem} per certificate and a {@code ca-bundle.pem} holding all of them.
+     *
+     * @param exportDir the export directory
+     */
+    public void setExportDir(File exportDir) {
+        this.exportDir = exportDir;
+    }//end method
+
+    /**
+     * Sets the number of TLS sessions the default SSLContext of the JVM keeps. When greater than 0 the handshakes are made with the default SSLContext, trusting the local keystore, so later HTTPS calls of the build resume their sessions.
+     *
+     * @param sessionCacheSize the number of sessions, 0 to not share the sessions
+     */
+    public void setSessionCacheSize(int sessionCacheSize) {
+        if(sessionCacheSize < 0){
+            throw new BuildException("Error!!! The 'sessionCacheSize' attribute must not be negative!!!");
+        }//end if
+        this.sessionCacheSize = sessionCacheSize;
+    }//end method
+
+    /**
+     * Sets whether every address of a host is handshaked with, concurrently and with the host name still sent to each, so the distinct chains of the servers behind a load balanced name are all trusted in a single run. The addresses of a host are
+     * looked up once per build.
+     *
+     * @param allAddresses true or false value
+     */
+    public void setAllAddresses(boolean allAddresses) {
+        this.allAddresses = allAddresses;
+    }//end method
+
+    /**
+     * Sets the number of hours a verified handshake is remembered, 0 disables the handshake cache.
+     *
+     * @param probeCacheTtl the number of hours
+     */
+    public void setProbeCacheTtl(int probeCacheTtl) {
+        this.probeCacheTtl = probeCacheTtl;
+    }//end method
+
+    /**
+     * Sets the number of days before a certificate expires that a new handshake is made even when it was verified recently.
+     *
+     * @param renewBeforeExpiry the number of days
+     */
+    public void setRenewBeforeExpiry(int renewBeforeExpiry) {
+        this.renewBeforeExpiry = renewBeforeExpiry;
+    }//end method
+
+    /**
+     * Sets a file containing one secure url per line. Blank lines and lines starting with {@code #} are ignored.
+     *
+     * @param urlsFile the file of urls to trust
+     */
+    public void setUrlsFile(File urlsFile) {
+        this.urlsFile = urlsFile;
+    }//end method
+
+    /**
+     * Sets the prefix of the properties the timings and outcome counts are published to.
+     *
+     * @param metricsPrefix the property prefix
+     */
+    public void setMetricsPrefix(String metricsPrefix) {
+        this.metricsPrefix = metricsPrefix;
+    }//end method
+
+    /**
+     * Sets the file the timings and outcomes of every server are written to as JSON.
+     *
+     * @param reportFile the report file
+     */
+    public void setReportFile(File reportFile) {
+        this.reportFile = reportFile;
+    }//end method
+
+    /**
+     * Sets the number of handshakes that will be ran at the same time.
+     *
+     * @param threads the number of threads
+     */
+    public void setThreads(int threads) {
+        if(threads < 1){
+            throw new BuildException("Error!!! The 'threads' attribute must be greater than zero!!!");
+        }//end if
+        this.threads = threads;
+    }//end method
+
+    /**
+     * Creates a nested {@code <url url="https://host_name"/>} element.
+     *
+     * @return the nested url element
+     */
+    public SecureUrl createUrl() {
+        SecureUrl url = new SecureUrl();
+        this.urls.add(url);
+        return url;
+    }//end method
+
+    /**
+     * Adds a nested {@code <fileset>} element of PEM, DER or PKCS#7 files whose certificates are added to the keystore without a handshake.
+     *
+     * @param fileset the nested fileset element
+     */
+    public void addFileset(FileSet fileset) {
+        this.filesets.add(fileset);
+    }//end method
+
+    /**
+     * This class represents the nested {@code <url>} element of the task.
+     */
+    public static class SecureUrl {
+
+        private String url;
+
+        /**
+         * @return the url
+         */
+        public String getUrl() {
+            return url;
+        }//end method
+
+        /**
+         * Sets the secure URL that a certificate will be attempted to exported from so that any calls to it will be trusted.
+         *
+         * @param url the url to trust
+         */
+        public void setUrl(String url) {
+            this.url = url;
+        }//end method
+
+    }//end class
+
 }//end class
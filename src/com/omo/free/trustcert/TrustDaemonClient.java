@@ -0,0 +1,202 @@
+package com.omo.free.trustcert;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ProtocolFamily;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.channels.Channels;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.GeneralSecurityException;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import com.omo.free.security.ssl.FileKeyStoreLoader;
+import com.omo.free.security.ssl.ReloadableTrustManager;
+import com.omo.free.security.ssl.TrustStoreOptions;
+import com.omo.free.security.ssl.TrustedCertficatesStore;
+
+/**
+ * This class sends requests to a running {@link TrustDaemonServer}. A client is only created when the daemon directory holds a socket or port file, the {@link TrustCertTask} falls back to trusting the urls in its own JVM when there is none or the request
+ * fails to reach the daemon. The client waits for a response only as long as the handshakes of the request may take plus a margin, a daemon that hangs fails the request with an {@link IOException} so the task still falls back.
+ *
+ * @author Richard Salas JCCC
+ */
+public class TrustDaemonClient {
+
+    private static final int CONNECT_TIMEOUT = 1000;
+    private static final long RESPONSE_MARGIN = 30000L;
+
+    private final Path directory;
+
+    /**
+     * @param directory the daemon directory
+     */
+    private TrustDaemonClient(Path directory) {
+        this.directory = directory;
+    }//end constructor
+
+    /**
+     * Finds the daemon of the directory.
+     *
+     * @param directory the daemon directory
+     * @return the client or null if no daemon has left its socket or port file in the directory
+     */
+    public static TrustDaemonClient find(Path directory) {
+        boolean unix = TrustDaemonProtocol.unixFamily() != null && Files.exists(directory.resolve(TrustDaemonProtocol.SOCKET_FILE_NM));
+        if(unix || Files.exists(directory.resolve(TrustDaemonProtocol.PORT_FILE_NM))){
+            return new TrustDaemonClient(directory);
+        }//end if
+        return null;
+    }//end method
+
+    /**
+     * Has the daemon trust the urls of the options, then points the truststore properties of this JVM at the truststore the daemon wrote and records the daemon's timings and outcomes into the metrics of the options. The trust manager is installed in
+     * this JVM when the options ask for it.
+     *
+     * @param options the options of the task
+     * @throws IOException if the daemon cannot be reached, the caller should trust the urls itself
+     * @throws TrustDaemonException if the daemon ran the request and it failed
+     */
+    public void trust(TrustStoreOptions options) throws IOException, TrustDaemonException {
+        Properties response = send(TrustDaemonProtocol.toRequest(options), responseTimeout(options));
+
+        Path truststore = Paths.get(response.getProperty(TrustDaemonProtocol.TRUSTSTORE));
+        String type = response.getProperty(TrustDaemonProtocol.TRUSTSTORE_TYPE);
+        TrustedCertficatesStore.setTrustStoreLocationProperty(truststore, type);
+        TrustDaemonProtocol.getMetrics(response, options.getMetrics());
+
+        if(options.isInstallTrustManager()){
+            try{
+                ReloadableTrustManager.install(truststore.getParent(), new FileKeyStoreLoader().load(truststore, "changeit".toCharArray()), 0);// this is the default password
+            }catch(GeneralSecurityException e){
+                throw new TrustDaemonException("Could not install the trust manager for " + truststore + ": " + e.getMessage(), e);
+            }//end try...catch
+        }//end if
+    }//end method
+
+    /**
+     * Asks the daemon to stop.
+     *
+     * @throws IOException if the daemon cannot be reached
+     * @throws TrustDaemonException if the daemon refused the request
+     */
+    public void stop() throws IOException, TrustDaemonException {
+        Properties request = new Properties();
+        request.setProperty(TrustDaemonProtocol.COMMAND, TrustDaemonProtocol.COMMAND_STOP);
+        send(request, RESPONSE_MARGIN);
+    }//end method
+
+    /**
+     * Works out how long the daemon may take to answer a request of the options. A deadline bounds every handshake of the request, without one the urls are assumed to be handshaked with a pool of {@code threads} (the nio engine handshakes with all of
+     * them at once), each taking its connect and handshake timeouts for every attempt and the longest backoff before every retry. The margin covers loading, importing and storing the keystore.
+     *
+     * @param options the options of the request
+     * @return the time in milliseconds to wait for the response
+     */
+    static long responseTimeout(TrustStoreOptions options) {
+        long attempt = (long) options.getConnectTimeout() + options.getHandshakeTimeout();
+        long perUrl = attempt;
+        for(int retry = 0; retry < options.getRetries(); retry++){
+            perUrl += attempt + (long) (1.5d * (options.getRetryBackoff() << Math.min(retry, 16)));
+        }//end for
+        int urls = Math.max(1, options.getUrls().size());
+        long rounds = TrustStoreOptions.ENGINE_NIO.equals(options.getEngine()) ? 1 : (urls + options.getThreads() - 1) / options.getThreads();
+        long timeout = perUrl * rounds;
+        if(options.getDeadline() > 0){
+            timeout = Math.min(timeout, options.getDeadline());
+        }//end if
+        return timeout + RESPONSE_MARGIN;
+    }//end method
+
+    /**
+     * Sends a request and waits for its response.
+     *
+     * @param request the request
+     * @param timeout the time in milliseconds to wait for the response
+     * @return the response
+     * @throws IOException if the daemon cannot be reached or did not answer in time
+     * @throws TrustDaemonException if the daemon answered with an error
+     */
+    private Properties send(Properties request, long timeout) throws IOException, TrustDaemonException {
+        Properties response;
+        ProtocolFamily unix = TrustDaemonProtocol.unixFamily();
+        Path socketFile = this.directory.resolve(TrustDaemonProtocol.SOCKET_FILE_NM);
+        if(unix != null && Files.exists(socketFile)){
+            SocketChannel channel = TrustDaemonProtocol.openChannel(unix);
+            // a unix domain channel has no read timeout, the watchdog closes it which fails the blocked read
+            AtomicBoolean timedOut = new AtomicBoolean();
+            Thread watchdog = startWatchdog(channel, timeout, timedOut);
+            try{
+                channel.connect(TrustDaemonProtocol.unixAddress(socketFile));
+                TrustDaemonProtocol.write(Channels.newOutputStream(channel), request);
+                response = TrustDaemonProtocol.read(Channels.newInputStream(channel));
+            }catch(IOException e){
+                if(timedOut.get()){
+                    throw new SocketTimeoutException("The trust daemon did not answer within " + timeout + " ms");
+                }//end if
+                throw e;
+            }finally{
+                watchdog.interrupt();
+                channel.close();
+            }//end try...finally
+        }else{
+            List<String> lines = Files.readAllLines(this.directory.resolve(TrustDaemonProtocol.PORT_FILE_NM), StandardCharsets.UTF_8);
+            String[] portAndToken = lines.isEmpty() ? new String[0] : lines.get(0).trim().split(" ");
+            if(portAndToken.length != 2){
+                throw new IOException("The trust daemon port file " + this.directory.resolve(TrustDaemonProtocol.PORT_FILE_NM) + " is malformed");
+            }//end if
+            request.setProperty(TrustDaemonProtocol.TOKEN, portAndToken[1]);
+
+            Socket socket = new Socket();
+            try{
+                socket.connect(new InetSocketAddress(InetAddress.getLoopbackAddress(), Integer.parseInt(portAndToken[0])), CONNECT_TIMEOUT);
+                socket.setSoTimeout((int) Math.min(timeout, Integer.MAX_VALUE));
+                TrustDaemonProtocol.write(socket.getOutputStream(), request);
+                response = TrustDaemonProtocol.read(socket.getInputStream());
+            }finally{
+                socket.close();
+            }//end try...finally
+        }//end if
+
+        if(!TrustDaemonProtocol.STATUS_OK.equals(response.getProperty(TrustDaemonProtocol.STATUS))){
+            throw new TrustDaemonException("The trust daemon failed the request: " + response.getProperty(TrustDaemonProtocol.MESSAGE));
+        }//end if
+        return response;
+    }//end method
+
+    /**
+     * Starts a thread that closes the channel once the timeout has passed, unless it is interrupted first.
+     *
+     * @param channel the channel of the request
+     * @param timeout the time in milliseconds to wait for the response
+     * @param timedOut set to true when the watchdog closed the channel
+     * @return the started watchdog, interrupt it once the response has been read
+     */
+    private static Thread startWatchdog(final SocketChannel channel, final long timeout, final AtomicBoolean timedOut) {
+        Thread watchdog = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try{
+                    Thread.sleep(timeout);
+                    timedOut.set(true);
+                    channel.close();
+                }catch(InterruptedException e){
+                    // the response arrived in time
+                }catch(IOException e){
+                    // the blocked read fails either way once the channel is closing
+                }//end try...catch
+            }//end method
+        }, "trustcert-daemon-watchdog");
+        watchdog.setDaemon(true);
+        watchdog.start();
+        return watchdog;
+    }//end method
+
+}//end class
@@ -0,0 +1,27 @@
+package com.omo.free.trustcert;
+
+/**
+ * This exception is thrown when the trust daemon was reached but could not run a request, the request must not be ran again in the JVM of the build.
+ *
+ * @author Richard Salas JCCC
+ */
+public class TrustDaemonException extends Exception {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * @param message the message
+     */
+    public TrustDaemonException(String message) {
+        super(message);
+    }//end constructor
+
+    /**
+     * @param message the message
+     * @param cause the cause
+     */
+    public TrustDaemonException(String message, Throwable cause) {
+        super(message, cause);
+    }//end constructor
+
+}//end class
@@ -0,0 +1,300 @@
+package com.omo.free.trustcert;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.reflect.InvocationTargetException;
+import java.net.ProtocolFamily;
+import java.net.SocketAddress;
+import java.net.StandardProtocolFamily;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+import com.omo.free.security.ssl.TrustMetrics;
+import com.omo.free.security.ssl.TrustStoreOptions;
+
+/**
+ * This class holds what the {@link TrustDaemonServer} and the {@link TrustDaemonClient} agree on: where the daemon listens, how its channels are opened and how requests and responses are written.
+ * <p>
+ * The daemon listens on the Unix domain socket {@code daemon.sock} of its directory when the running JVM supports them (Java 16 and later, looked up by reflection so the task still runs on Java 8). Otherwise it listens on an ephemeral loopback port
+ * written to {@code daemon.port} along with a random token every client must send first. Every message is a {@link Properties} document preceded by its length.
+ * </p>
+ *
+ * @author Richard Salas JCCC
+ */
+final class TrustDaemonProtocol {
+
+    /** the name of the Unix domain socket within the daemon directory */
+    static final String SOCKET_FILE_NM = "daemon.sock";
+
+    /** the name of the file holding the loopback port and token within the daemon directory */
+    static final String PORT_FILE_NM = "daemon.port";
+
+    static final String COMMAND = "command";
+    static final String COMMAND_TRUST = "trust";
+    static final String COMMAND_STOP = "stop";
+    static final String TOKEN = "token";
+    static final String STATUS = "status";
+    static final String STATUS_OK = "ok";
+    static final String STATUS_ERROR = "error";
+    static final String MESSAGE = "message";
+    static final String TRUSTSTORE = "truststore";
+    static final String TRUSTSTORE_TYPE = "truststoreType";
+
+    private static final int MAX_MESSAGE_SIZE = 16 * 1024 * 1024;
+
+    /**
+     * Utility class, no instances.
+     */
+    private TrustDaemonProtocol() {
+    }//end constructor
+
+    /**
+     * @return the default daemon directory, {@code .trustcert} in the home directory of the user
+     */
+    static Path defaultDirectory() {
+        return Paths.get(System.getProperty("user.home"), ".trustcert");
+    }//end method
+
+    /**
+     * @return the Unix domain protocol family or null if the running JVM does not support Unix domain sockets
+     */
+    static ProtocolFamily unixFamily() {
+        try{
+            return StandardProtocolFamily.valueOf("UNIX");
+        }catch(IllegalArgumentException e){
+            return null;
+        }//end try...catch
+    }//end method
+
+    /**
+     * @param socketFile the path of the socket
+     * @return the Unix domain socket address of the path
+     * @throws IOException if the running JVM does not support Unix domain sockets
+     */
+    static SocketAddress unixAddress(Path socketFile) throws IOException {
+        try{
+            return (SocketAddress) Class.forName("java.net.UnixDomainSocketAddress").getMethod("of", Path.class).invoke(null, socketFile);
+        }catch(ClassNotFoundException e){
+            throw new IOException("Unix domain sockets are not supported by this JVM", e);
+        }catch(NoSuchMethodException e){
+            throw new IOException("Unix domain sockets are not supported by this JVM", e);
+        }catch(IllegalAccessException e){
+            throw new IOException("Unix domain sockets are not supported by this JVM", e);
+        }catch(InvocationTargetException e){
+            throw new IOException("Invalid Unix domain socket path " + socketFile + ": " + e.getCause().getMessage(), e.getCause());
+        }//end try...catch
+    }//end method
+
+    /**
+     * @param family the Unix domain protocol family
+     * @return a new server channel of the family
+     * @throws IOException if the channel cannot be opened
+     */
+    static ServerSocketChannel openServerChannel(ProtocolFamily family) throws IOException {
+        return (ServerSocketChannel) open(ServerSocketChannel.class, family);
+    }//end method
+
+    /**
+     * @param family the Unix domain protocol family
+     * @return a new client channel of the family
+     * @throws IOException if the channel cannot be opened
+     */
+    static SocketChannel openChannel(ProtocolFamily family) throws IOException {
+        return (SocketChannel) open(SocketChannel.class, family);
+    }//end method
+
+    /**
+     * Calls the {@code open(ProtocolFamily)} factory added to the channel classes in Java 15.
+     *
+     * @param channelClass the channel class
+     * @param family the protocol family
+     * @return the new channel
+     * @throws IOException if the channel cannot be opened
+     */
+    private static Object open(Class<?> channelClass, ProtocolFamily family) throws IOException {
+        try{
+            return channelClass.getMethod("open", ProtocolFamily.class).invoke(null, family);
+        }catch(NoSuchMethodException e){
+            throw new IOException("Unix domain sockets are not supported by this JVM", e);
+        }catch(IllegalAccessException e){
+            throw new IOException("Unix domain sockets are not supported by this JVM", e);
+        }catch(InvocationTargetException e){
+            if(e.getCause() instanceof IOException){
+                throw (IOException) e.getCause();
+            }//end if
+            throw new IOException(e.getCause().getMessage(), e.getCause());
+        }//end try...catch
+    }//end method
+
+    /**
+     * Writes a message preceded by its length.
+     *
+     * @param out the stream of the channel
+     * @param message the message
+     * @throws IOException if the message cannot be written
+     */
+    static void write(OutputStream out, Properties message) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        message.store(bytes, null);
+        DataOutputStream data = new DataOutputStream(out);
+        data.writeInt(bytes.size());
+        bytes.writeTo(data);
+        data.flush();
+    }//end method
+
+    /**
+     * Reads a message written by {@link #write(OutputStream, Properties)}.
+     *
+     * @param in the stream of the channel
+     * @return the message
+     * @throws IOException if the message cannot be read
+     */
+    static Properties read(InputStream in) throws IOException {
+        DataInputStream data = new DataInputStream(in);
+        int size = data.readInt();
+        if(size < 0 || size > MAX_MESSAGE_SIZE){
+            throw new IOException("Invalid trust daemon message size " + size);
+        }//end if
+        byte[] bytes = new byte[size];
+        data.readFully(bytes);
+        Properties message = new Properties();
+        message.load(new ByteArrayInputStream(bytes));
+        return message;
+    }//end method
+
+    /**
+     * Writes the options into a trust request. The keystore and export directories and the certificate files are made absolute since the daemon runs in another working directory, the keystore loader is not sent.
+     *
+     * @param options the options of the task
+     * @return the request
+     */
+    static Properties toRequest(TrustStoreOptions options) {
+        Properties request = new Properties();
+        request.setProperty(COMMAND, COMMAND_TRUST);
+        request.setProperty("keystoreDir", Paths.get(options.getKeystoreDir()).toAbsolutePath().toString());
+        putList(request, "url", options.getUrls());
+        putList(request, "minimalAllow", options.getMinimalAllow());
+        for(int i = 0; i < options.getCertificateFiles().size(); i++){
+            request.setProperty("certificateFile." + i, Paths.get(options.getCertificateFiles().get(i)).toAbsolutePath().toString());
+        }//end for
+        request.setProperty("threads", String.valueOf(options.getThreads()));
+        request.setProperty("refresh", String.valueOf(options.isRefresh()));
+        request.setProperty("storeIntermediates", String.valueOf(options.isStoreIntermediates()));
+        request.setProperty("pruneExpired", String.valueOf(options.isPruneExpired()));
+        request.setProperty("minimal", String.valueOf(options.isMinimal()));
+        request.setProperty("minimalType", options.getMinimalType());
+        if(options.getExportDir() != null){
+            request.setProperty("exportDir", Paths.get(options.getExportDir()).toAbsolutePath().toString());
+        }//end if
+        request.setProperty("allAddresses", String.valueOf(options.isAllAddresses()));
+        request.setProperty("engine", options.getEngine());
+        request.setProperty("selectors", String.valueOf(options.getSelectors()));
+        request.setProperty("probeCacheTtl", String.valueOf(options.getProbeCacheTtl()));
+        request.setProperty("renewBefore", String.valueOf(options.getRenewBefore()));
+        request.setProperty("connectTimeout", String.valueOf(options.getConnectTimeout()));
+        request.setProperty("handshakeTimeout", String.valueOf(options.getHandshakeTimeout()));
+        request.setProperty("deadline", String.valueOf(options.getDeadline()));
+        request.setProperty("retries", String.valueOf(options.getRetries()));
+        request.setProperty("retryBackoff", String.valueOf(options.getRetryBackoff()));
+        request.setProperty("breakerCoolDown", String.valueOf(options.getBreakerCoolDown()));
+        return request;
+    }//end method
+
+    /**
+     * Reads the options of a trust request. The trust manager is never installed by the daemon, the client installs it in its own JVM.
+     *
+     * @param request the request
+     * @return the options
+     */
+    static TrustStoreOptions toOptions(Properties request) {
+        TrustStoreOptions options = new TrustStoreOptions();
+        options.setKeystoreDir(request.getProperty("keystoreDir"));
+        for(int i = 0; request.getProperty("url." + i) != null; i++){
+            options.addUrl(request.getProperty("url." + i));
+        }//end for
+        for(int i = 0; request.getProperty("minimalAllow." + i) != null; i++){
+            options.addMinimalAllow(request.getProperty("minimalAllow." + i));
+        }//end for
+        for(int i = 0; request.getProperty("certificateFile." + i) != null; i++){
+            options.addCertificateFile(request.getProperty("certificateFile." + i));
+        }//end for
+        options.setThreads(Integer.parseInt(request.getProperty("threads")));
+        options.setRefresh(Boolean.parseBoolean(request.getProperty("refresh")));
+        options.setStoreIntermediates(Boolean.parseBoolean(request.getProperty("storeIntermediates")));
+        options.setPruneExpired(Boolean.parseBoolean(request.getProperty("pruneExpired")));
+        options.setMinimal(Boolean.parseBoolean(request.getProperty("minimal")));
+        options.setMinimalType(request.getProperty("minimalType"));
+        options.setExportDir(request.getProperty("exportDir"));
+        options.setAllAddresses(Boolean.parseBoolean(request.getProperty("allAddresses")));
+        options.setEngine(request.getProperty("engine"));
+        options.setSelectors(Integer.parseInt(request.getProperty("selectors")));
+        options.setProbeCacheTtl(Long.parseLong(request.getProperty("probeCacheTtl")));
+        options.setRenewBefore(Long.parseLong(request.getProperty("renewBefore")));
+        options.setConnectTimeout(Integer.parseInt(request.getProperty("connectTimeout")));
+        options.setHandshakeTimeout(Integer.parseInt(request.getProperty("handshakeTimeout")));
+        options.setDeadline(Long.parseLong(request.getProperty("deadline")));
+        options.setRetries(Integer.parseInt(request.getProperty("retries")));
+        options.setRetryBackoff(Long.parseLong(request.getProperty("retryBackoff")));
+        options.setBreakerCoolDown(Long.parseLong(request.getProperty("breakerCoolDown")));
+        return options;
+    }//end method
+
+    /**
+     * Writes the time spent in each phase and the outcome of every server into a response.
+     *
+     * @param response the response
+     * @param metrics the metrics of the run
+     */
+    static void putMetrics(Properties response, TrustMetrics metrics) {
+        for(TrustMetrics.Phase phase : TrustMetrics.Phase.values()){
+            response.setProperty("phase." + phase.name(), String.valueOf(metrics.getNanos(phase)));
+        }//end for
+        for(Map.Entry<String, TrustMetrics.Outcome> outcome : metrics.getOutcomes().entrySet()){
+            response.setProperty("outcome." + outcome.getKey(), outcome.getValue().name());
+        }//end for
+    }//end method
+
+    /**
+     * Records the phases and outcomes of a response into the metrics of the task.
+     *
+     * @param response the response
+     * @param metrics the metrics of the task
+     */
+    static void getMetrics(Properties response, TrustMetrics metrics) {
+        for(TrustMetrics.Phase phase : TrustMetrics.Phase.values()){
+            long nanos = Long.parseLong(response.getProperty("phase." + phase.name(), "0"));
+            if(nanos > 0){
+                metrics.recordNanos(phase, null, 0, nanos);
+            }//end if
+        }//end for
+        for(String key : response.stringPropertyNames()){
+            if(key.startsWith("outcome.")){
+                String hostPort = key.substring("outcome.".length());
+                int colon = hostPort.lastIndexOf(':');
+                metrics.count(TrustMetrics.Outcome.valueOf(response.getProperty(key)), hostPort.substring(0, colon), Integer.parseInt(hostPort.substring(colon + 1)));
+            }//end if
+        }//end for
+    }//end method
+
+    /**
+     * @param message the message
+     * @param prefix the prefix of the keys
+     * @param values the values written as {@code prefix.0}, {@code prefix.1} and so on
+     */
+    private static void putList(Properties message, String prefix, List<String> values) {
+        for(int i = 0; i < values.size(); i++){
+            message.setProperty(prefix + "." + i, values.get(i));
+        }//end for
+    }//end method
+
+}//end class
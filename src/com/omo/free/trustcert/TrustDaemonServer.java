@@ -0,0 +1,281 @@
+package com.omo.free.trustcert;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ProtocolFamily;
+import java.nio.channels.Channels;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.SecureRandom;
+import java.util.Properties;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.omo.free.security.ssl.TrustStoreOptions;
+import com.omo.free.security.ssl.TrustedCertficatesStore;
+
+/**
+ * This class is the long lived trust daemon. It keeps the local truststores loaded in a {@link KeyStoreCache} and runs the requests of {@link TrustDaemonClient}s with the {@link TrustedCertficatesStore}, so a build pays for one local request instead of
+ * loading the classes, the keystore and the trust managers in its own JVM. The truststores are written straight away and only reloaded when another process changes the file.
+ * <p>
+ * Each client is served on its own thread, requests for the same truststore share the loaded keystore and serialize on its lock. The daemon stops when it receives a stop request or when no request arrived within its idle time.
+ * </p>
+ *
+ * @author Richard Salas JCCC
+ */
+public class TrustDaemonServer implements Closeable {
+
+    private static final String MY_CLASS_NAME = "com.omo.free.trustcert.TrustDaemonServer";
+    private static Logger myLogger = Logger.getLogger(MY_CLASS_NAME);
+
+    private final Path directory;
+    private final long idleMillis;
+    private final KeyStoreCache cache = new KeyStoreCache();
+    private final ServerSocketChannel serverChannel;
+    private final Path addressFile;
+    private final String token;
+    private final ExecutorService workers;
+    private final AtomicInteger activeRequests = new AtomicInteger();
+    private volatile long lastRequest = System.currentTimeMillis();
+
+    /**
+     * Opens the daemon channel, the Unix domain socket {@code daemon.sock} when the JVM supports it otherwise an ephemeral loopback port written to {@code daemon.port}.
+     *
+     * @param directory the daemon directory, created if it does not exist
+     * @param idleMillis the time in milliseconds without a request after which the daemon stops, zero or less to never stop
+     * @throws IOException if the channel cannot be opened
+     */
+    public TrustDaemonServer(Path directory, long idleMillis) throws IOException {
+        this.directory = directory;
+        this.idleMillis = idleMillis;
+        Files.createDirectories(directory);
+        restrictToOwner(directory, "rwx------");
+
+        ProtocolFamily unix = TrustDaemonProtocol.unixFamily();
+        if(unix != null){
+            this.addressFile = directory.resolve(TrustDaemonProtocol.SOCKET_FILE_NM);
+            Files.deleteIfExists(this.addressFile);// left behind by a daemon that was killed
+            this.serverChannel = TrustDaemonProtocol.openServerChannel(unix);
+            this.serverChannel.bind(TrustDaemonProtocol.unixAddress(this.addressFile));
+            this.token = null;
+        }else{
+            this.serverChannel = ServerSocketChannel.open();
+            this.serverChannel.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+            byte[] random = new byte[16];
+            new SecureRandom().nextBytes(random);
+            StringBuilder hex = new StringBuilder();
+            for(byte b : random){
+                hex.append(String.format("%02x", b));
+            }//end for
+            this.token = hex.toString();
+            this.addressFile = directory.resolve(TrustDaemonProtocol.PORT_FILE_NM);
+            Path tempFile = Files.createTempFile(directory, TrustDaemonProtocol.PORT_FILE_NM, ".tmp");
+            restrictToOwner(tempFile, "rw-------");
+            Writer out = Files.newBufferedWriter(tempFile, StandardCharsets.UTF_8);
+            try{
+                out.write(((InetSocketAddress) this.serverChannel.getLocalAddress()).getPort() + " " + this.token + "\n");
+            }finally{
+                out.close();
+            }//end try...finally
+            Files.move(tempFile, this.addressFile, StandardCopyOption.REPLACE_EXISTING);
+        }//end if
+
+        this.workers = Executors.newCachedThreadPool(new ThreadFactory() {
+            private final AtomicInteger count = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "trustcert-daemon-" + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }//end method
+        });
+        myLogger.info("Trust daemon listening on " + this.serverChannel.getLocalAddress());
+    }//end constructor
+
+    /**
+     * Serves clients until the daemon is closed, stopped or idle for longer than its idle time.
+     */
+    public void serve() {
+        if(this.idleMillis > 0){
+            Thread idleWatch = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    watchIdle();
+                }//end method
+            }, "trustcert-daemon-idle");
+            idleWatch.setDaemon(true);
+            idleWatch.start();
+        }//end if
+
+        try{
+            while(this.serverChannel.isOpen()){
+                final SocketChannel channel = this.serverChannel.accept();
+                this.activeRequests.incrementAndGet();
+                this.lastRequest = System.currentTimeMillis();
+                this.workers.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        handle(channel);
+                    }//end method
+                });
+            }//end while
+        }catch(ClosedChannelException e){
+            // closed by a stop request or the idle watch
+        }catch(IOException e){
+            myLogger.log(Level.SEVERE, "IOException occurred while accepting trust daemon clients.  Error message is: " + e.getMessage(), e);
+        }finally{
+            close();
+        }//end try...catch...finally
+
+        // requests already running are finished before the daemon exits
+        try{
+            while(!this.workers.awaitTermination(1, TimeUnit.MINUTES)){
+                myLogger.info("Waiting on " + this.activeRequests.get() + " trust daemon request(s) to finish.");
+            }//end while
+        }catch(InterruptedException e){
+            Thread.currentThread().interrupt();
+        }//end try...catch
+    }//end method
+
+    /**
+     * Closes the daemon channel once no request arrived within the idle time.
+     */
+    private void watchIdle() {
+        try{
+            while(this.serverChannel.isOpen()){
+                long idle = (this.activeRequests.get() > 0) ? 0 : System.currentTimeMillis() - this.lastRequest;
+                if(idle >= this.idleMillis){
+                    myLogger.info("Trust daemon idle for " + idle + "ms, stopping.");
+                    close();
+                    return;
+                }//end if
+                Thread.sleep(Math.min(this.idleMillis - idle, 60000L));
+            }//end while
+        }catch(InterruptedException e){
+            Thread.currentThread().interrupt();
+        }//end try...catch
+    }//end method
+
+    /**
+     * Runs the request of a client and writes the response.
+     *
+     * @param channel the channel of the client
+     */
+    private void handle(SocketChannel channel) {
+        Properties response = new Properties();
+        try{
+            InputStream in = Channels.newInputStream(channel);
+            OutputStream out = Channels.newOutputStream(channel);
+            Properties request = TrustDaemonProtocol.read(in);
+            try{
+                if(this.token != null && !this.token.equals(request.getProperty(TrustDaemonProtocol.TOKEN))){
+                    throw new SecurityException("The trust daemon token is missing or wrong");
+                }//end if
+
+                String command = request.getProperty(TrustDaemonProtocol.COMMAND);
+                if(TrustDaemonProtocol.COMMAND_STOP.equals(command)){
+                    myLogger.info("Trust daemon stop requested.");
+                    close();
+                }else if(TrustDaemonProtocol.COMMAND_TRUST.equals(command)){
+                    trust(request, response);
+                }else{
+                    throw new IllegalArgumentException("Unknown trust daemon command " + command);
+                }//end if
+                response.setProperty(TrustDaemonProtocol.STATUS, TrustDaemonProtocol.STATUS_OK);
+            }catch(Exception e){
+                myLogger.log(Level.SEVERE, "Exception occurred during the trust daemon request.  Error message is: " + e.getMessage(), e);
+                response.clear();
+                response.setProperty(TrustDaemonProtocol.STATUS, TrustDaemonProtocol.STATUS_ERROR);
+                response.setProperty(TrustDaemonProtocol.MESSAGE, String.valueOf(e.getMessage()));
+            }//end try...catch
+            TrustDaemonProtocol.write(out, response);
+        }catch(IOException e){
+            myLogger.log(Level.WARNING, "IOException occurred while talking to a trust daemon client.  Error message is: " + e.getMessage(), e);
+        }finally{
+            try{
+                channel.close();
+            }catch(IOException e){
+                myLogger.log(Level.FINE, "IOException occurred while closing a trust daemon client.", e);
+            }//end try...catch
+            this.lastRequest = System.currentTimeMillis();
+            this.activeRequests.decrementAndGet();
+        }//end try...catch...finally
+    }//end method
+
+    /**
+     * Trusts the urls of the request with the shared keystore cache.
+     *
+     * @param request the trust request
+     * @param response the response the truststore location and metrics are written to
+     * @throws Exception if the truststore cannot be created
+     */
+    private void trust(Properties request, Properties response) throws Exception {
+        TrustStoreOptions options = TrustDaemonProtocol.toOptions(request);
+        options.setKeyStoreLoader(this.cache.getLoader(false));
+        myLogger.info("Trusting " + options.getUrls().size() + " url(s) for " + options.getKeystoreDir());
+
+        TrustedCertficatesStore store = new TrustedCertficatesStore(options);
+        response.setProperty(TrustDaemonProtocol.TRUSTSTORE, store.getTrustStoreLocation().toString());
+        if(store.getTrustStoreType() != null){
+            response.setProperty(TrustDaemonProtocol.TRUSTSTORE_TYPE, store.getTrustStoreType());
+        }//end if
+        TrustDaemonProtocol.putMetrics(response, options.getMetrics());
+    }//end method
+
+    /**
+     * @return the daemon directory
+     */
+    public Path getDirectory() {
+        return this.directory;
+    }//end method
+
+    /**
+     * Stops accepting clients and removes the socket or port file, requests already running are finished.
+     */
+    @Override
+    public void close() {
+        try{
+            if(this.serverChannel.isOpen()){
+                this.serverChannel.close();
+                Files.deleteIfExists(this.addressFile);
+            }//end if
+        }catch(IOException e){
+            myLogger.log(Level.WARNING, "IOException occurred while closing the trust daemon.  Error message is: " + e.getMessage(), e);
+        }//end try...catch
+        this.workers.shutdown();
+    }//end method
+
+    /**
+     * Limits a file to its owner where the file system supports POSIX permissions.
+     *
+     * @param file the file or directory
+     * @param permissions the POSIX permissions
+     */
+    private static void restrictToOwner(Path file, String permissions) {
+        try{
+            Files.setPosixFilePermissions(file, PosixFilePermissions.fromString(permissions));
+        }catch(UnsupportedOperationException e){
+            // not a POSIX file system, the directory of the user is relied on
+        }catch(IOException e){
+            myLogger.log(Level.WARNING, "IOException occurred while restricting " + file + " to its owner.  Error message is: " + e.getMessage(), e);
+        }//end try...catch
+    }//end method
+
+}//end class
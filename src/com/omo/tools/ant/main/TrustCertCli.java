@@ -0,0 +1,220 @@
+package com.omo.tools.ant.main;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.omo.free.security.ssl.TrustMetrics;
+import com.omo.free.security.ssl.TrustResult;
+import com.omo.free.security.ssl.TrustStoreOptions;
+import com.omo.free.security.ssl.TrustedCertficatesStore;
+
+/**
+ * This class trusts secure websites from the command line without Ant. It runs the same trust logic as the {@code <trustcertificate>} task but never loads an Ant {@code Project}, a build file or an XML parser, so it starts in a fraction of the time
+ * and runs where Ant is not installed (container init steps, shell scripts).
+ * <p>
+ * Run it with {@code java -cp <classes> com.omo.tools.ant.main.TrustCertCli [attribute=value ...] [url ...]}. The attributes have the names and units of the task attributes ({@code keystoreDir}, {@code threads}, {@code engine} and so on), a url may
+ * be given as {@code https://host[:port]} or as {@code host[:port]}. When no url is given, or a url is {@code -}, the urls are read from standard input one per line, blank lines and lines starting with {@code #} are ignored.
+ * </p>
+ * <p>
+ * The outcome of every url is written to standard error and the path of the truststore TLS clients should use to standard output. The exit status is 0 when every url is trusted, 1 when at least one could not be and 2 when the arguments are wrong.
+ * </p>
+ *
+ * @author Richard Salas JCCC
+ */
+public class TrustCertCli {
+
+    private static final long HOUR_MILLIS = 60L * 60L * 1000L;
+    private static final long DAY_MILLIS = 24L * HOUR_MILLIS;
+    private static final long MINUTE_MILLIS = 60L * 1000L;
+
+    /**
+     * Trusts the urls of the arguments and standard input.
+     *
+     * @param args {@code [attribute=value ...] [url ...]}
+     */
+    public static void main(String[] args) {
+        int status;
+        try{
+            status = run(args);
+        }catch(IllegalArgumentException e){
+            System.err.println("Error!!! " + e.getMessage());
+            System.err.println("Usage: java com.omo.tools.ant.main.TrustCertCli [keystoreDir=dir] [threads=n] [engine=socket|nio] [attribute=value ...] [url ...]");
+            status = 2;
+        }catch(Exception e){
+            System.err.println("Error!!! Could not trust the urls.  Error message: " + e.getMessage());
+            status = 1;
+        }//end try...catch
+        System.exit(status);
+    }//end method
+
+    /**
+     * Trusts the urls of the arguments and standard input.
+     *
+     * @param args {@code [attribute=value ...] [url ...]}
+     * @return the exit status
+     * @throws Exception if the truststore cannot be created
+     */
+    static int run(String[] args) throws Exception {
+        TrustStoreOptions options = new TrustStoreOptions();
+        boolean verbose = false;
+        String reportFile = null;
+        boolean readStdin = false;
+        List<String> urls = new ArrayList<String>();
+
+        for(String arg : args){
+            int equals = arg.indexOf('=');
+            if("-".equals(arg)){
+                readStdin = true;
+            }else if(equals > 0 && !arg.contains("://")){
+                String name = arg.substring(0, equals);
+                String value = arg.substring(equals + 1);
+                if("verbose".equals(name)){
+                    verbose = Boolean.parseBoolean(value);
+                }else if("reportFile".equals(name)){
+                    reportFile = value;
+                }else{
+                    setOption(options, name, value);
+                }//end if
+            }else{
+                urls.add(toUrl(arg));
+            }//end if
+        }//end for
+
+        // the handshakes log every step at INFO, only warnings are shown unless asked for
+        Logger.getLogger("com.omo.free").setLevel(verbose ? Level.INFO : Level.WARNING);
+
+        if(readStdin || (urls.isEmpty() && options.getUrls().isEmpty() && options.getCertificateFiles().isEmpty())){
+            BufferedReader in = new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8));
+            for(String line = in.readLine(); line != null; line = in.readLine()){
+                line = line.trim();
+                if(!line.isEmpty() && !line.startsWith("#")){
+                    urls.add(toUrl(line));
+                }//end if
+            }//end for
+        }//end if
+        for(String url : urls){
+            options.addUrl(url);
+        }//end for
+        if(options.getUrls().isEmpty() && options.getCertificateFiles().isEmpty()){
+            throw new IllegalArgumentException("No url or certificateFile was given on the command line or standard input");
+        }//end if
+
+        TrustedCertficatesStore store = new TrustedCertficatesStore(options);
+
+        int status = 0;
+        for(TrustResult result : store.getResults()){
+            System.err.println(result);
+            for(TrustResult addressResult : result.getAddressResults()){
+                System.err.println("    " + addressResult);
+            }//end for
+            if(!result.isTrusted()){
+                status = 1;
+            }//end if
+        }//end for
+        if(reportFile != null){
+            options.getMetrics().writeJson(Paths.get(reportFile));
+        }//end if
+        if(verbose){
+            TrustMetrics metrics = options.getMetrics();
+            for(TrustMetrics.Phase phase : TrustMetrics.Phase.values()){
+                System.err.println(phase.getName() + ": " + metrics.getMillis(phase) + " ms");
+            }//end for
+        }//end if
+
+        System.out.println(store.getTrustStoreLocation().toFile().getCanonicalPath());
+        return status;
+    }//end method
+
+    /**
+     * Sets an option by the name of the task attribute.
+     *
+     * @param options the options
+     * @param name the name of the task attribute
+     * @param value the value in the units of the task attribute
+     */
+    private static void setOption(TrustStoreOptions options, String name, String value) {
+        try{
+            if("keystoreDir".equals(name)){
+                options.setKeystoreDir(value);
+            }else if("threads".equals(name)){
+                options.setThreads(Integer.parseInt(value));
+            }else if("engine".equals(name)){
+                options.setEngine(value);
+            }else if("selectors".equals(name)){
+                options.setSelectors(Integer.parseInt(value));
+            }else if("connectTimeout".equals(name)){
+                options.setConnectTimeout(Integer.parseInt(value));
+            }else if("handshakeTimeout".equals(name)){
+                options.setHandshakeTimeout(Integer.parseInt(value));
+            }else if("deadline".equals(name)){
+                options.setDeadline(Long.parseLong(value));
+            }else if("retries".equals(name)){
+                options.setRetries(Integer.parseInt(value));
+            }else if("retryBackoff".equals(name)){
+                options.setRetryBackoff(Long.parseLong(value));
+            }else if("breakerCoolDown".equals(name)){
+                options.setBreakerCoolDown(Long.parseLong(value) * MINUTE_MILLIS);
+            }else if("probeCacheTtl".equals(name)){
+                options.setProbeCacheTtl(Long.parseLong(value) * HOUR_MILLIS);
+            }else if("renewBeforeExpiry".equals(name)){
+                options.setRenewBefore(Long.parseLong(value) * DAY_MILLIS);
+            }else if("refresh".equals(name)){
+                options.setRefresh(Boolean.parseBoolean(value));
+            }else if("storeIntermediates".equals(name)){
+                options.setStoreIntermediates(Boolean.parseBoolean(value));
+            }else if("pruneExpired".equals(name)){
+                options.setPruneExpired(Boolean.parseBoolean(value));
+            }else if("minimal".equals(name)){
+                options.setMinimal(Boolean.parseBoolean(value));
+            }else if("minimalType".equals(name)){
+                options.setMinimalType(value);
+            }else if("minimalAllow".equals(name)){
+                for(String entry : value.split(",")){
+                    if(!entry.trim().isEmpty()){
+                        options.addMinimalAllow(entry);
+                    }//end if
+                }//end for
+            }else if("allAddresses".equals(name)){
+                options.setAllAddresses(Boolean.parseBoolean(value));
+            }else if("exportDir".equals(name)){
+                options.setExportDir(value);
+            }else if("certificateFile".equals(name)){
+                for(String entry : value.split(",")){
+                    if(!entry.trim().isEmpty()){
+                        options.addCertificateFile(Paths.get(entry.trim()).toAbsolutePath().toString());
+                    }//end if
+                }//end for
+            }else if("urlsFile".equals(name)){
+                for(String line : Files.readAllLines(Paths.get(value), StandardCharsets.UTF_8)){
+                    line = line.trim();
+                    if(!line.isEmpty() && !line.startsWith("#")){
+                        options.addUrl(toUrl(line));
+                    }//end if
+                }//end for
+            }else{
+                throw new IllegalArgumentException("Unknown attribute " + name);
+            }//end if
+        }catch(NumberFormatException e){
+            throw new IllegalArgumentException("The attribute " + name + " must be a number, not " + value);
+        }catch(IOException e){
+            throw new IllegalArgumentException("Could not read the urlsFile " + value + ".  Error message: " + e.getMessage());
+        }//end try...catch
+    }//end method
+
+    /**
+     * @param hostOrUrl a url or a host name with an optional port
+     * @return the url
+     */
+    private static String toUrl(String hostOrUrl) {
+        return hostOrUrl.startsWith("https://") ? hostOrUrl : "https://" + hostOrUrl;
+    }//end method
+
+}//end class
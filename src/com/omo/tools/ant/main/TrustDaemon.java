@@ -0,0 +1,56 @@
+package com.omo.tools.ant.main;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+import com.omo.free.trustcert.TrustDaemonClient;
+import com.omo.free.trustcert.TrustDaemonServer;
+
+/**
+ * This class starts or stops the trust daemon used by the Ant Trust Cert task. While the daemon runs, every {@code <trustcertificate>} of the builds on the machine is served from its loaded keystores with a single local request.
+ * <p>
+ * Run it with {@code java -cp <classes>:lib/* com.omo.tools.ant.main.TrustDaemon [daemonDir] [idleMinutes]} to start the daemon, the daemon directory defaults to {@code ~/.trustcert} and the daemon stops after 60 idle minutes (0 never stops). Run it
+ * with {@code stop [daemonDir]} to stop a running daemon.
+ * </p>
+ *
+ * @author Richard Salas JCCC
+ */
+public class TrustDaemon {
+
+    private static final long DEFAULT_IDLE_MINUTES = 60L;
+
+    /**
+     * Starts or stops the daemon.
+     *
+     * @param args {@code [daemonDir] [idleMinutes]} or {@code stop [daemonDir]}
+     * @throws Exception if the daemon cannot be started or stopped
+     */
+    public static void main(String[] args) throws Exception {
+        boolean stop = args.length > 0 && "stop".equals(args[0]);
+        int dirArg = stop ? 1 : 0;
+        Path directory = (args.length > dirArg) ? Paths.get(args[dirArg]) : Paths.get(System.getProperty("user.home"), ".trustcert");
+
+        if(stop){
+            TrustDaemonClient client = TrustDaemonClient.find(directory);
+            if(client == null){
+                System.out.println("No trust daemon is running in " + directory);
+            }else{
+                client.stop();
+                System.out.println("Stopped the trust daemon in " + directory);
+            }//end if
+            return;
+        }//end if
+
+        long idleMinutes = (args.length > 1) ? Long.parseLong(args[1]) : DEFAULT_IDLE_MINUTES;
+        final TrustDaemonServer server = new TrustDaemonServer(directory, idleMinutes * 60L * 1000L);
+        Runtime.getRuntime().addShutdownHook(new Thread(new Runnable() {
+            @Override
+            public void run() {
+                server.close();
+            }//end method
+        }, "trustcert-daemon-shutdown"));
+        System.out.println("Trust daemon serving " + directory);
+        server.serve();
+    }//end method
+
+}//end class